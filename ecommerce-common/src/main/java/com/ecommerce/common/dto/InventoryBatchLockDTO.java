@@ -0,0 +1,34 @@
+package com.ecommerce.common.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 批量锁定库存DTO（一个订单的全部商品行）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryBatchLockDTO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @NotNull(message = "订单ID不能为空")
+    private Long orderId;
+    
+    /** 下单用户ID（秒杀商品按用户限购） */
+    private Long userId;
+    
+    @Valid
+    @NotEmpty(message = "锁定商品不能为空")
+    private List<InventoryDTO> items;
+}
@@ -8,6 +8,7 @@ import lombok.Builder;
 import javax.persistence.*;
 import java.io.Serializable;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 
 /**
  * 商品分类实体类
@@ -50,6 +51,10 @@ public class Category implements Serializable {
     @Column(nullable = false)
     private Integer status = 1;
     
+    /** 版本号，每次修改加1，用于校验分类缓存 */
+    @Version
+    private Long version;
+    
     /** 创建时间 */
     @Column(nullable = false, updatable = false)
     private LocalDateTime createTime;
@@ -58,16 +63,19 @@ public class Category implements Serializable {
     @Column(nullable = false)
     private LocalDateTime updateTime;
     
+    /**
+     * 时间截断到秒，与数据库DATETIME一致，缓存中的实体与数据库可以精确比对
+     */
     @PrePersist
     public void prePersist() {
-        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
         this.createTime = now;
         this.updateTime = now;
     }
     
     @PreUpdate
     public void preUpdate() {
-        this.updateTime = LocalDateTime.now();
+        this.updateTime = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
     }
 }
 
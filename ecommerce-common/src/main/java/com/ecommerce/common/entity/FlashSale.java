@@ -0,0 +1,76 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 秒杀活动实体类
+ * 开启时把秒杀配额从可用库存转入锁定库存，各节点按批从剩余配额中领取到内存计数器，
+ * 抢购只扣内存计数；结束时未领取的配额释放回可用库存
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_flash_sale", indexes = @Index(name = "idx_product_status", columnList = "product_id, status"))
+public class FlashSale implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** 状态：进行中 */
+    public static final int STATUS_ACTIVE = 0;
+    
+    /** 状态：已结束 */
+    public static final int STATUS_ENDED = 1;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 秒杀配额 */
+    @Column(nullable = false)
+    private Integer quota;
+    
+    /** 尚未被节点领取的配额 */
+    @Column(nullable = false)
+    private Integer remaining;
+    
+    /** 每个用户限购数量 */
+    @Column(nullable = false)
+    private Integer perUserLimit;
+    
+    /** 状态：0-进行中，1-已结束 */
+    @Column(nullable = false)
+    private Integer status = STATUS_ACTIVE;
+    
+    /** 创建时间 */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createTime;
+    
+    /** 更新时间 */
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+    
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime now = LocalDateTime.now();
+        this.createTime = now;
+        this.updateTime = now;
+    }
+    
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+}
@@ -46,6 +46,10 @@ public class Inventory implements Serializable {
     @Column(nullable = false)
     private Integer warningThreshold = 10;
     
+    /** 库存分桶数，大于1时库存分散在t_inventory_bucket中，本行的库存数为定时汇总值 */
+    @Column(nullable = false)
+    private Integer bucketCount = 1;
+    
     /** 创建时间 */
     @Column(nullable = false, updatable = false)
     private LocalDateTime createTime;
@@ -66,6 +70,13 @@ public class Inventory implements Serializable {
         this.updateTime = LocalDateTime.now();
     }
     
+    /**
+     * 是否分桶存放库存
+     */
+    public boolean isBucketed() {
+        return this.bucketCount != null && this.bucketCount > 1;
+    }
+    
     /**
      * 检查是否需要预警
      */
@@ -0,0 +1,56 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存分桶实体类
+ * 热点商品的可用/锁定库存拆分到多个桶，不同订单按订单ID落到不同的行，分散行锁竞争
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_inventory_bucket",
+        uniqueConstraints = @UniqueConstraint(name = "uk_product_bucket", columnNames = {"product_id", "bucket_no"}))
+public class InventoryBucket implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 桶序号，从0开始 */
+    @Column(nullable = false)
+    private Integer bucketNo;
+    
+    /** 可用库存 */
+    @Column(nullable = false)
+    private Integer availableStock;
+    
+    /** 锁定库存 */
+    @Column(nullable = false)
+    private Integer lockedStock;
+    
+    /** 更新时间 */
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+    
+    @PrePersist
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+}
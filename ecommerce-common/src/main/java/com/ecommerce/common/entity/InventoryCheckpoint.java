@@ -0,0 +1,46 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存引擎写库检查点
+ * 记录已写入数据库的最大日志序号，与库存变动在同一事务内更新，
+ * 启动恢复时只重放序号大于检查点的日志
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_inventory_checkpoint")
+public class InventoryCheckpoint implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** 库存引擎检查点的固定ID */
+    public static final long ENGINE_ID = 1L;
+    
+    @Id
+    private Long id;
+    
+    /** 已写库的最大日志序号 */
+    @Column(nullable = false)
+    private Long journalSeq = 0L;
+    
+    /** 更新时间 */
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+    
+    @PrePersist
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+}
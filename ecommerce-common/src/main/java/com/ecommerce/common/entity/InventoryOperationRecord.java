@@ -0,0 +1,61 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存操作记录实体类
+ * 以(订单ID, 商品ID, 操作类型)为幂等键，与库存变动在同一事务内写入，唯一约束保证同一操作只执行一次
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_inventory_operation_record",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_product_operation",
+                columnNames = {"order_id", "product_id", "operation_type"}),
+        indexes = @Index(name = "idx_create_time", columnList = "create_time"))
+public class InventoryOperationRecord implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 订单ID */
+    @Column(nullable = false)
+    private Long orderId;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 操作类型：LOCK-锁定, DEDUCT-扣减, RELEASE-释放 */
+    @Column(nullable = false, length = 20)
+    private String operationType;
+    
+    /** 变动数量 */
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    /** 操作结果 */
+    @Column(nullable = false)
+    private Boolean success;
+    
+    /** 创建时间 */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createTime;
+    
+    @PrePersist
+    public void prePersist() {
+        this.createTime = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,99 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存预占实体类
+ * 记录每个订单在每个商品上锁定的库存，扣减与释放按预占剩余数量进行，重复请求不会多扣多放；
+ * 超过过期时间仍未扣减或释放的预占由库存服务自行释放
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_inventory_reservation",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_product", columnNames = {"order_id", "product_id"}),
+        indexes = @Index(name = "idx_status_expire", columnList = "status, expire_time"))
+public class InventoryReservation implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** 状态：锁定中 */
+    public static final int STATUS_LOCKED = 0;
+    
+    /** 状态：已扣减 */
+    public static final int STATUS_DEDUCTED = 1;
+    
+    /** 状态：已释放 */
+    public static final int STATUS_RELEASED = 2;
+    
+    /** 状态：已过期（剩余锁定库存已由库存服务释放） */
+    public static final int STATUS_EXPIRED = 3;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 订单ID */
+    @Column(nullable = false)
+    private Long orderId;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 预占数量 */
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    /** 已扣减数量 */
+    @Column(nullable = false)
+    private Integer deductedQuantity = 0;
+    
+    /** 已释放数量 */
+    @Column(nullable = false)
+    private Integer releasedQuantity = 0;
+    
+    /** 状态：0-锁定中，1-已扣减，2-已释放，3-已过期 */
+    @Column(nullable = false)
+    private Integer status = STATUS_LOCKED;
+    
+    /** 过期时间 */
+    @Column(nullable = false)
+    private LocalDateTime expireTime;
+    
+    /** 创建时间 */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createTime;
+    
+    /** 更新时间 */
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+    
+    /**
+     * 尚未扣减或释放的锁定数量
+     */
+    public int getRemainingQuantity() {
+        return quantity - deductedQuantity - releasedQuantity;
+    }
+    
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime now = LocalDateTime.now();
+        this.createTime = now;
+        this.updateTime = now;
+    }
+    
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+}
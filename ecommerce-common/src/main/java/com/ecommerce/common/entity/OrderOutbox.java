@@ -0,0 +1,99 @@
+package com.ecommerce.common.entity;
+
+import com.ecommerce.common.enums.OutboxEventType;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 订单发件箱实体类
+ * 与订单状态变更在同一事务内写入，由后台任务异步投递到库存/商品服务
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_order_outbox")
+public class OrderOutbox implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** 状态：待投递 */
+    public static final int STATUS_PENDING = 0;
+    
+    /** 状态：已投递 */
+    public static final int STATUS_DELIVERED = 1;
+    
+    /** 状态：投递失败（超过最大重试次数） */
+    public static final int STATUS_FAILED = 2;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 订单ID */
+    @Column(nullable = false)
+    private Long orderId;
+    
+    /** 事件类型 */
+    @Column(nullable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private OutboxEventType eventType;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 数量 */
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    /** 状态：0-待投递，1-已投递，2-投递失败 */
+    @Column(nullable = false)
+    private Integer status = STATUS_PENDING;
+    
+    /** 已重试次数 */
+    @Column(nullable = false)
+    private Integer retryCount = 0;
+    
+    /** 下次投递时间 */
+    @Column(nullable = false)
+    private LocalDateTime nextRetryTime;
+    
+    /** 最近一次失败原因 */
+    @Column(length = 500)
+    private String lastError;
+    
+    /** 版本号，认领与保存投递结果时校验 */
+    @Version
+    private Long version;
+    
+    /** 创建时间 */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createTime;
+    
+    /** 更新时间 */
+    @Column(nullable = false)
+    private LocalDateTime updateTime;
+    
+    @PrePersist
+    public void prePersist() {
+        LocalDateTime now = LocalDateTime.now();
+        this.createTime = now;
+        this.updateTime = now;
+        if (this.nextRetryTime == null) {
+            this.nextRetryTime = now;
+        }
+    }
+    
+    @PreUpdate
+    public void preUpdate() {
+        this.updateTime = LocalDateTime.now();
+    }
+}
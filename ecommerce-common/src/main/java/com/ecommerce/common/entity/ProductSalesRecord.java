@@ -0,0 +1,52 @@
+package com.ecommerce.common.entity;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 商品销量记录实体类
+ * 以(订单ID, 商品ID)为幂等键，发件箱重复投递的增加销量请求只计入一次
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Entity
+@Table(name = "t_product_sales_record",
+        uniqueConstraints = @UniqueConstraint(name = "uk_order_product", columnNames = {"order_id", "product_id"}),
+        indexes = @Index(name = "idx_create_time", columnList = "create_time"))
+public class ProductSalesRecord implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /** 订单ID */
+    @Column(nullable = false)
+    private Long orderId;
+    
+    /** 商品ID */
+    @Column(nullable = false)
+    private Long productId;
+    
+    /** 销量增量 */
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    /** 创建时间 */
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createTime;
+    
+    @PrePersist
+    public void prePersist() {
+        this.createTime = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,18 @@
+package com.ecommerce.common.enums;
+
+import lombok.Getter;
+import lombok.AllArgsConstructor;
+
+/**
+ * 订单发件箱事件类型枚举
+ */
+@Getter
+@AllArgsConstructor
+public enum OutboxEventType {
+    
+    DEDUCT_STOCK("扣减库存"),
+    INCREASE_SALES("增加销量"),
+    RELEASE_STOCK("释放库存");
+    
+    private final String description;
+}
@@ -40,6 +40,10 @@ public enum ResultCode {
     INVENTORY_NOT_ENOUGH(3001, "库存不足"),
     INVENTORY_LOCK_FAILED(3002, "库存锁定失败"),
     INVENTORY_NOT_FOUND(3003, "库存记录不存在"),
+    INVENTORY_RESERVATION_INVALID(3004, "库存预占已释放或过期"),
+    FLASH_SALE_SOLD_OUT(3005, "秒杀商品已售罄"),
+    FLASH_SALE_LIMIT_EXCEEDED(3006, "超过秒杀限购数量"),
+    FLASH_SALE_BUSY(3007, "抢购人数过多，请稍后重试"),
     
     // 订单错误 4xxx
     ORDER_NOT_FOUND(4001, "订单不存在"),
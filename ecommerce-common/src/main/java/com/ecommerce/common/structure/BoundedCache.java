@@ -0,0 +1,329 @@
+package com.ecommerce.common.structure;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 有界本地缓存
+ * 按容量和写入后存活时间淘汰，采用W-TinyLFU思路：新条目先进入占总容量1%的窗口区（LRU），
+ * 被窗口挤出时与主区最久未访问的条目比较访问频率（Count-Min计数器估算，定期减半衰减），频率更高者留下，
+ * 避免一次性扫描把热点数据挤出缓存
+ * @param <K> 键类型
+ * @param <V> 值类型
+ */
+public class BoundedCache<K, V> {
+    
+    /** 失效代数的分段数，须为2的幂 */
+    private static final int GENERATION_STRIPES = 1024;
+    
+    private final int maximumSize;
+    private final long ttlNanos;
+    
+    /** 窗口区与主区，均为按访问顺序排列的LinkedHashMap，最久未访问的在前 */
+    private final LinkedHashMap<K, Entry<V>> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<K, Entry<V>> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final int windowCapacity;
+    private final int mainCapacity;
+    
+    private final FrequencySketch sketch;
+    
+    /**
+     * 按键哈希分段的失效代数，键失效时所在分段加一；加载前记下代数，写回时代数已变化说明
+     * 加载期间该键被失效过，不写入加载结果，避免把旧值放回缓存。
+     * 分段数固定，不随键增长；同分段其他键的失效只会让这次写回被放弃，不影响正确性
+     */
+    private final long[] generations = new long[GENERATION_STRIPES];
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    /**
+     * @param maximumSize 最大条目数
+     * @param ttl 写入后存活时间
+     * @param unit 时间单位
+     */
+    public BoundedCache(int maximumSize, long ttl, TimeUnit unit) {
+        if (maximumSize <= 0 || ttl <= 0) {
+            throw new IllegalArgumentException("缓存参数不合法");
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.windowCapacity = Math.max(1, maximumSize / 100);
+        this.mainCapacity = Math.max(0, maximumSize - windowCapacity);
+        this.sketch = new FrequencySketch(maximumSize);
+    }
+    
+    /**
+     * 获取缓存值
+     * @param key 键
+     * @return 值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        V value;
+        synchronized (this) {
+            value = lookup(key);
+        }
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+    
+    /**
+     * 获取缓存值，不存在时调用loader加载并写入
+     * 加载在锁外执行，并发未命中可能重复加载
+     * @param key 键
+     * @param loader 加载函数，返回null时不缓存
+     * @return 值
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long generation;
+        synchronized (this) {
+            V value = lookup(key);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            generation = generations[stripe(key)];
+        }
+        misses.increment();
+        
+        V loaded = loader.apply(key);
+        if (loaded != null) {
+            putIfNotInvalidated(key, loaded, generation);
+        }
+        return loaded;
+    }
+    
+    /**
+     * 获取键当前的失效代数，在读取数据源之前调用，写回时交给{@link #putIfNotInvalidated}
+     * @param key 键
+     * @return 失效代数
+     */
+    public synchronized long generation(K key) {
+        return generations[stripe(key)];
+    }
+    
+    /**
+     * 键自取得代数以来未被失效时才写入缓存
+     * @param key 键
+     * @param value 值
+     * @param generation 读取数据源之前由{@link #generation}取得的代数
+     * @return 是否写入
+     */
+    public synchronized boolean putIfNotInvalidated(K key, V value, long generation) {
+        if (value == null || generations[stripe(key)] != generation) {
+            return false;
+        }
+        store(key, value);
+        return true;
+    }
+    
+    /**
+     * 写入缓存
+     * @param key 键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        if (value == null) {
+            remove(key);
+            return;
+        }
+        store(key, value);
+    }
+    
+    /**
+     * 使单个键失效
+     * @param key 键
+     */
+    public synchronized void invalidate(K key) {
+        generations[stripe(key)]++;
+        remove(key);
+    }
+    
+    /**
+     * 清空缓存
+     */
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < generations.length; i++) {
+            generations[i]++;
+        }
+        window.clear();
+        main.clear();
+    }
+    
+    /**
+     * 当前条目数（含尚未清理的过期条目）
+     */
+    public synchronized int size() {
+        return window.size() + main.size();
+    }
+    
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+    
+    public long hitCount() {
+        return hits.sum();
+    }
+    
+    public long missCount() {
+        return misses.sum();
+    }
+    
+    public long evictionCount() {
+        return evictions.sum();
+    }
+    
+    private V lookup(K key) {
+        sketch.increment(key);
+        Entry<V> entry = window.get(key);
+        Map<K, Entry<V>> region = window;
+        if (entry == null) {
+            entry = main.get(key);
+            region = main;
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expireAt - System.nanoTime() <= 0) {
+            region.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+    
+    private void store(K key, V value) {
+        Entry<V> entry = new Entry<>(value, System.nanoTime() + ttlNanos);
+        if (window.containsKey(key)) {
+            window.put(key, entry);
+            return;
+        }
+        if (main.containsKey(key)) {
+            main.put(key, entry);
+            return;
+        }
+        
+        sketch.increment(key);
+        window.put(key, entry);
+        if (window.size() <= windowCapacity) {
+            return;
+        }
+        
+        // 窗口区已满，最久未访问的候选者尝试进入主区
+        Iterator<Map.Entry<K, Entry<V>>> windowIterator = window.entrySet().iterator();
+        Map.Entry<K, Entry<V>> candidate = windowIterator.next();
+        windowIterator.remove();
+        if (main.size() < mainCapacity) {
+            main.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+        if (mainCapacity == 0) {
+            evictions.increment();
+            return;
+        }
+        
+        Iterator<Map.Entry<K, Entry<V>>> mainIterator = main.entrySet().iterator();
+        Map.Entry<K, Entry<V>> victim = mainIterator.next();
+        boolean victimExpired = victim.getValue().expireAt - System.nanoTime() <= 0;
+        if (victimExpired || sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+            mainIterator.remove();
+            main.put(candidate.getKey(), candidate.getValue());
+        }
+        evictions.increment();
+    }
+    
+    private static int stripe(Object key) {
+        int h = key.hashCode() * 0x9e3779b9;
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+    
+    private void remove(K key) {
+        if (window.remove(key) == null) {
+            main.remove(key);
+        }
+    }
+    
+    private static final class Entry<V> {
+        private final V value;
+        private final long expireAt;
+        
+        private Entry(V value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+    
+    /**
+     * Count-Min频率估算：4行计数器，每个计数上限15，
+     * 累计增加次数达到容量的10倍时所有计数减半，使频率随时间衰减
+     */
+    private static final class FrequencySketch {
+        
+        private static final int[] SEEDS = {0x97cb3127, 0xa5b3a7c5, 0x6d2b79f5, 0x8f1bbcdc};
+        private static final int MAX_COUNT = 15;
+        
+        private final byte[][] rows;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+        
+        private FrequencySketch(int maximumSize) {
+            int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+            this.rows = new byte[SEEDS.length][width];
+            this.mask = width - 1;
+            this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maximumSize);
+        }
+        
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = index(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+        
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, rows[i][index(hash, i)]);
+            }
+            return frequency;
+        }
+        
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h += h >>> 16;
+            return h & mask;
+        }
+        
+        private void reset() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            additions >>>= 1;
+        }
+        
+        private static int spread(int hash) {
+            int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
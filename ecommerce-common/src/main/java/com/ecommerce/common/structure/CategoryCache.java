@@ -2,51 +2,65 @@ package com.ecommerce.common.structure;
 
 import com.ecommerce.common.entity.Category;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 商品分类缓存
- * 使用HashMap数据结构实现分类的快速查询和树形结构构建
+ * 采用写时复制：每次修改都在旁路构建一份新的不可变快照（ID映射、按sort预排序的子分类、父节点指针、分类树），
+ * 再通过一次volatile写发布；读操作只读取当前快照，无锁且总能看到一致的完整分类树。
+ * 单个分类的增删改只替换受影响的子分类列表，并沿祖先路径重建分类树节点，其余子树在新旧快照间共享；
+ * 每个快照首次查询子树或路径时按先序遍历编号，子树即编号区间，完整路径同时缓存
  */
 public class CategoryCache {
     
-    /** 分类ID -> 分类对象映射 */
-    private final Map<Long, Category> categoryMap;
+    /** 同级分类排序：sort升序，相同时按ID升序 */
+    private static final Comparator<Category> SORT_ORDER = Comparator
+            .comparingInt((Category c) -> c.getSort() != null ? c.getSort() : 0)
+            .thenComparing(Category::getId);
     
-    /** 父分类ID -> 子分类列表映射 */
-    private final Map<Long, List<Category>> childrenMap;
+    /** 当前发布的快照 */
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
     
     public CategoryCache() {
-        this.categoryMap = new ConcurrentHashMap<>();
-        this.childrenMap = new ConcurrentHashMap<>();
     }
     
     /**
-     * 加载所有分类到缓存
+     * 加载所有分类到缓存，构建完成后整体替换旧快照
      * @param categories 分类列表
      */
-    public void loadAll(List<Category> categories) {
-        clear();
-        for (Category category : categories) {
-            put(category);
-        }
+    public synchronized void loadAll(List<Category> categories) {
+        snapshot = Snapshot.EMPTY.apply(copyAll(categories), Collections.emptyList(), snapshot.version + 1);
     }
     
     /**
-     * 添加单个分类到缓存
+     * 添加或替换单个分类
+     * 父分类变化（移动）、排序变化都在此完成，只调整新旧父分类的子分类列表
      * @param category 分类对象
      */
     public void put(Category category) {
-        if (category == null || category.getId() == null) {
+        apply(Collections.singletonList(category), Collections.emptyList());
+    }
+    
+    /**
+     * 批量添加或替换分类，只发布一次快照
+     * @param categories 分类列表
+     */
+    public void putAll(Collection<Category> categories) {
+        apply(categories, Collections.emptyList());
+    }
+    
+    /**
+     * 批量应用变更：先移除再添加，只发布一次快照
+     * @param puts 需要添加或替换的分类
+     * @param removeIds 需要移除的分类ID
+     */
+    public synchronized void apply(Collection<Category> puts, Collection<Long> removeIds) {
+        List<Category> copies = copyAll(puts);
+        if (copies.isEmpty() && removeIds.isEmpty()) {
             return;
         }
-        categoryMap.put(category.getId(), category);
-        
-        // 更新父子关系
-        Long parentId = category.getParentId() != null ? category.getParentId() : 0L;
-        childrenMap.computeIfAbsent(parentId, k -> new ArrayList<>()).add(category);
+        snapshot = snapshot.apply(copies, removeIds, snapshot.version + 1);
     }
     
     /**
@@ -55,7 +69,7 @@ public class CategoryCache {
      * @return 分类对象
      */
     public Category get(Long id) {
-        return categoryMap.get(id);
+        return snapshot.categoryMap.get(id);
     }
     
     /**
@@ -64,17 +78,17 @@ public class CategoryCache {
      * @return 分类名称
      */
     public String getName(Long id) {
-        Category category = categoryMap.get(id);
+        Category category = snapshot.categoryMap.get(id);
         return category != null ? category.getName() : null;
     }
     
     /**
      * 获取子分类列表
      * @param parentId 父分类ID
-     * @return 子分类列表
+     * @return 按sort排序的子分类列表（不可修改）
      */
     public List<Category> getChildren(Long parentId) {
-        return childrenMap.getOrDefault(parentId, Collections.emptyList());
+        return snapshot.childrenMap.getOrDefault(parentId, Collections.emptyList());
     }
     
     /**
@@ -90,7 +104,7 @@ public class CategoryCache {
      * @return 所有分类列表
      */
     public List<Category> getAll() {
-        return new ArrayList<>(categoryMap.values());
+        return new ArrayList<>(snapshot.categoryMap.values());
     }
     
     /**
@@ -98,22 +112,23 @@ public class CategoryCache {
      * @param id 分类ID
      */
     public void remove(Long id) {
-        Category removed = categoryMap.remove(id);
-        if (removed != null) {
-            Long parentId = removed.getParentId() != null ? removed.getParentId() : 0L;
-            List<Category> siblings = childrenMap.get(parentId);
-            if (siblings != null) {
-                siblings.removeIf(c -> c.getId().equals(id));
-            }
-        }
+        apply(Collections.emptyList(), Collections.singletonList(id));
     }
     
     /**
      * 清空缓存
      */
-    public void clear() {
-        categoryMap.clear();
-        childrenMap.clear();
+    public synchronized void clear() {
+        snapshot = Snapshot.EMPTY.apply(Collections.emptyList(), Collections.emptyList(), snapshot.version + 1);
+    }
+    
+    /**
+     * 获取缓存版本号，每发布一次快照加1
+     * 先读版本号再读数据时，数据不会旧于该版本
+     * @return 版本号
+     */
+    public long getVersion() {
+        return snapshot.version;
     }
     
     /**
@@ -121,7 +136,7 @@ public class CategoryCache {
      * @return 缓存中的分类数量
      */
     public int size() {
-        return categoryMap.size();
+        return snapshot.categoryMap.size();
     }
     
     /**
@@ -130,7 +145,7 @@ public class CategoryCache {
      * @return 是否存在
      */
     public boolean contains(Long id) {
-        return categoryMap.containsKey(id);
+        return snapshot.categoryMap.containsKey(id);
     }
     
     /**
@@ -139,47 +154,342 @@ public class CategoryCache {
      * @return 路径名称，如"电子产品/手机/智能手机"
      */
     public String getFullPath(Long id) {
-        List<String> path = new ArrayList<>();
-        Category current = categoryMap.get(id);
-        
-        while (current != null) {
-            path.add(0, current.getName());
-            if (current.getParentId() == null || current.getParentId() == 0) {
-                break;
-            }
-            current = categoryMap.get(current.getParentId());
+        Snapshot current = snapshot;
+        String cached = current.treeIndex().fullPaths.get(id);
+        if (cached != null) {
+            return cached;
         }
         
+        // 数据异常形成环的分类不在遍历结果中，逐级向上拼接
+        Deque<String> path = new ArrayDeque<>();
+        Category category = current.categoryMap.get(id);
+        // 路径长度不超过分类总数，防止数据异常形成环
+        while (category != null && path.size() < current.categoryMap.size()) {
+            path.addFirst(category.getName());
+            category = current.categoryMap.get(category.getParentId());
+        }
         return String.join("/", path);
     }
     
     /**
-     * 构建分类树形结构
-     * @return 树形分类列表
+     * 获取分类及其所有后代分类的ID
+     * @param id 分类ID
+     * @return 先序排列的ID列表，第一个为分类自身；分类不在缓存中时返回空列表
+     */
+    public List<Long> getSubtreeIds(Long id) {
+        TreeIndex index = snapshot.treeIndex();
+        Integer start = index.enter.get(id);
+        if (start == null) {
+            return Collections.emptyList();
+        }
+        int end = index.exit[start];
+        List<Long> ids = new ArrayList<>(end - start + 1);
+        for (int i = start; i <= end; i++) {
+            ids.add(index.order[i]);
+        }
+        return ids;
+    }
+    
+    /**
+     * 判断分类是否位于指定分类的子树中（含自身）
+     * @param rootId 子树根分类ID
+     * @param id 分类ID
+     * @return 是否位于子树中
+     */
+    public boolean isInSubtree(Long rootId, Long id) {
+        TreeIndex index = snapshot.treeIndex();
+        Integer root = index.enter.get(rootId);
+        Integer position = index.enter.get(id);
+        return root != null && position != null && position >= root && position <= index.exit[root];
+    }
+    
+    /**
+     * 获取分类树形结构，随快照一起预先构建
+     * @return 树形分类列表（不可修改）
      */
     public List<CategoryTreeNode> buildTree() {
-        return buildTreeRecursive(0L);
+        return snapshot.tree;
     }
     
-    private List<CategoryTreeNode> buildTreeRecursive(Long parentId) {
-        List<Category> children = getChildren(parentId);
-        if (children.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * 计算当前快照的校验值，用于和数据库比对发现漂移
+     * @return 校验值
+     */
+    public Checksum checksum() {
+        long idSum = 0;
+        long parentIdSum = 0;
+        long sortSum = 0;
+        long versionSum = 0;
+        LocalDateTime maxUpdateTime = null;
+        Collection<Category> categories = snapshot.categoryMap.values();
+        for (Category category : categories) {
+            idSum += category.getId();
+            parentIdSum += category.getParentId();
+            sortSum += category.getSort() != null ? category.getSort() : 0;
+            versionSum += category.getVersion() != null ? category.getVersion() : 0;
+            LocalDateTime updateTime = category.getUpdateTime();
+            if (updateTime != null && (maxUpdateTime == null || updateTime.isAfter(maxUpdateTime))) {
+                maxUpdateTime = updateTime;
+            }
+        }
+        return new Checksum(categories.size(), idSum, parentIdSum, sortSum, versionSum, maxUpdateTime);
+    }
+    
+    private static List<Category> copyAll(Collection<Category> categories) {
+        List<Category> copies = new ArrayList<>(categories.size());
+        for (Category category : categories) {
+            if (category != null && category.getId() != null) {
+                copies.add(copyOf(category));
+            }
+        }
+        return copies;
+    }
+    
+    /**
+     * 复制分类，避免缓存与JPA托管实体共享同一对象
+     */
+    private static Category copyOf(Category category) {
+        return Category.builder()
+                .id(category.getId())
+                .name(category.getName())
+                .parentId(category.getParentId() != null ? category.getParentId() : 0L)
+                .level(category.getLevel())
+                .sort(category.getSort())
+                .icon(category.getIcon())
+                .status(category.getStatus())
+                .version(category.getVersion())
+                .createTime(category.getCreateTime())
+                .updateTime(category.getUpdateTime())
+                .build();
+    }
+    
+    /**
+     * 分类缓存的不可变快照，发布后不再修改
+     */
+    private static final class Snapshot {
+        
+        static final Snapshot EMPTY = new Snapshot(0L, Collections.emptyMap(), Collections.emptyMap(),
+                Collections.emptyMap(), Collections.emptyList());
+        
+        /** 版本号 */
+        private final long version;
+        
+        /** 分类ID -> 分类对象映射，分类的parentId即父节点指针 */
+        private final Map<Long, Category> categoryMap;
+        
+        /** 父分类ID -> 按sort排序的子分类列表 */
+        private final Map<Long, List<Category>> childrenMap;
+        
+        /** 分类ID -> 分类树节点，未变化的子树在快照间共享 */
+        private final Map<Long, CategoryTreeNode> treeNodes;
+        
+        /** 从顶级分类开始的分类树 */
+        private final List<CategoryTreeNode> tree;
+        
+        /** 先序编号与完整路径，首次使用时构建 */
+        private volatile TreeIndex treeIndex;
+        
+        private Snapshot(long version, Map<Long, Category> categoryMap, Map<Long, List<Category>> childrenMap,
+                         Map<Long, CategoryTreeNode> treeNodes, List<CategoryTreeNode> tree) {
+            this.version = version;
+            this.categoryMap = categoryMap;
+            this.childrenMap = childrenMap;
+            this.treeNodes = treeNodes;
+            this.tree = tree;
+        }
+        
+        /**
+         * 获取先序编号索引，并发首次访问时可能重复构建，结果相同
+         */
+        TreeIndex treeIndex() {
+            TreeIndex index = treeIndex;
+            if (index == null) {
+                index = TreeIndex.build(categoryMap, childrenMap);
+                treeIndex = index;
+            }
+            return index;
         }
         
-        return children.stream()
-            .sorted(Comparator.comparingInt(Category::getSort))
-            .map(category -> {
-                CategoryTreeNode node = new CategoryTreeNode();
-                node.setId(category.getId());
-                node.setName(category.getName());
-                node.setParentId(category.getParentId());
-                node.setLevel(category.getLevel());
-                node.setIcon(category.getIcon());
-                node.setChildren(buildTreeRecursive(category.getId()));
-                return node;
-            })
-            .collect(Collectors.toList());
+        /**
+         * 在当前快照基础上应用变更，返回新快照，当前快照保持不变
+         */
+        Snapshot apply(List<Category> puts, Collection<Long> removeIds, long nextVersion) {
+            Map<Long, Category> categories = new HashMap<>(categoryMap);
+            Map<Long, List<Category>> children = new HashMap<>(childrenMap);
+            Map<Long, List<Category>> changedLists = new HashMap<>();
+            Set<Long> dirty = new HashSet<>();
+            
+            for (Long id : removeIds) {
+                Category old = categories.remove(id);
+                if (old != null) {
+                    editableChildren(children, changedLists, old.getParentId()).removeIf(c -> c.getId().equals(id));
+                    dirty.add(id);
+                    dirty.add(old.getParentId());
+                }
+            }
+            for (Category category : puts) {
+                Category old = categories.put(category.getId(), category);
+                if (old != null) {
+                    editableChildren(children, changedLists, old.getParentId())
+                            .removeIf(c -> c.getId().equals(category.getId()));
+                    dirty.add(old.getParentId());
+                }
+                editableChildren(children, changedLists, category.getParentId()).add(category);
+                dirty.add(category.getId());
+                dirty.add(category.getParentId());
+            }
+            
+            // 只对变化过的子分类列表重新排序
+            for (Map.Entry<Long, List<Category>> entry : changedLists.entrySet()) {
+                List<Category> list = entry.getValue();
+                if (list.isEmpty()) {
+                    children.remove(entry.getKey());
+                } else {
+                    list.sort(SORT_ORDER);
+                    children.put(entry.getKey(), Collections.unmodifiableList(list));
+                }
+            }
+            
+            // 变化节点的所有祖先都需要重建树节点
+            for (Long id : new ArrayList<>(dirty)) {
+                Category ancestor = categories.get(id);
+                int depth = 0;
+                while (ancestor != null && depth++ < categories.size() && dirty.add(ancestor.getParentId())) {
+                    ancestor = categories.get(ancestor.getParentId());
+                }
+            }
+            
+            Map<Long, CategoryTreeNode> nodes = new HashMap<>(treeNodes);
+            nodes.keySet().removeAll(dirty);
+            List<CategoryTreeNode> roots = buildTree(children, 0L, dirty, nodes, new HashSet<>());
+            
+            return new Snapshot(nextVersion,
+                    Collections.unmodifiableMap(categories),
+                    Collections.unmodifiableMap(children),
+                    nodes,
+                    roots);
+        }
+        
+        /**
+         * 获取某个父分类下可修改的子分类列表副本，同一次变更中只复制一次
+         */
+        private static List<Category> editableChildren(Map<Long, List<Category>> children,
+                                                       Map<Long, List<Category>> changedLists, Long parentId) {
+            return changedLists.computeIfAbsent(parentId,
+                    k -> new ArrayList<>(children.getOrDefault(k, Collections.emptyList())));
+        }
+        
+        /**
+         * 重建分类树，未变化且已有节点的子树直接复用
+         */
+        private static List<CategoryTreeNode> buildTree(Map<Long, List<Category>> childrenMap, Long parentId,
+                                                        Set<Long> dirty, Map<Long, CategoryTreeNode> nodes,
+                                                        Set<Long> visited) {
+            List<Category> children = childrenMap.get(parentId);
+            if (children == null) {
+                return Collections.emptyList();
+            }
+            
+            List<CategoryTreeNode> result = new ArrayList<>(children.size());
+            for (Category category : children) {
+                // 数据异常形成环时不再向下展开
+                if (!visited.add(category.getId())) {
+                    continue;
+                }
+                CategoryTreeNode node = nodes.get(category.getId());
+                if (node == null || dirty.contains(category.getId())) {
+                    node = new CategoryTreeNode();
+                    node.setId(category.getId());
+                    node.setName(category.getName());
+                    node.setParentId(category.getParentId());
+                    node.setLevel(category.getLevel());
+                    node.setIcon(category.getIcon());
+                    node.setChildren(buildTree(childrenMap, category.getId(), dirty, nodes, visited));
+                    nodes.put(category.getId(), node);
+                }
+                result.add(node);
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+    
+    /**
+     * 先序遍历索引：子树在先序序列中连续，enter/exit即子树的编号区间
+     */
+    private static final class TreeIndex {
+        
+        /** 按先序排列的分类ID */
+        private final long[] order;
+        
+        /** 分类ID -> 先序编号 */
+        private final Map<Long, Integer> enter;
+        
+        /** 先序编号 -> 子树最后一个节点的编号 */
+        private final int[] exit;
+        
+        /** 分类ID -> 完整路径名称 */
+        private final Map<Long, String> fullPaths;
+        
+        private int count;
+        
+        private TreeIndex(int size) {
+            this.order = new long[size];
+            this.exit = new int[size];
+            this.enter = new HashMap<>(size * 2);
+            this.fullPaths = new HashMap<>(size * 2);
+        }
+        
+        static TreeIndex build(Map<Long, Category> categoryMap, Map<Long, List<Category>> childrenMap) {
+            TreeIndex index = new TreeIndex(categoryMap.size());
+            for (Category root : childrenMap.getOrDefault(0L, Collections.emptyList())) {
+                index.visit(root, null, childrenMap);
+            }
+            // 父分类不在缓存中（如已禁用）的分类各自作为子树的根
+            for (Category category : categoryMap.values()) {
+                Long parentId = category.getParentId();
+                if (parentId != 0L && !categoryMap.containsKey(parentId)) {
+                    index.visit(category, null, childrenMap);
+                }
+            }
+            return index;
+        }
+        
+        private void visit(Category category, String parentPath, Map<Long, List<Category>> childrenMap) {
+            Long id = category.getId();
+            if (enter.containsKey(id)) {
+                return;
+            }
+            int position = count++;
+            order[position] = id;
+            enter.put(id, position);
+            String path = parentPath == null ? category.getName() : parentPath + "/" + category.getName();
+            fullPaths.put(id, path);
+            for (Category child : childrenMap.getOrDefault(id, Collections.emptyList())) {
+                visit(child, path, childrenMap);
+            }
+            exit[position] = count - 1;
+        }
+    }
+    
+    /**
+     * 分类缓存校验值：数量、ID之和、父ID之和、排序之和、版本号之和、最近更新时间。
+     * 任何修改都会使版本号之和增加，更新时间写入时已截断到秒，各项均精确比较
+     */
+    @lombok.Value
+    public static class Checksum {
+        long count;
+        long idSum;
+        long parentIdSum;
+        long sortSum;
+        long versionSum;
+        LocalDateTime maxUpdateTime;
+        
+        public boolean matches(Checksum other) {
+            return count == other.count && idSum == other.idSum
+                    && parentIdSum == other.parentIdSum && sortSum == other.sortSum
+                    && versionSum == other.versionSum
+                    && Objects.equals(maxUpdateTime, other.maxUpdateTime);
+        }
     }
     
     /**
@@ -195,5 +505,3 @@ public class CategoryCache {
         private List<CategoryTreeNode> children;
     }
 }
-
-
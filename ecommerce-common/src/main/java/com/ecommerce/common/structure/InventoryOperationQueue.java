@@ -1,141 +1,248 @@
 package com.ecommerce.common.structure;
 
 import com.ecommerce.common.enums.InventoryOperationType;
-import lombok.Data;
-import lombok.AllArgsConstructor;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 /**
  * 库存操作队列
- * 使用队列数据结构记录库存操作，支持异步处理
+ * 多生产者单消费者的有界环形队列，容量取2的幂，槽位在创建时全部分配，入队只复制基本类型字段，不产生对象。
+ * 每个槽位带一个序号：等于位置时可写，等于位置+1时可读，消费后推进一圈，
+ * 生产者只有在槽位已被消费时才能占用位置，队列长度不会超过容量。
+ * 队列满时按FullPolicy处理：阻塞等待、自旋等待或直接拒绝
  */
 public class InventoryOperationQueue {
     
-    /** 操作队列 */
-    private final ConcurrentLinkedQueue<InventoryOperation> queue;
+    /** 阻塞等待时每次挂起的时长（纳秒） */
+    private static final long PARK_NANOS = 100_000L;
     
-    /** 队列大小计数器 */
-    private final AtomicInteger size;
+    /** 自旋等待超过该次数后每次让出CPU，避免生产者多于CPU核数时饿死消费者 */
+    private static final int SPIN_TRIES = 100;
     
-    /** 最大队列长度 */
-    private final int maxSize;
-    
-    public InventoryOperationQueue() {
-        this(10000);
+    /**
+     * 队列满时的处理策略
+     */
+    public enum FullPolicy {
+        /** 挂起等待空位，适合生产者较多、不希望占满CPU的场景 */
+        BLOCK,
+        /** 自旋等待空位，等待时间短但占用CPU */
+        SPIN,
+        /** 立即返回失败 */
+        REJECT
     }
     
-    public InventoryOperationQueue(int maxSize) {
-        this.queue = new ConcurrentLinkedQueue<>();
-        this.size = new AtomicInteger(0);
-        this.maxSize = maxSize;
-    }
+    private final InventoryOperation[] slots;
     
-    /**
-     * 库存操作记录
-     */
-    @Data
-    @AllArgsConstructor
-    public static class InventoryOperation {
-        private Long productId;
-        private Long orderId;
-        private InventoryOperationType operationType;
-        private Integer quantity;
-        private LocalDateTime operationTime;
-        private String remark;
+    /** 每个槽位的序号 */
+    private final AtomicLongArray sequences;
+    
+    private final int mask;
+    
+    private final FullPolicy fullPolicy;
+    
+    /** 下一个入队位置，生产者CAS竞争 */
+    private final AtomicLong tail = new AtomicLong();
+    
+    /** 下一个出队位置，只由消费者线程推进 */
+    private volatile long head;
+    
+    public InventoryOperationQueue() {
+        this(10000, FullPolicy.REJECT);
     }
     
     /**
-     * 入队操作
-     * @param operation 操作记录
-     * @return 是否成功
+     * @param capacity 最小容量，向上取整为2的幂且至少为2：只有一个槽位时"位置+1可读"与下一圈"位置可写"无法区分
+     * @param fullPolicy 队列满时的处理策略
      */
-    public boolean enqueue(InventoryOperation operation) {
-        if (size.get() >= maxSize) {
-            return false;
+    public InventoryOperationQueue(int capacity, FullPolicy fullPolicy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("队列容量不合法: " + capacity);
         }
-        boolean added = queue.offer(operation);
-        if (added) {
-            size.incrementAndGet();
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = new InventoryOperation[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new InventoryOperation();
+            sequences.set(i, i);
         }
-        return added;
+        this.mask = size - 1;
+        this.fullPolicy = fullPolicy;
     }
     
     /**
-     * 出队操作
-     * @return 操作记录，队列为空返回null
+     * 入队操作，队列满时按策略等待，最多等待指定时间
+     * @param productId 商品ID
+     * @param orderId 订单ID，没有订单时为null
+     * @param operationType 操作类型
+     * @param quantity 变动数量
+     * @param beforeStock 操作前库存
+     * @param afterStock 操作后库存
+     * @param timeout 等待时间，REJECT策略忽略
+     * @param unit 时间单位
+     * @return 是否成功，队列满且等待超时返回false
      */
-    public InventoryOperation dequeue() {
-        InventoryOperation operation = queue.poll();
-        if (operation != null) {
-            size.decrementAndGet();
+    public boolean enqueue(long productId, Long orderId, InventoryOperationType operationType,
+                           int quantity, int beforeStock, int afterStock, long timeout, TimeUnit unit) {
+        long pos = claim();
+        if (pos < 0 && fullPolicy != FullPolicy.REJECT) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int spins = 0;
+            while (pos < 0 && deadline - System.nanoTime() > 0) {
+                if (fullPolicy == FullPolicy.BLOCK) {
+                    LockSupport.parkNanos(PARK_NANOS);
+                    if (Thread.currentThread().isInterrupted()) {
+                        return false;
+                    }
+                } else if (++spins < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+                pos = claim();
+            }
         }
-        return operation;
+        if (pos < 0) {
+            return false;
+        }
+        int index = (int) (pos & mask);
+        InventoryOperation slot = slots[index];
+        slot.productId = productId;
+        slot.orderId = orderId != null ? orderId : 0L;
+        slot.operationType = operationType;
+        slot.quantity = quantity;
+        slot.beforeStock = beforeStock;
+        slot.afterStock = afterStock;
+        slot.operationTime = System.currentTimeMillis();
+        sequences.setRelease(index, pos + 1);
+        return true;
     }
     
     /**
-     * 查看队首元素（不移除）
-     * @return 操作记录
+     * 批量出队，不等待，只能由单个消费者线程调用
+     * @param consumer 处理操作记录，槽位在回调返回后即被复用，不能保存引用
+     * @param maxElements 最多取出的条数
+     * @return 实际取出的条数
      */
-    public InventoryOperation peek() {
-        return queue.peek();
+    public int drainTo(Consumer<? super InventoryOperation> consumer, int maxElements) {
+        long pos = head;
+        int count = 0;
+        while (count < maxElements) {
+            int index = (int) (pos & mask);
+            if (sequences.getAcquire(index) != pos + 1) {
+                break;
+            }
+            consumer.accept(slots[index]);
+            sequences.setRelease(index, pos + slots.length);
+            pos++;
+            count++;
+        }
+        head = pos;
+        return count;
     }
     
     /**
-     * 获取队列大小
+     * 获取队列大小，包含已占位但尚未写完的记录
      * @return 队列当前大小
      */
     public int size() {
-        return size.get();
+        long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(size, slots.length));
     }
     
     /**
-     * 检查队列是否为空
-     * @return 是否为空
+     * 获取队列容量
+     * @return 队列容量
      */
-    public boolean isEmpty() {
-        return queue.isEmpty();
+    public int capacity() {
+        return slots.length;
     }
     
     /**
-     * 清空队列
+     * 检查队列是否为空
+     * @return 是否为空
      */
-    public void clear() {
-        queue.clear();
-        size.set(0);
+    public boolean isEmpty() {
+        return size() == 0;
     }
     
-    /**
-     * 创建锁定库存操作
-     */
-    public static InventoryOperation createLockOperation(Long productId, Long orderId, Integer quantity) {
-        return new InventoryOperation(
-            productId, orderId, InventoryOperationType.LOCK, 
-            quantity, LocalDateTime.now(), "订单锁定库存"
-        );
+    public FullPolicy getFullPolicy() {
+        return fullPolicy;
     }
     
     /**
-     * 创建扣减库存操作
+     * 占用一个入队位置
+     * @return 位置，队列满时返回-1
      */
-    public static InventoryOperation createDeductOperation(Long productId, Long orderId, Integer quantity) {
-        return new InventoryOperation(
-            productId, orderId, InventoryOperationType.DEDUCT, 
-            quantity, LocalDateTime.now(), "订单扣减库存"
-        );
+    private long claim() {
+        long pos = tail.get();
+        while (true) {
+            long diff = sequences.getAcquire((int) (pos & mask)) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 槽位还是上一圈的记录，未被消费
+                return -1;
+            } else {
+                pos = tail.get();
+            }
+        }
     }
     
     /**
-     * 创建释放库存操作
+     * 库存操作记录槽位，字段由队列在入队时覆盖
      */
-    public static InventoryOperation createReleaseOperation(Long productId, Long orderId, Integer quantity) {
-        return new InventoryOperation(
-            productId, orderId, InventoryOperationType.RELEASE, 
-            quantity, LocalDateTime.now(), "订单取消释放库存"
-        );
+    public static final class InventoryOperation {
+        
+        long productId;
+        /** 订单ID，没有订单时为0 */
+        long orderId;
+        InventoryOperationType operationType;
+        int quantity;
+        int beforeStock;
+        int afterStock;
+        /** 操作时间（毫秒） */
+        long operationTime;
+        
+        InventoryOperation() {
+        }
+        
+        public long getProductId() {
+            return productId;
+        }
+        
+        public Long getOrderId() {
+            return orderId != 0L ? orderId : null;
+        }
+        
+        public InventoryOperationType getOperationType() {
+            return operationType;
+        }
+        
+        public int getQuantity() {
+            return quantity;
+        }
+        
+        public int getBeforeStock() {
+            return beforeStock;
+        }
+        
+        public int getAfterStock() {
+            return afterStock;
+        }
+        
+        public long getOperationTime() {
+            return operationTime;
+        }
+        
+        public String getRemark() {
+            return operationType.getDescription();
+        }
     }
 }
-
-
@@ -0,0 +1,215 @@
+package com.ecommerce.common.structure;
+
+import java.util.Arrays;
+
+/**
+ * 并发的long到int计数表
+ * 按键哈希分段加锁，每段是开放寻址的基本类型数组（键long、计数int，每个槽位12字节），
+ * 装载因子不超过1/2，每个键实际占24到48字节；不为每个键分配对象，适合记录大量用户的购买数量。
+ * 条目不删除，计数可以减到0
+ */
+public class LongCountMap {
+    
+    /** 空槽标记，该值不能作为键 */
+    private static final long EMPTY = Long.MIN_VALUE;
+    
+    private final Segment[] segments;
+    private final int segmentShift;
+    
+    public LongCountMap() {
+        this(64, 16);
+    }
+    
+    /**
+     * @param segmentCount 分段数，向上取整为2的幂
+     * @param initialCapacity 每段初始容量，向上取整为2的幂
+     */
+    public LongCountMap(int segmentCount, int initialCapacity) {
+        int count = Integer.highestOneBit(Math.max(1, segmentCount - 1) << 1);
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity - 1) << 1);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(capacity);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+    
+    /**
+     * 计数加上delta后不超过上限时累加
+     * @param key 键
+     * @param delta 增量
+     * @param limit 上限
+     * @return 是否已累加
+     */
+    public boolean tryAdd(long key, int delta, int limit) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int index = segment.indexOf(key, hash);
+            int current = index >= 0 ? segment.counts[index] : 0;
+            if (current + delta > limit) {
+                return false;
+            }
+            segment.put(key, hash, index, current + delta);
+            return true;
+        }
+    }
+    
+    /**
+     * 累加计数，delta可以为负
+     * @return 累加后的计数
+     */
+    public int add(long key, int delta) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int index = segment.indexOf(key, hash);
+            int value = (index >= 0 ? segment.counts[index] : 0) + delta;
+            segment.put(key, hash, index, value);
+            return value;
+        }
+    }
+    
+    /**
+     * 设置计数
+     */
+    public void put(long key, int value) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            segment.put(key, hash, segment.indexOf(key, hash), value);
+        }
+    }
+    
+    /**
+     * 是否有该键的计数
+     */
+    public boolean containsKey(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.indexOf(key, hash) >= 0;
+        }
+    }
+    
+    /**
+     * 获取计数
+     * @return 计数，键不存在时为0
+     */
+    public int get(long key) {
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            int index = segment.indexOf(key, hash);
+            return index >= 0 ? segment.counts[index] : 0;
+        }
+    }
+    
+    /**
+     * 获取键的数量
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * 清空所有计数
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+    
+    private Segment segmentFor(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+    
+    private static long hash(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("不支持的键: " + key);
+        }
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+    
+    /**
+     * 一个分段：线性探测的开放寻址表，装载因子超过1/2时扩容
+     */
+    private static final class Segment {
+        
+        private long[] keys;
+        private int[] counts;
+        private int size;
+        
+        Segment(int capacity) {
+            keys = new long[capacity];
+            counts = new int[capacity];
+            Arrays.fill(keys, EMPTY);
+        }
+        
+        /**
+         * @return 键所在槽位，不存在时返回 -(插入位置 + 1)
+         */
+        int indexOf(long key, long hash) {
+            int mask = keys.length - 1;
+            int index = (int) hash & mask;
+            while (keys[index] != EMPTY) {
+                if (keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -(index + 1);
+        }
+        
+        void put(long key, long hash, int index, int value) {
+            if (index >= 0) {
+                counts[index] = value;
+                return;
+            }
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+                index = indexOf(key, hash);
+            }
+            int slot = -(index + 1);
+            keys[slot] = key;
+            counts[slot] = value;
+            size++;
+        }
+        
+        void clear() {
+            Arrays.fill(keys, EMPTY);
+            Arrays.fill(counts, 0);
+            size = 0;
+        }
+        
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldCounts = counts;
+            keys = new long[oldKeys.length * 2];
+            counts = new int[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) {
+                    continue;
+                }
+                int index = (int) hash(oldKeys[i]) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                counts[index] = oldCounts[i];
+            }
+        }
+    }
+}
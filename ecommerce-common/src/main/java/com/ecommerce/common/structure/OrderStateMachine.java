@@ -6,43 +6,56 @@ import java.util.*;
 
 /**
  * 订单状态机
- * 使用图结构实现订单状态流转
+ * 使用图结构实现订单状态流转，状态集合以按枚举序号排列的位掩码存储，
+ * 类加载时预计算后继/前驱集合与任意两状态间的最短路径
  */
 public class OrderStateMachine {
     
-    /** 状态转换图：当前状态 -> 可转换的目标状态集合 */
-    private static final Map<OrderStatus, Set<OrderStatus>> TRANSITIONS = new HashMap<>();
+    private static final OrderStatus[] STATES = OrderStatus.values();
+    
+    /** 状态转换图：NEXT_MASKS[当前状态序号] = 可转换的目标状态位掩码 */
+    private static final int[] NEXT_MASKS = new int[STATES.length];
+    
+    /** 反向转换图：PREV_MASKS[目标状态序号] = 可转换到该状态的前驱状态位掩码 */
+    private static final int[] PREV_MASKS = new int[STATES.length];
+    
+    /** 缓存的不可变后继状态集合 */
+    private static final List<Set<OrderStatus>> NEXT_STATES;
+    
+    /** 缓存的不可变前驱状态集合 */
+    private static final List<Set<OrderStatus>> PREVIOUS_STATES;
+    
+    /** 最短路径表：PATHS[起始序号][目标序号]，不可达为空列表 */
+    private static final List<OrderStatus>[][] PATHS;
     
     static {
         // 初始化状态转换规则
         // 待支付 -> 已支付, 已取消
-        TRANSITIONS.put(OrderStatus.PENDING_PAYMENT, 
-            new HashSet<>(Arrays.asList(OrderStatus.PAID, OrderStatus.CANCELLED)));
+        addTransitions(OrderStatus.PENDING_PAYMENT, OrderStatus.PAID, OrderStatus.CANCELLED);
         
         // 已支付 -> 已发货, 退款中
-        TRANSITIONS.put(OrderStatus.PAID, 
-            new HashSet<>(Arrays.asList(OrderStatus.SHIPPED, OrderStatus.REFUNDING)));
+        addTransitions(OrderStatus.PAID, OrderStatus.SHIPPED, OrderStatus.REFUNDING);
         
         // 已发货 -> 已收货, 退款中
-        TRANSITIONS.put(OrderStatus.SHIPPED, 
-            new HashSet<>(Arrays.asList(OrderStatus.RECEIVED, OrderStatus.REFUNDING)));
+        addTransitions(OrderStatus.SHIPPED, OrderStatus.RECEIVED, OrderStatus.REFUNDING);
         
         // 已收货 -> 已完成, 退款中
-        TRANSITIONS.put(OrderStatus.RECEIVED, 
-            new HashSet<>(Arrays.asList(OrderStatus.COMPLETED, OrderStatus.REFUNDING)));
-        
-        // 已完成 -> 无后续状态
-        TRANSITIONS.put(OrderStatus.COMPLETED, new HashSet<>());
-        
-        // 已取消 -> 无后续状态
-        TRANSITIONS.put(OrderStatus.CANCELLED, new HashSet<>());
+        addTransitions(OrderStatus.RECEIVED, OrderStatus.COMPLETED, OrderStatus.REFUNDING);
         
         // 退款中 -> 已退款
-        TRANSITIONS.put(OrderStatus.REFUNDING, 
-            new HashSet<>(Collections.singletonList(OrderStatus.REFUNDED)));
+        addTransitions(OrderStatus.REFUNDING, OrderStatus.REFUNDED);
+        
+        // 已完成、已取消、已退款 -> 无后续状态
         
-        // 已退款 -> 无后续状态
-        TRANSITIONS.put(OrderStatus.REFUNDED, new HashSet<>());
+        List<Set<OrderStatus>> next = new ArrayList<>(STATES.length);
+        List<Set<OrderStatus>> previous = new ArrayList<>(STATES.length);
+        for (int i = 0; i < STATES.length; i++) {
+            next.add(Collections.unmodifiableSet(fromMask(NEXT_MASKS[i])));
+            previous.add(Collections.unmodifiableSet(fromMask(PREV_MASKS[i])));
+        }
+        NEXT_STATES = Collections.unmodifiableList(next);
+        PREVIOUS_STATES = Collections.unmodifiableList(previous);
+        PATHS = buildPaths();
     }
     
     /**
@@ -55,20 +68,63 @@ public class OrderStateMachine {
         if (currentStatus == null || targetStatus == null) {
             return false;
         }
-        Set<OrderStatus> allowedTargets = TRANSITIONS.get(currentStatus);
-        return allowedTargets != null && allowedTargets.contains(targetStatus);
+        return (NEXT_MASKS[currentStatus.ordinal()] & bit(targetStatus)) != 0;
     }
     
     /**
      * 获取当前状态可转换的所有目标状态
      * @param currentStatus 当前状态
-     * @return 可转换的目标状态集合
+     * @return 可转换的目标状态集合（不可修改）
      */
     public static Set<OrderStatus> getNextStates(OrderStatus currentStatus) {
         if (currentStatus == null) {
             return Collections.emptySet();
         }
-        return TRANSITIONS.getOrDefault(currentStatus, Collections.emptySet());
+        return NEXT_STATES.get(currentStatus.ordinal());
+    }
+    
+    /**
+     * 获取可以转换到目标状态的所有前驱状态
+     * 用于构建 UPDATE ... WHERE status IN (前驱状态) 形式的条件更新
+     * @param targetStatus 目标状态
+     * @return 前驱状态集合（不可修改）
+     */
+    public static Set<OrderStatus> getPreviousStates(OrderStatus targetStatus) {
+        if (targetStatus == null) {
+            return Collections.emptySet();
+        }
+        return PREVIOUS_STATES.get(targetStatus.ordinal());
+    }
+    
+    /**
+     * 获取后继状态位掩码，第 i 位对应序号为 i 的状态
+     * @param currentStatus 当前状态
+     * @return 位掩码
+     */
+    public static int getNextMask(OrderStatus currentStatus) {
+        return currentStatus == null ? 0 : NEXT_MASKS[currentStatus.ordinal()];
+    }
+    
+    /**
+     * 获取前驱状态位掩码，第 i 位对应序号为 i 的状态
+     * @param targetStatus 目标状态
+     * @return 位掩码
+     */
+    public static int getPreviousMask(OrderStatus targetStatus) {
+        return targetStatus == null ? 0 : PREV_MASKS[targetStatus.ordinal()];
+    }
+    
+    /**
+     * 把位掩码还原为状态集合
+     * @param mask 位掩码
+     * @return 状态集合
+     */
+    public static EnumSet<OrderStatus> fromMask(int mask) {
+        EnumSet<OrderStatus> states = EnumSet.noneOf(OrderStatus.class);
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            states.add(STATES[Integer.numberOfTrailingZeros(bits)]);
+        }
+        return states;
     }
     
     /**
@@ -80,53 +136,73 @@ public class OrderStateMachine {
         if (status == null) {
             return false;
         }
-        Set<OrderStatus> nextStates = TRANSITIONS.get(status);
-        return nextStates == null || nextStates.isEmpty();
+        return NEXT_MASKS[status.ordinal()] == 0;
     }
     
     /**
-     * 获取所有可能的状态路径（使用BFS）
+     * 获取两个状态之间的最短状态路径（类加载时BFS预计算）
      * @param start 起始状态
      * @param end 目标状态
-     * @return 状态路径列表
+     * @return 状态路径列表（不可修改），不可达时为空列表
      */
     public static List<OrderStatus> findPath(OrderStatus start, OrderStatus end) {
         if (start == null || end == null) {
             return Collections.emptyList();
         }
-        
-        if (start == end) {
-            return Collections.singletonList(start);
+        return PATHS[start.ordinal()][end.ordinal()];
+    }
+    
+    private static void addTransitions(OrderStatus from, OrderStatus... targets) {
+        for (OrderStatus target : targets) {
+            NEXT_MASKS[from.ordinal()] |= bit(target);
+            PREV_MASKS[target.ordinal()] |= bit(from);
         }
+    }
+    
+    private static int bit(OrderStatus status) {
+        return 1 << status.ordinal();
+    }
+    
+    /**
+     * 以每个状态为起点做一次BFS，记录前驱后回溯得到最短路径
+     */
+    @SuppressWarnings("unchecked")
+    private static List<OrderStatus>[][] buildPaths() {
+        int n = STATES.length;
+        List<OrderStatus>[][] paths = new List[n][n];
+        int[] parent = new int[n];
+        int[] queue = new int[n];
         
-        Queue<List<OrderStatus>> queue = new LinkedList<>();
-        Set<OrderStatus> visited = new HashSet<>();
-        
-        queue.offer(new ArrayList<>(Collections.singletonList(start)));
-        visited.add(start);
-        
-        while (!queue.isEmpty()) {
-            List<OrderStatus> path = queue.poll();
-            OrderStatus current = path.get(path.size() - 1);
+        for (int start = 0; start < n; start++) {
+            Arrays.fill(parent, -1);
+            parent[start] = start;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            while (head < tail) {
+                int current = queue[head++];
+                for (int bits = NEXT_MASKS[current]; bits != 0; bits &= bits - 1) {
+                    int next = Integer.numberOfTrailingZeros(bits);
+                    if (parent[next] == -1) {
+                        parent[next] = current;
+                        queue[tail++] = next;
+                    }
+                }
+            }
             
-            for (OrderStatus next : getNextStates(current)) {
-                if (next == end) {
-                    List<OrderStatus> result = new ArrayList<>(path);
-                    result.add(end);
-                    return result;
+            for (int end = 0; end < n; end++) {
+                if (parent[end] == -1) {
+                    paths[start][end] = Collections.emptyList();
+                    continue;
                 }
-                
-                if (!visited.contains(next)) {
-                    visited.add(next);
-                    List<OrderStatus> newPath = new ArrayList<>(path);
-                    newPath.add(next);
-                    queue.offer(newPath);
+                LinkedList<OrderStatus> path = new LinkedList<>();
+                for (int node = end; node != start; node = parent[node]) {
+                    path.addFirst(STATES[node]);
                 }
+                path.addFirst(STATES[start]);
+                paths[start][end] = Collections.unmodifiableList(new ArrayList<>(path));
             }
         }
-        
-        return Collections.emptyList();
+        return paths;
     }
 }
-
-
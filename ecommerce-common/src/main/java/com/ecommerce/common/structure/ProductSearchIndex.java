@@ -0,0 +1,445 @@
+package com.ecommerce.common.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 商品名称倒排索引
+ * 按相邻字符二元组切分，中文名称无需词典即可检索；
+ * 多个关键词之间为AND关系，候选集由倒排表求交集后再做子串校验，结果与 LIKE '%词%' 一致；
+ * 单字关键词无法用二元组定位，由调用方回退到数据库查询
+ */
+public class ProductSearchIndex {
+    
+    /**
+     * 排序字段，均为降序，相同时按商品ID降序
+     */
+    public enum SortField {
+        SALES,
+        CREATE_TIME
+    }
+    
+    /** 已删除文档超过存活文档且超过该数量时压缩 */
+    private static final int COMPACT_THRESHOLD = 1024;
+    
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    
+    /** 商品ID -> 内部文档号 */
+    private final Map<Long, Integer> docIndex = new HashMap<>();
+    
+    /** 词条 -> 倒排表，文档号单调分配，倒排表天然有序 */
+    private final Map<Long, Postings> postings = new HashMap<>();
+    
+    /** 文档属性，按内部文档号存放 */
+    private long[] productIds = new long[1024];
+    private String[] names = new String[1024];
+    private int[] statuses = new int[1024];
+    private long[] sales = new long[1024];
+    private long[] createTimes = new long[1024];
+    private boolean[] alive = new boolean[1024];
+    
+    /** 已分配的文档号数量（含已删除） */
+    private int docCount;
+    
+    /** 存活文档数量 */
+    private int liveCount;
+    
+    /**
+     * 添加或更新商品
+     * 名称不变时原地更新属性，名称变化时删除旧文档重新索引
+     * @param productId 商品ID
+     * @param name 商品名称
+     * @param status 状态
+     * @param productSales 销量
+     * @param createTime 创建时间（毫秒）
+     */
+    public void put(long productId, String name, int status, long productSales, long createTime) {
+        String normalized = normalize(name);
+        lock.writeLock().lock();
+        try {
+            Integer existing = docIndex.get(productId);
+            if (existing != null && names[existing].equals(normalized)) {
+                statuses[existing] = status;
+                sales[existing] = productSales;
+                createTimes[existing] = createTime;
+                return;
+            }
+            if (existing != null) {
+                delete(existing);
+            }
+            int doc = allocate();
+            productIds[doc] = productId;
+            names[doc] = normalized;
+            statuses[doc] = status;
+            sales[doc] = productSales;
+            createTimes[doc] = createTime;
+            alive[doc] = true;
+            docIndex.put(productId, doc);
+            liveCount++;
+            for (long term : tokenize(normalized)) {
+                postings.computeIfAbsent(term, k -> new Postings()).add(doc);
+            }
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 删除商品
+     * @param productId 商品ID
+     */
+    public void remove(long productId) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIndex.remove(productId);
+            if (doc != null) {
+                delete(doc);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 更新商品状态
+     * @param productId 商品ID
+     * @param status 状态
+     */
+    public void updateStatus(long productId, int status) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIndex.get(productId);
+            if (doc != null) {
+                statuses[doc] = status;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 累加商品销量
+     * @param productId 商品ID
+     * @param delta 销量增量
+     */
+    public void addSales(long productId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Integer doc = docIndex.get(productId);
+            if (doc != null) {
+                sales[doc] += delta;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 检索商品
+     * @param keyword 关键词，空白分隔的多个词之间为AND关系
+     * @param status 状态过滤，为null时不过滤
+     * @param sortField 排序字段
+     * @param offset 跳过的结果数
+     * @param limit 返回的结果数
+     * @return 命中总数与当前页商品ID（已排序），关键词含单字词时返回null
+     */
+    public SearchResult search(String keyword, Integer status, SortField sortField, int offset, int limit) {
+        String[] terms = normalize(keyword).split("\\s+");
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            List<String> verifyTerms = new ArrayList<>();
+            for (String term : terms) {
+                if (term.isEmpty()) {
+                    continue;
+                }
+                if (term.length() < 2) {
+                    return null;
+                }
+                for (long token : tokenize(term)) {
+                    Postings list = postings.get(token);
+                    if (list == null) {
+                        return SearchResult.EMPTY;
+                    }
+                    lists.add(list);
+                }
+                verifyTerms.add(term);
+            }
+            if (lists.isEmpty()) {
+                return SearchResult.EMPTY;
+            }
+            
+            // 从最短的倒排表出发逐个探测其余倒排表
+            lists.sort((a, b) -> Integer.compare(a.size, b.size));
+            Postings shortest = lists.get(0);
+            int[] cursors = new int[lists.size()];
+            
+            int k = offset + limit;
+            long[] keys = sortField == SortField.SALES ? sales : createTimes;
+            PriorityQueue<Integer> heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)),
+                    (a, b) -> compare(keys, a, b));
+            long total = 0;
+            
+            outer:
+            for (int i = 0; i < shortest.size; i++) {
+                int doc = shortest.docs[i];
+                if (!alive[doc] || (status != null && statuses[doc] != status)) {
+                    continue;
+                }
+                for (int j = 1; j < lists.size(); j++) {
+                    Postings list = lists.get(j);
+                    cursors[j] = list.seek(doc, cursors[j]);
+                    if (cursors[j] >= list.size) {
+                        break outer;
+                    }
+                    if (list.docs[cursors[j]] != doc) {
+                        continue outer;
+                    }
+                }
+                String name = names[doc];
+                for (String term : verifyTerms) {
+                    if (!name.contains(term)) {
+                        continue outer;
+                    }
+                }
+                
+                total++;
+                if (k <= 0) {
+                    continue;
+                }
+                if (heap.size() < k) {
+                    heap.offer(doc);
+                } else if (compare(keys, doc, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.offer(doc);
+                }
+            }
+            
+            int[] ranked = new int[heap.size()];
+            for (int i = ranked.length - 1; i >= 0; i--) {
+                ranked[i] = heap.poll();
+            }
+            List<Long> page = new ArrayList<>(Math.max(0, ranked.length - offset));
+            for (int i = offset; i < ranked.length; i++) {
+                page.add(productIds[ranked[i]]);
+            }
+            return new SearchResult(total, page);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 获取已索引的商品数量
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * 清空索引
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docIndex.clear();
+            postings.clear();
+            Arrays.fill(names, 0, docCount, null);
+            Arrays.fill(alive, 0, docCount, false);
+            docCount = 0;
+            liveCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * 按排序字段比较两个文档，相同时比较商品ID
+     */
+    private int compare(long[] keys, int a, int b) {
+        int result = Long.compare(keys[a], keys[b]);
+        return result != 0 ? result : Long.compare(productIds[a], productIds[b]);
+    }
+    
+    private void delete(int doc) {
+        alive[doc] = false;
+        names[doc] = null;
+        liveCount--;
+    }
+    
+    private int allocate() {
+        if (docCount == productIds.length) {
+            int capacity = productIds.length << 1;
+            productIds = Arrays.copyOf(productIds, capacity);
+            names = Arrays.copyOf(names, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            sales = Arrays.copyOf(sales, capacity);
+            createTimes = Arrays.copyOf(createTimes, capacity);
+            alive = Arrays.copyOf(alive, capacity);
+        }
+        return docCount++;
+    }
+    
+    /**
+     * 已删除文档过多时按存活文档重新编号并重建倒排表
+     */
+    private void compactIfNeeded() {
+        int deleted = docCount - liveCount;
+        if (deleted <= COMPACT_THRESHOLD || deleted <= liveCount) {
+            return;
+        }
+        int[] remap = new int[docCount];
+        int target = 0;
+        for (int doc = 0; doc < docCount; doc++) {
+            if (!alive[doc]) {
+                remap[doc] = -1;
+                continue;
+            }
+            remap[doc] = target;
+            productIds[target] = productIds[doc];
+            names[target] = names[doc];
+            statuses[target] = statuses[doc];
+            sales[target] = sales[doc];
+            createTimes[target] = createTimes[doc];
+            alive[target] = true;
+            docIndex.put(productIds[target], target);
+            target++;
+        }
+        Arrays.fill(names, target, docCount, null);
+        Arrays.fill(alive, target, docCount, false);
+        docCount = target;
+        
+        postings.values().removeIf(list -> {
+            list.remap(remap);
+            return list.size == 0;
+        });
+    }
+    
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 切分词条：按相邻字符二元组，空白处断开，单字片段不产生词条
+     */
+    private static long[] tokenize(String text) {
+        long[] tokens = new long[Math.max(1, text.length())];
+        int count = 0;
+        int start = 0;
+        int length = text.length();
+        while (start < length) {
+            while (start < length && Character.isWhitespace(text.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            while (end < length && !Character.isWhitespace(text.charAt(end))) {
+                end++;
+            }
+            for (int i = start; i + 1 < end; i++) {
+                tokens[count++] = ((long) text.charAt(i) << 16) | text.charAt(i + 1);
+            }
+            start = end;
+        }
+        return distinct(tokens, count);
+    }
+    
+    private static long[] distinct(long[] tokens, int count) {
+        if (count == 0) {
+            return new long[0];
+        }
+        long[] sorted = Arrays.copyOf(tokens, count);
+        Arrays.sort(sorted);
+        int unique = 1;
+        for (int i = 1; i < count; i++) {
+            if (sorted[i] != sorted[unique - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+    
+    /**
+     * 有序文档号列表
+     */
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+        
+        void add(int doc) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size << 1);
+            }
+            docs[size++] = doc;
+        }
+        
+        /**
+         * 从from开始倍增后二分，返回第一个不小于doc的位置
+         */
+        int seek(int doc, int from) {
+            if (from >= size || docs[from] >= doc) {
+                return from;
+            }
+            int low = from;
+            int step = 1;
+            int high = from + step;
+            while (high < size && docs[high] < doc) {
+                low = high;
+                step <<= 1;
+                high = from + step;
+            }
+            high = Math.min(high, size);
+            // docs[low] < doc，在 (low, high) 中找下界
+            int index = Arrays.binarySearch(docs, low + 1, high, doc);
+            return index >= 0 ? index : -index - 1;
+        }
+        
+        void remap(int[] remap) {
+            int target = 0;
+            for (int i = 0; i < size; i++) {
+                int doc = remap[docs[i]];
+                if (doc >= 0) {
+                    docs[target++] = doc;
+                }
+            }
+            size = target;
+        }
+    }
+    
+    /**
+     * 检索结果
+     */
+    public static final class SearchResult {
+        
+        static final SearchResult EMPTY = new SearchResult(0, Collections.emptyList());
+        
+        private final long total;
+        private final List<Long> productIds;
+        
+        public SearchResult(long total, List<Long> productIds) {
+            this.total = total;
+            this.productIds = productIds;
+        }
+        
+        public long getTotal() {
+            return total;
+        }
+        
+        public List<Long> getProductIds() {
+            return productIds;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.ecommerce.common.structure;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * 分层时间轮
+ * 使用多级环形数组实现大量定时任务的O(1)添加与到期检测，
+ * 定时器节点存放在基本类型数组中（每个约20字节），几十万个定时器只占用几MB内存
+ */
+public class TimingWheel {
+    
+    private static final int NIL = -1;
+    
+    /** 每格时长（毫秒） */
+    private final long tickMs;
+    
+    /** 每级格数的位数，每级 2^wheelBits 格 */
+    private final int wheelBits;
+    
+    private final int wheelMask;
+    
+    /** 层级数 */
+    private final int levels;
+    
+    /** 每一格链表的头节点下标，按 level * wheelSize + slot 排列 */
+    private final int[] heads;
+    
+    /** 定时器节点：任务ID、到期格号、链表后继 */
+    private long[] ids;
+    private long[] deadlines;
+    private int[] next;
+    
+    /** 空闲节点链表头 */
+    private int freeHead = NIL;
+    
+    /** 已分配过的节点数 */
+    private int allocated;
+    
+    /** 当前定时器数量 */
+    private int size;
+    
+    /** 已推进到的格号 */
+    private long currentTick;
+    
+    /**
+     * @param tickMs 每格时长（毫秒）
+     * @param wheelBits 每级格数的位数，如6表示每级64格
+     * @param levels 层级数，总跨度为 tickMs * 2^(wheelBits * levels)
+     * @param startMs 起始时间（毫秒）
+     */
+    public TimingWheel(long tickMs, int wheelBits, int levels, long startMs) {
+        if (tickMs <= 0 || wheelBits <= 0 || levels <= 0 || wheelBits * levels >= 62) {
+            throw new IllegalArgumentException("时间轮参数不合法");
+        }
+        this.tickMs = tickMs;
+        this.wheelBits = wheelBits;
+        this.wheelMask = (1 << wheelBits) - 1;
+        this.levels = levels;
+        this.heads = new int[levels << wheelBits];
+        Arrays.fill(heads, NIL);
+        this.ids = new long[1024];
+        this.deadlines = new long[1024];
+        this.next = new int[1024];
+        this.currentTick = startMs / tickMs;
+    }
+    
+    /**
+     * 添加定时器
+     * @param id 任务ID
+     * @param deadlineMs 到期时间（毫秒），已过期的会在下一次推进时触发
+     */
+    public synchronized void add(long id, long deadlineMs) {
+        int node = allocate();
+        ids[node] = id;
+        deadlines[node] = Math.max(deadlineMs / tickMs, currentTick + 1);
+        place(node);
+        size++;
+    }
+    
+    /**
+     * 推进时间轮到指定时间，并回调所有到期的任务ID
+     * 回调在持有时间轮锁时执行，应只做收集，耗时处理放到锁外
+     * @param nowMs 当前时间（毫秒）
+     * @param expired 到期回调
+     * @return 到期的定时器数量
+     */
+    public synchronized int advance(long nowMs, LongConsumer expired) {
+        long targetTick = nowMs / tickMs;
+        int count = 0;
+        while (currentTick < targetTick) {
+            currentTick++;
+            
+            // 从高到低把到达边界的上级格子降级重新放置
+            for (int level = levels - 1; level > 0; level--) {
+                long lowMask = (1L << (wheelBits * level)) - 1;
+                if ((currentTick & lowMask) == 0) {
+                    int slot = (int) (currentTick >>> (wheelBits * level)) & wheelMask;
+                    cascade(level, slot);
+                }
+            }
+            
+            int index = (int) currentTick & wheelMask;
+            int node = heads[index];
+            heads[index] = NIL;
+            while (node != NIL) {
+                int following = next[node];
+                if (deadlines[node] <= currentTick) {
+                    expired.accept(ids[node]);
+                    release(node);
+                    size--;
+                    count++;
+                } else {
+                    place(node);
+                }
+                node = following;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * 获取定时器数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+    
+    /**
+     * 获取每格时长（毫秒）
+     */
+    public long getTickMs() {
+        return tickMs;
+    }
+    
+    /**
+     * 把上级格子里的节点重新放置到下级
+     */
+    private void cascade(int level, int slot) {
+        int index = (level << wheelBits) + slot;
+        int node = heads[index];
+        heads[index] = NIL;
+        while (node != NIL) {
+            int following = next[node];
+            place(node);
+            node = following;
+        }
+    }
+    
+    /**
+     * 按到期格号与当前格号的最高不同位段选择层级
+     */
+    private void place(int node) {
+        long deadline = deadlines[node];
+        int level = 0;
+        while (level < levels - 1
+                && (deadline >>> (wheelBits * (level + 1))) != (currentTick >>> (wheelBits * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) (deadline >>> (wheelBits * level)) & wheelMask;
+        int index = (level << wheelBits) + slot;
+        next[node] = heads[index];
+        heads[index] = node;
+    }
+    
+    private int allocate() {
+        if (freeHead != NIL) {
+            int node = freeHead;
+            freeHead = next[node];
+            return node;
+        }
+        if (allocated == ids.length) {
+            int capacity = ids.length << 1;
+            ids = Arrays.copyOf(ids, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+            next = Arrays.copyOf(next, capacity);
+        }
+        return allocated++;
+    }
+    
+    private void release(int node) {
+        next[node] = freeHead;
+        freeHead = node;
+    }
+}
@@ -0,0 +1,238 @@
+package com.ecommerce.common.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 有界Top-N堆
+ * 以小顶堆保存分数最高的N个ID，堆顶为当前第N名，配合ID到堆下标的索引支持O(log N)的更新与删除。
+ * 分数只增不减时，堆外元素的分数始终不高于堆顶，offer即可维持正确的Top-N；
+ * 删除元素或分数下降后堆外可能有更高分的元素，需要调用方重新offer候选元素补位。
+ * 非线程安全，由调用方加锁
+ */
+public class TopNHeap {
+    
+    private final int capacity;
+    private final long[] ids;
+    private final double[] scores;
+    private final Map<Long, Integer> positions;
+    private int size;
+    
+    /**
+     * @param capacity 最多保留的元素数
+     */
+    public TopNHeap(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("容量必须大于0");
+        }
+        this.capacity = capacity;
+        this.ids = new long[capacity];
+        this.scores = new double[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+    
+    /**
+     * 写入元素的最新分数
+     * 已在堆中时更新分数；不在堆中时，堆未满或排名高于堆顶才进入，并挤出堆顶
+     * @param id 元素ID
+     * @param score 最新分数
+     * @return 写入后元素是否在堆中
+     */
+    public boolean offer(long id, double score) {
+        Integer position = positions.get(id);
+        if (position != null) {
+            double old = scores[position];
+            scores[position] = score;
+            if (score > old) {
+                siftDown(position);
+            } else {
+                siftUp(position);
+            }
+            return true;
+        }
+        if (size < capacity) {
+            ids[size] = id;
+            scores[size] = score;
+            positions.put(id, size);
+            siftUp(size++);
+            return true;
+        }
+        if (score < scores[0] || (score == scores[0] && id > ids[0])) {
+            return false;
+        }
+        positions.remove(ids[0]);
+        ids[0] = id;
+        scores[0] = score;
+        positions.put(id, 0);
+        siftDown(0);
+        return true;
+    }
+    
+    /**
+     * 移除元素
+     * @param id 元素ID
+     * @return 元素是否在堆中
+     */
+    public boolean remove(long id) {
+        Integer position = positions.remove(id);
+        if (position == null) {
+            return false;
+        }
+        int last = --size;
+        if (position != last) {
+            move(last, position);
+            siftDown(position);
+            siftUp(position);
+        }
+        return true;
+    }
+    
+    /**
+     * 所有分数乘以同一个正数，不改变元素顺序
+     * @param factor 系数
+     */
+    public void scale(double factor) {
+        for (int i = 0; i < size; i++) {
+            scores[i] *= factor;
+        }
+    }
+    
+    public boolean contains(long id) {
+        return positions.containsKey(id);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    public void clear() {
+        positions.clear();
+        size = 0;
+    }
+    
+    /**
+     * 按分数从高到低返回前limit个元素，分数相同时ID小的在前
+     * @param limit 返回数量
+     * @return 排名列表
+     */
+    public List<Ranked> top(int limit) {
+        List<Ranked> ranked = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ranked.add(new Ranked(ids[i], scores[i]));
+        }
+        ranked.sort(Ranked.ORDER);
+        return ranked.size() > limit ? new ArrayList<>(ranked.subList(0, limit)) : ranked;
+    }
+    
+    /**
+     * 把元素追加到结果列表，不排序，用于多个堆合并
+     * @param target 结果列表
+     */
+    public void copyTo(List<Ranked> target) {
+        for (int i = 0; i < size; i++) {
+            target.add(new Ranked(ids[i], scores[i]));
+        }
+    }
+    
+    /**
+     * 合并多个已取出的排名列表，返回前limit个
+     * @param ranked 排名元素
+     * @param limit 返回数量
+     * @return 按分数从高到低的排名列表
+     */
+    public static List<Ranked> merge(List<Ranked> ranked, int limit) {
+        Ranked[] array = ranked.toArray(new Ranked[0]);
+        Arrays.sort(array, Ranked.ORDER);
+        return new ArrayList<>(Arrays.asList(array).subList(0, Math.min(limit, array.length)));
+    }
+    
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(index, parent)) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && less(left, smallest)) {
+                smallest = left;
+            }
+            if (right < size && less(right, smallest)) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+    
+    /**
+     * 堆顶为最先被挤出的元素：分数低者优先，分数相同时ID大者优先
+     */
+    private boolean less(int a, int b) {
+        if (scores[a] != scores[b]) {
+            return scores[a] < scores[b];
+        }
+        return ids[a] > ids[b];
+    }
+    
+    private void swap(int a, int b) {
+        long id = ids[a];
+        double score = scores[a];
+        ids[a] = ids[b];
+        scores[a] = scores[b];
+        ids[b] = id;
+        scores[b] = score;
+        positions.put(ids[a], a);
+        positions.put(ids[b], b);
+    }
+    
+    private void move(int from, int to) {
+        ids[to] = ids[from];
+        scores[to] = scores[from];
+        positions.put(ids[to], to);
+    }
+    
+    /**
+     * 排名元素
+     */
+    public static final class Ranked {
+        
+        static final Comparator<Ranked> ORDER = Comparator.comparingDouble(Ranked::getScore).reversed()
+                .thenComparingLong(Ranked::getId);
+        
+        private final long id;
+        private final double score;
+        
+        public Ranked(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+        
+        public long getId() {
+            return id;
+        }
+        
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -1,52 +1,115 @@
 package com.ecommerce.common.util;
 
-import java.time.LocalDateTime;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 订单号生成工具类
+ * 采用雪花算法：41位毫秒时间戳 + 10位机器号 + 12位序列号，
+ * 时间戳与序列号打包在一个long中，通过一次CAS完成分配，无锁、不休眠；
+ * 机器号由各服务启动时按order-no.worker-id配置写入
  */
 public class OrderNoGenerator {
     
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd");
     
-    /** 序列号，用于同一秒内的订单区分 */
-    private static final AtomicInteger SEQUENCE = new AtomicInteger(0);
+    private static final ZoneId ZONE = ZoneId.systemDefault();
     
-    /** 上次生成时间 */
-    private static volatile String lastTime = "";
+    /** 起始时间 2024-01-01 00:00:00 UTC */
+    private static final long EPOCH = 1704067200000L;
+    
+    private static final int WORKER_ID_BITS = 10;
+    
+    private static final int SEQUENCE_BITS = 12;
+    
+    /** 最大机器号 1023 */
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    
+    /** 逻辑时间戳最多领先系统时钟的毫秒数，超过时拒绝生成 */
+    private static final long MAX_AHEAD_MILLIS = 5000;
+    
+    /** 机器号配置：优先系统属性，其次环境变量 */
+    private static final String WORKER_ID_PROPERTY = "order-no.worker-id";
+    
+    private static final String WORKER_ID_ENV = "ORDER_NO_WORKER_ID";
+    
+    /** 打包状态：(相对时间戳 << 12) | 序列号 */
+    private static final AtomicLong STATE = new AtomicLong(0);
+    
+    private static volatile long workerId = initWorkerId();
+    
+    /** 当天日期前缀缓存，跨天时才重新格式化 */
+    private static volatile DatePrefix datePrefix = DatePrefix.of(System.currentTimeMillis());
+    
+    private OrderNoGenerator() {
+    }
     
     /**
      * 生成订单号
-     * 格式：yyyyMMddHHmmss + 4位序列号
+     * 格式：yyyyMMdd + 19位雪花ID
      * @return 订单号
      */
-    public static synchronized String generate() {
-        String currentTime = LocalDateTime.now().format(FORMATTER);
+    public static String generate() {
+        long id = nextId();
+        long timestamp = (id >>> (WORKER_ID_BITS + SEQUENCE_BITS)) + EPOCH;
         
-        if (!currentTime.equals(lastTime)) {
-            lastTime = currentTime;
-            SEQUENCE.set(0);
+        DatePrefix prefix = datePrefix;
+        if (!prefix.contains(timestamp)) {
+            prefix = DatePrefix.of(timestamp);
+            datePrefix = prefix;
         }
         
-        int seq = SEQUENCE.incrementAndGet();
-        if (seq > 9999) {
-            // 如果超过9999，等待下一秒
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-            return generate();
+        String digits = Long.toString(id);
+        StringBuilder sb = new StringBuilder(27);
+        sb.append(prefix.text);
+        for (int i = digits.length(); i < 19; i++) {
+            sb.append('0');
         }
+        return sb.append(digits).toString();
+    }
+    
+    /**
+     * 生成雪花ID
+     * 时钟回拨时沿用上次的逻辑时间戳继续递增序列号，同一毫秒序列号用尽时借用下一毫秒，
+     * 因此生成的ID在单个机器号内严格递增且不会阻塞调用线程；
+     * 逻辑时间戳领先系统时钟超过5秒（大幅回拨或持续超发）时抛出异常，避免进程重启后与已发出的ID重复
+     * @return 63位正整数ID
+     */
+    public static long nextId() {
+        long now = System.currentTimeMillis() - EPOCH;
+        long current;
+        long next;
+        do {
+            current = STATE.get();
+            long lastTimestamp = current >>> SEQUENCE_BITS;
+            if (now > lastTimestamp) {
+                next = now << SEQUENCE_BITS;
+            } else {
+                if (lastTimestamp - now >= MAX_AHEAD_MILLIS) {
+                    throw new IllegalStateException("时钟回拨或ID超发，逻辑时间戳领先系统时钟"
+                            + (lastTimestamp - now) + "毫秒，暂停生成ID");
+                }
+                // 同一毫秒或时钟回拨：序列号+1，溢出时自然进位到下一毫秒
+                next = current + 1;
+            }
+        } while (!STATE.compareAndSet(current, next));
         
-        return currentTime + String.format("%04d", seq);
+        long timestamp = next >>> SEQUENCE_BITS;
+        long sequence = next & SEQUENCE_MASK;
+        return (timestamp << (WORKER_ID_BITS + SEQUENCE_BITS))
+                | (workerId << SEQUENCE_BITS)
+                | sequence;
     }
     
     /**
      * 生成支付流水号
-     * 格式：PAY + yyyyMMddHHmmss + 4位序列号
+     * 格式：PAY + yyyyMMdd + 19位雪花ID
      * @return 支付流水号
      */
     public static String generatePaymentNo() {
@@ -55,11 +118,74 @@ public class OrderNoGenerator {
     
     /**
      * 生成退款流水号
-     * 格式：REF + yyyyMMddHHmmss + 4位序列号
+     * 格式：REF + yyyyMMdd + 19位雪花ID
      * @return 退款流水号
      */
     public static String generateRefundNo() {
         return "REF" + generate();
     }
+    
+    /**
+     * 设置机器号，多节点部署时每个节点必须不同
+     * @param id 机器号，0 ~ 1023
+     */
+    public static void setWorkerId(long id) {
+        if (id < 0 || id > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId必须在0~" + MAX_WORKER_ID + "之间: " + id);
+        }
+        workerId = id;
+    }
+    
+    /**
+     * 获取当前机器号
+     */
+    public static long getWorkerId() {
+        return workerId;
+    }
+    
+    /**
+     * 初始化机器号：读取配置，未配置时由主机名和进程号散列得到
+     */
+    private static long initWorkerId() {
+        String configured = System.getProperty(WORKER_ID_PROPERTY);
+        if (configured == null || configured.isEmpty()) {
+            configured = System.getenv(WORKER_ID_ENV);
+        }
+        if (configured != null && !configured.isEmpty()) {
+            long id = Long.parseLong(configured.trim());
+            if (id < 0 || id > MAX_WORKER_ID) {
+                throw new IllegalArgumentException("workerId必须在0~" + MAX_WORKER_ID + "之间: " + id);
+            }
+            return id;
+        }
+        // 形如 "pid@hostname"
+        String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        return (runtimeName.hashCode() & Integer.MAX_VALUE) % (MAX_WORKER_ID + 1);
+    }
+    
+    /**
+     * 日期前缀，记录当天的起止毫秒
+     */
+    private static final class DatePrefix {
+        private final long dayStart;
+        private final long dayEnd;
+        private final String text;
+        
+        private DatePrefix(long dayStart, long dayEnd, String text) {
+            this.dayStart = dayStart;
+            this.dayEnd = dayEnd;
+            this.text = text;
+        }
+        
+        static DatePrefix of(long timestamp) {
+            LocalDate date = Instant.ofEpochMilli(timestamp).atZone(ZONE).toLocalDate();
+            long start = date.atStartOfDay(ZONE).toInstant().toEpochMilli();
+            long end = date.plusDays(1).atStartOfDay(ZONE).toInstant().toEpochMilli();
+            return new DatePrefix(start, end, date.format(DATE_FORMATTER));
+        }
+        
+        boolean contains(long timestamp) {
+            return timestamp >= dayStart && timestamp < dayEnd;
+        }
+    }
 }
-
@@ -0,0 +1,37 @@
+package com.ecommerce.common.vo;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.io.Serializable;
+
+/**
+ * 库存锁定结果VO（单个商品行）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryLockVO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    /** 本行可以锁定、因同单其他商品失败而未锁定时的失败原因 */
+    public static final String MESSAGE_OTHER_ITEM_FAILED = "订单中其他商品锁定失败";
+    
+    private Long productId;
+    
+    /** 请求锁定数量 */
+    private Integer quantity;
+    
+    /** 是否锁定成功 */
+    private Boolean success;
+    
+    /** 锁定前可用库存，库存记录不存在时为null */
+    private Integer availableStock;
+    
+    /** 失败原因 */
+    private String message;
+}
@@ -0,0 +1,35 @@
+package com.ecommerce.common.vo;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * 库存预警变化VO（可用库存越过预警阈值时推送）
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class InventoryWarningVO implements Serializable {
+    
+    private static final long serialVersionUID = 1L;
+    
+    private Long productId;
+    
+    /** 变化后的可用库存 */
+    private Integer availableStock;
+    
+    /** 预警阈值 */
+    private Integer warningThreshold;
+    
+    /** true-进入预警，false-解除预警 */
+    private Boolean warning;
+    
+    /** 变化时间 */
+    private LocalDateTime time;
+}
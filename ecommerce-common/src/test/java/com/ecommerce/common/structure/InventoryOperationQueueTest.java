@@ -0,0 +1,156 @@
+package com.ecommerce.common.structure;
+
+import com.ecommerce.common.enums.InventoryOperationType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 库存操作环形队列
+ * 容量按2的幂取整（至少为2），单生产者按入队顺序出队，队列满时拒绝或等待超时；
+ * 多生产者并发入队时每条记录恰好出队一次，且同一生产者的记录保持入队顺序
+ */
+class InventoryOperationQueueTest {
+    
+    @Test
+    void capacityIsRoundedUpToPowerOfTwo() {
+        assertThat(new InventoryOperationQueue(1, InventoryOperationQueue.FullPolicy.REJECT).capacity()).isEqualTo(2);
+        assertThat(new InventoryOperationQueue(1000, InventoryOperationQueue.FullPolicy.REJECT).capacity()).isEqualTo(1024);
+        assertThat(new InventoryOperationQueue(1024, InventoryOperationQueue.FullPolicy.REJECT).capacity()).isEqualTo(1024);
+        assertThatThrownBy(() -> new InventoryOperationQueue(0, InventoryOperationQueue.FullPolicy.REJECT))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void drainsInEnqueueOrderAndCopiesFields() {
+        InventoryOperationQueue queue = new InventoryOperationQueue(8, InventoryOperationQueue.FullPolicy.REJECT);
+        for (int i = 1; i <= 5; i++) {
+            assertThat(enqueue(queue, i, i % 2 == 0 ? null : 100L + i, i)).isTrue();
+        }
+        assertThat(queue.size()).isEqualTo(5);
+        
+        List<Long> productIds = new ArrayList<>();
+        List<Long> orderIds = new ArrayList<>();
+        assertThat(queue.drainTo(operation -> {
+            productIds.add(operation.getProductId());
+            orderIds.add(operation.getOrderId());
+            assertThat(operation.getOperationType()).isEqualTo(InventoryOperationType.LOCK);
+            assertThat(operation.getQuantity()).isEqualTo((int) operation.getProductId());
+        }, 3)).isEqualTo(3);
+        assertThat(queue.drainTo(operation -> productIds.add(operation.getProductId()), 10)).isEqualTo(2);
+        
+        assertThat(productIds).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(orderIds).containsExactly(101L, null, 103L);
+        assertThat(queue.isEmpty()).isTrue();
+    }
+    
+    @Test
+    void rejectsWhenFullAndAcceptsAgainAfterDrain() {
+        InventoryOperationQueue queue = new InventoryOperationQueue(4, InventoryOperationQueue.FullPolicy.REJECT);
+        for (int i = 0; i < 4; i++) {
+            assertThat(enqueue(queue, i, null, 1)).isTrue();
+        }
+        assertThat(enqueue(queue, 4, null, 1)).isFalse();
+        assertThat(queue.size()).isEqualTo(4);
+        
+        assertThat(queue.drainTo(operation -> { }, 1)).isEqualTo(1);
+        assertThat(enqueue(queue, 4, null, 1)).isTrue();
+        assertThat(enqueue(queue, 5, null, 1)).isFalse();
+        
+        // 环绕一圈后仍按顺序出队
+        List<Long> productIds = new ArrayList<>();
+        queue.drainTo(operation -> productIds.add(operation.getProductId()), 10);
+        assertThat(productIds).containsExactly(1L, 2L, 3L, 4L);
+    }
+    
+    @Test
+    void fullPoliciesTimeOutWhenNothingIsDrained() {
+        for (InventoryOperationQueue.FullPolicy policy : InventoryOperationQueue.FullPolicy.values()) {
+            // 请求容量1时也有2个槽位，第三条记录才会等待
+            InventoryOperationQueue queue = new InventoryOperationQueue(1, policy);
+            assertThat(enqueue(queue, 1, null, 1)).isTrue();
+            assertThat(enqueue(queue, 2, null, 1)).isTrue();
+            assertThat(enqueue(queue, 3, null, 1, 10, TimeUnit.MILLISECONDS)).isFalse();
+            assertThat(queue.size()).isEqualTo(2);
+            
+            List<Long> productIds = new ArrayList<>();
+            queue.drainTo(operation -> productIds.add(operation.getProductId()), 10);
+            assertThat(productIds).containsExactly(1L, 2L);
+        }
+    }
+    
+    @Test
+    void concurrentProducersDeliverEveryOperationOnceInProducerOrder() throws Exception {
+        int producers = 4;
+        int perProducer = 20_000;
+        InventoryOperationQueue queue = new InventoryOperationQueue(64, InventoryOperationQueue.FullPolicy.BLOCK);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>(producers);
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            futures.add(executor.submit(() -> {
+                start.await();
+                int failed = 0;
+                for (int seq = 0; seq < perProducer; seq++) {
+                    if (!enqueue(queue, producer, null, seq, 10, TimeUnit.SECONDS)) {
+                        failed++;
+                    }
+                }
+                return failed;
+            }));
+        }
+        start.countDown();
+        
+        // 消费者：记录每个生产者最近出队的序号，必须逐一递增
+        int[] nextSeq = new int[producers];
+        int[] outOfOrder = new int[1];
+        int total = producers * perProducer;
+        int drained = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (drained < total && System.nanoTime() < deadline) {
+            int count = queue.drainTo(operation -> {
+                int producer = (int) operation.getProductId();
+                if (operation.getQuantity() != nextSeq[producer]) {
+                    outOfOrder[0]++;
+                }
+                nextSeq[producer] = operation.getQuantity() + 1;
+            }, 128);
+            if (count == 0) {
+                Thread.yield();
+            }
+            drained += count;
+            assertThat(queue.size()).isLessThanOrEqualTo(queue.capacity());
+        }
+        for (Future<Integer> future : futures) {
+            assertThat(future.get(30, TimeUnit.SECONDS)).isZero();
+        }
+        executor.shutdown();
+        
+        assertThat(drained).isEqualTo(total);
+        assertThat(outOfOrder[0]).isZero();
+        for (int p = 0; p < producers; p++) {
+            assertThat(nextSeq[p]).isEqualTo(perProducer);
+        }
+        assertThat(queue.isEmpty()).isTrue();
+    }
+    
+    private static boolean enqueue(InventoryOperationQueue queue, long productId, Long orderId, int quantity) {
+        return enqueue(queue, productId, orderId, quantity, 0, TimeUnit.MILLISECONDS);
+    }
+    
+    private static boolean enqueue(InventoryOperationQueue queue, long productId, Long orderId, int quantity,
+                                   long timeout, TimeUnit unit) {
+        return queue.enqueue(productId, orderId, InventoryOperationType.LOCK, quantity, 0, 0, timeout, unit);
+    }
+}
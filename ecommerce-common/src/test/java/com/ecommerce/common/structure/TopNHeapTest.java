@@ -0,0 +1,131 @@
+package com.ecommerce.common.structure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 有界Top-N堆
+ * 与对全部元素排序的结果逐一比对：分数只增的随机写入、删除后补位、分数相同时ID小者优先
+ */
+class TopNHeapTest {
+    
+    @Test
+    void keepsHighestScoresAndBreaksTiesBySmallerId() {
+        TopNHeap heap = new TopNHeap(3);
+        heap.offer(1, 10);
+        heap.offer(2, 30);
+        heap.offer(3, 20);
+        assertThat(heap.offer(4, 5)).isFalse();
+        assertThat(heap.offer(5, 10)).isFalse();
+        assertThat(heap.offer(0, 10)).isTrue();
+        
+        assertThat(ids(heap.top(10))).containsExactly(2L, 3L, 0L);
+        assertThat(heap.contains(1)).isFalse();
+        assertThat(heap.size()).isEqualTo(3);
+        assertThat(ids(heap.top(2))).containsExactly(2L, 3L);
+        assertThatThrownBy(() -> new TopNHeap(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+    
+    @Test
+    void updatesScoreOfTrackedElement() {
+        TopNHeap heap = new TopNHeap(3);
+        heap.offer(1, 10);
+        heap.offer(2, 20);
+        heap.offer(3, 30);
+        
+        heap.offer(1, 40);
+        assertThat(ids(heap.top(3))).containsExactly(1L, 3L, 2L);
+        heap.offer(3, 1);
+        assertThat(ids(heap.top(3))).containsExactly(1L, 2L, 3L);
+        // 堆顶已是分数下降的元素，更高分的新元素挤出它
+        assertThat(heap.offer(4, 15)).isTrue();
+        assertThat(ids(heap.top(3))).containsExactly(1L, 2L, 4L);
+    }
+    
+    @Test
+    void removeLeavesRoomForRefill() {
+        TopNHeap heap = new TopNHeap(2);
+        heap.offer(1, 10);
+        heap.offer(2, 20);
+        heap.offer(3, 5);
+        
+        assertThat(heap.remove(2)).isTrue();
+        assertThat(heap.remove(2)).isFalse();
+        assertThat(ids(heap.top(2))).containsExactly(1L);
+        
+        // 调用方重新offer候选元素补位
+        heap.offer(3, 5);
+        assertThat(ids(heap.top(2))).containsExactly(1L, 3L);
+        
+        heap.clear();
+        assertThat(heap.size()).isZero();
+        assertThat(heap.top(2)).isEmpty();
+    }
+    
+    @Test
+    void scaleKeepsOrderAndMergeReturnsGlobalTop() {
+        TopNHeap first = new TopNHeap(2);
+        first.offer(1, 8);
+        first.offer(2, 4);
+        first.scale(0.5);
+        assertThat(first.top(2).get(0).getScore()).isEqualTo(4.0);
+        assertThat(ids(first.top(2))).containsExactly(1L, 2L);
+        
+        TopNHeap second = new TopNHeap(2);
+        second.offer(3, 3);
+        second.offer(4, 1);
+        
+        List<TopNHeap.Ranked> candidates = new ArrayList<>();
+        first.copyTo(candidates);
+        second.copyTo(candidates);
+        assertThat(ids(TopNHeap.merge(candidates, 3))).containsExactly(1L, 3L, 2L);
+    }
+    
+    @Test
+    void matchesFullSortUnderRandomIncreasesAndRemovals() {
+        int capacity = 10;
+        TopNHeap heap = new TopNHeap(capacity);
+        Map<Long, Double> scores = new HashMap<>();
+        Random random = new Random(42);
+        
+        for (int step = 0; step < 20_000; step++) {
+            long id = random.nextInt(200);
+            if (random.nextInt(20) == 0) {
+                scores.remove(id);
+                if (heap.remove(id)) {
+                    scores.forEach(heap::offer);
+                }
+            } else {
+                // 分数只增，与销量累加一致；取整数便于产生并列
+                double score = scores.getOrDefault(id, 0.0) + random.nextInt(5);
+                scores.put(id, score);
+                heap.offer(id, score);
+            }
+            assertThat(heap.size()).isLessThanOrEqualTo(capacity);
+            
+            if (step % 100 == 0) {
+                List<Long> expected = scores.entrySet().stream()
+                        .sorted(Map.Entry.<Long, Double>comparingByValue(Comparator.reverseOrder())
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .limit(capacity)
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList());
+                assertThat(ids(heap.top(capacity))).isEqualTo(expected);
+            }
+        }
+    }
+    
+    private static List<Long> ids(List<TopNHeap.Ranked> ranked) {
+        return ranked.stream().map(TopNHeap.Ranked::getId).collect(Collectors.toList());
+    }
+}
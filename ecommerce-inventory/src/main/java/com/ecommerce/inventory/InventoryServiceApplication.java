@@ -4,12 +4,14 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * 库存服务启动类
  */
 @SpringBootApplication
 @EnableEurekaClient
+@EnableScheduling
 @EntityScan(basePackages = {"com.ecommerce.common.entity", "com.ecommerce.inventory"})
 public class InventoryServiceApplication {
     
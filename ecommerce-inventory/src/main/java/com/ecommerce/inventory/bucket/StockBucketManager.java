@@ -0,0 +1,450 @@
+package com.ecommerce.inventory.bucket;
+
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.entity.InventoryBucket;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.inventory.repository.InventoryBucketRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热点商品库存分桶
+ * 分桶商品的库存拆分到t_inventory_bucket的多行，锁定时按订单ID哈希选桶，
+ * 用带条件的UPDATE只锁住一行；本桶不足时依次尝试余量最多的其他桶，
+ * 任何单桶都不足时锁住全部桶跨桶扣取。扣减/释放同理，锁定库存在各桶之间可以互相抵扣。
+ * 定时任务把各桶可用库存重新均分，并把合计写回t_inventory供预警等汇总查询使用。
+ * 所有方法都需要在调用方的事务中执行，锁定/扣减/释放要求事务隔离级别为READ COMMITTED：
+ * 可重复读下条件不满足的UPDATE仍持有行锁，本桶、其他桶、全部桶依次加锁时会与并发订单互相等待。
+ * 同时需要汇总行与桶时一律先锁t_inventory再按桶序号锁桶
+ */
+@Slf4j
+@Component
+public class StockBucketManager {
+    
+    private final InventoryRepository inventoryRepository;
+    private final InventoryBucketRepository bucketRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxBucketCount;
+    
+    /** 分桶商品ID -> 桶数，各节点定时从数据库刷新 */
+    private final Map<Long, Integer> bucketCounts = new ConcurrentHashMap<>();
+    
+    public StockBucketManager(InventoryRepository inventoryRepository,
+                              InventoryBucketRepository bucketRepository,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${inventory.bucket.max-count:64}") int maxBucketCount) {
+        this.inventoryRepository = inventoryRepository;
+        this.bucketRepository = bucketRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.maxBucketCount = maxBucketCount;
+    }
+    
+    /**
+     * 从数据库加载分桶商品
+     */
+    @PostConstruct
+    public void refresh() {
+        Map<Long, Integer> loaded = new HashMap<>();
+        for (Inventory inventory : inventoryRepository.findByBucketCountGreaterThan(1)) {
+            loaded.put(inventory.getProductId(), inventory.getBucketCount());
+        }
+        bucketCounts.keySet().retainAll(loaded.keySet());
+        bucketCounts.putAll(loaded);
+    }
+    
+    /**
+     * 商品是否分桶（本地路由，可能落后于数据库一个刷新周期）
+     */
+    public boolean isBucketed(Long productId) {
+        return bucketCounts.containsKey(productId);
+    }
+    
+    /**
+     * 按数据库中读到的库存记录修正本地路由
+     * @return 该商品是否分桶
+     */
+    public boolean route(Inventory inventory) {
+        if (inventory.isBucketed()) {
+            bucketCounts.put(inventory.getProductId(), inventory.getBucketCount());
+            return true;
+        }
+        bucketCounts.remove(inventory.getProductId());
+        return false;
+    }
+    
+    /**
+     * 锁定库存
+     * @return 变动前后所在桶（或全部桶合计）的可用库存，商品实际未分桶时返回null
+     */
+    public Change lock(Long productId, int quantity, Long orderId) {
+        return apply(Operation.LOCK, productId, quantity, orderId);
+    }
+    
+    /**
+     * 扣减锁定库存
+     * @return 变动前后所在桶（或全部桶合计）的锁定库存，商品实际未分桶时返回null
+     */
+    public Change deduct(Long productId, int quantity, Long orderId) {
+        return apply(Operation.DEDUCT, productId, quantity, orderId);
+    }
+    
+    /**
+     * 释放锁定库存
+     * @return 变动前后所在桶（或全部桶合计）的可用库存，商品实际未分桶时返回null
+     */
+    public Change release(Long productId, int quantity, Long orderId) {
+        return apply(Operation.RELEASE, productId, quantity, orderId);
+    }
+    
+    /**
+     * 调整可用库存（增加或设置库存），调整后各桶重新均分
+     * @param availableDelta 可用库存变化量
+     * @return 变动前后全部桶合计的可用库存
+     */
+    public Change adjust(Long productId, int availableDelta) {
+        List<InventoryBucket> buckets = bucketRepository.findByProductIdForUpdate(productId);
+        int available = buckets.stream().mapToInt(InventoryBucket::getAvailableStock).sum();
+        redistribute(buckets, available + availableDelta);
+        bucketRepository.saveAll(buckets);
+        return new Change(available, available + availableDelta);
+    }
+    
+    /**
+     * 用各桶合计覆盖库存记录中的汇总值
+     */
+    public Inventory fill(Inventory inventory) {
+        for (InventoryBucketRepository.BucketSumView sum
+                : bucketRepository.sumByProductIdIn(List.of(inventory.getProductId()))) {
+            inventory.setAvailableStock(sum.getAvailableStock().intValue());
+            inventory.setLockedStock(sum.getLockedStock().intValue());
+            inventory.setTotalStock(inventory.getAvailableStock() + inventory.getLockedStock());
+        }
+        return inventory;
+    }
+    
+    /**
+     * 批量汇总各桶可用库存
+     * @return 商品ID -> 可用库存，没有桶的商品不在结果中
+     */
+    public Map<Long, Integer> sumAvailable(Collection<Long> productIds) {
+        Map<Long, Integer> sums = new HashMap<>(productIds.size() * 2);
+        for (InventoryBucketRepository.BucketSumView sum : bucketRepository.sumByProductIdIn(productIds)) {
+            sums.put(sum.getProductId(), sum.getAvailableStock().intValue());
+        }
+        return sums;
+    }
+    
+    /**
+     * 修改商品的分桶数：合并现有库存后按新桶数均分，桶数为1时库存回到t_inventory
+     * @param inventory 已加悲观锁的库存记录
+     * @param count 新桶数
+     */
+    public void changeBucketCount(Inventory inventory, int count) {
+        if (count < 1 || count > maxBucketCount) {
+            throw new BusinessException("库存分桶数必须在1到" + maxBucketCount + "之间");
+        }
+        Long productId = inventory.getProductId();
+        int available = inventory.getAvailableStock();
+        int locked = inventory.getLockedStock();
+        if (inventory.isBucketed()) {
+            List<InventoryBucket> buckets = bucketRepository.findByProductIdForUpdate(productId);
+            available = buckets.stream().mapToInt(InventoryBucket::getAvailableStock).sum();
+            locked = buckets.stream().mapToInt(InventoryBucket::getLockedStock).sum();
+            bucketRepository.deleteByProductId(productId);
+        }
+        
+        if (count > 1) {
+            List<InventoryBucket> buckets = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                buckets.add(InventoryBucket.builder()
+                        .productId(productId)
+                        .bucketNo(i)
+                        .availableStock(0)
+                        .lockedStock(share(locked, count, i))
+                        .build());
+            }
+            redistribute(buckets, available);
+            bucketRepository.saveAll(buckets);
+        }
+        
+        inventory.setBucketCount(count);
+        inventory.setAvailableStock(available);
+        inventory.setLockedStock(locked);
+        inventory.setTotalStock(available + locked);
+        inventoryRepository.save(inventory);
+        
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                route(inventory);
+            }
+        });
+        log.info("库存分桶数已修改: productId={}, bucketCount={}", productId, count);
+    }
+    
+    /**
+     * 定时刷新分桶路由，均分各桶可用库存并写回汇总值
+     */
+    @Scheduled(fixedDelayString = "${inventory.bucket.rebalance-interval-ms:5000}")
+    public void rebalance() {
+        refresh();
+        for (Long productId : bucketCounts.keySet()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> rebalance(productId));
+            } catch (Exception e) {
+                log.warn("库存分桶均衡失败: productId={}", productId, e);
+            }
+        }
+    }
+    
+    private void rebalance(Long productId) {
+        // 与锁定库存、修改桶数的加锁顺序一致：先汇总行，再各桶
+        Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId).orElse(null);
+        if (inventory == null || !inventory.isBucketed()) {
+            return;
+        }
+        List<InventoryBucket> buckets = bucketRepository.findByProductIdForUpdate(productId);
+        if (buckets.isEmpty()) {
+            return;
+        }
+        int available = 0;
+        int locked = 0;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (InventoryBucket bucket : buckets) {
+            available += bucket.getAvailableStock();
+            locked += bucket.getLockedStock();
+            min = Math.min(min, bucket.getAvailableStock());
+            max = Math.max(max, bucket.getAvailableStock());
+        }
+        // 各桶相差不超过桶数时视为均衡，避免无谓的写入
+        if (max - min > buckets.size()) {
+            redistribute(buckets, available);
+            bucketRepository.saveAll(buckets);
+        }
+        inventoryRepository.syncBucketTotals(productId, available, locked);
+    }
+    
+    private Change apply(Operation operation, Long productId, int quantity, Long orderId) {
+        List<InventoryBucketRepository.BucketView> views = bucketRepository.findViewsByProductId(productId);
+        if (views.isEmpty()) {
+            // 本地路由已过期，商品已取消分桶
+            bucketCounts.remove(productId);
+            return null;
+        }
+        
+        // 本单的桶优先，其余按余量从多到少，只尝试单桶就足够的
+        int home = homeBucket(orderId, views.size());
+        List<InventoryBucketRepository.BucketView> candidates = new ArrayList<>(views);
+        candidates.sort(Comparator
+                .comparingInt((InventoryBucketRepository.BucketView view) -> view.getBucketNo() == home ? 0 : 1)
+                .thenComparingInt(view -> -operation.source(view.getAvailableStock(), view.getLockedStock())));
+        for (InventoryBucketRepository.BucketView view : candidates) {
+            if (operation.source(view.getAvailableStock(), view.getLockedStock()) < quantity) {
+                continue;
+            }
+            if (operation.update(bucketRepository, productId, view.getBucketNo(), quantity) > 0) {
+                InventoryBucketRepository.BucketView after = bucketRepository.findView(productId, view.getBucketNo());
+                int afterValue = operation.logged(after.getAvailableStock(), after.getLockedStock());
+                return new Change(afterValue - operation.loggedDelta(quantity), afterValue);
+            }
+        }
+        return applyAcrossBuckets(operation, productId, quantity);
+    }
+    
+    /**
+     * 任何单桶都不足时锁住全部桶，按桶序号依次扣取
+     */
+    private Change applyAcrossBuckets(Operation operation, Long productId, int quantity) {
+        List<InventoryBucket> buckets = bucketRepository.findByProductIdForUpdate(productId);
+        int source = 0;
+        int logged = 0;
+        for (InventoryBucket bucket : buckets) {
+            source += operation.source(bucket.getAvailableStock(), bucket.getLockedStock());
+            logged += operation.logged(bucket.getAvailableStock(), bucket.getLockedStock());
+        }
+        if (source < quantity) {
+            throw operation.insufficient();
+        }
+        
+        int remaining = quantity;
+        for (InventoryBucket bucket : buckets) {
+            int take = Math.min(remaining, operation.source(bucket.getAvailableStock(), bucket.getLockedStock()));
+            if (take <= 0) {
+                continue;
+            }
+            operation.apply(bucket, take);
+            remaining -= take;
+            if (remaining == 0) {
+                break;
+            }
+        }
+        bucketRepository.saveAll(buckets);
+        return new Change(logged, logged + operation.loggedDelta(quantity));
+    }
+    
+    private static int homeBucket(Long orderId, int bucketCount) {
+        if (orderId == null) {
+            return ThreadLocalRandom.current().nextInt(bucketCount);
+        }
+        return Math.floorMod(Long.hashCode(orderId * 0x9E3779B97F4A7C15L), bucketCount);
+    }
+    
+    /**
+     * 把可用库存均分到各桶，余数从0号桶开始各加1
+     */
+    private static void redistribute(List<InventoryBucket> buckets, int available) {
+        for (int i = 0; i < buckets.size(); i++) {
+            buckets.get(i).setAvailableStock(share(available, buckets.size(), i));
+        }
+    }
+    
+    private static int share(int total, int count, int index) {
+        return Math.floorDiv(total, count) + (index < Math.floorMod(total, count) ? 1 : 0);
+    }
+    
+    /**
+     * 分桶库存操作：source为可扣取的数量，logged为写入库存日志的数量
+     */
+    private enum Operation {
+        
+        LOCK {
+            @Override
+            int source(int available, int locked) {
+                return available;
+            }
+            
+            @Override
+            int logged(int available, int locked) {
+                return available;
+            }
+            
+            @Override
+            int loggedDelta(int quantity) {
+                return -quantity;
+            }
+            
+            @Override
+            int update(InventoryBucketRepository repository, Long productId, Integer bucketNo, int quantity) {
+                return repository.lockStock(productId, bucketNo, quantity);
+            }
+            
+            @Override
+            void apply(InventoryBucket bucket, int quantity) {
+                bucket.setAvailableStock(bucket.getAvailableStock() - quantity);
+                bucket.setLockedStock(bucket.getLockedStock() + quantity);
+            }
+            
+            @Override
+            BusinessException insufficient() {
+                return new BusinessException(ResultCode.INVENTORY_NOT_ENOUGH);
+            }
+        },
+        
+        DEDUCT {
+            @Override
+            int source(int available, int locked) {
+                return locked;
+            }
+            
+            @Override
+            int logged(int available, int locked) {
+                return locked;
+            }
+            
+            @Override
+            int loggedDelta(int quantity) {
+                return -quantity;
+            }
+            
+            @Override
+            int update(InventoryBucketRepository repository, Long productId, Integer bucketNo, int quantity) {
+                return repository.deductStock(productId, bucketNo, quantity);
+            }
+            
+            @Override
+            void apply(InventoryBucket bucket, int quantity) {
+                bucket.setLockedStock(bucket.getLockedStock() - quantity);
+            }
+            
+            @Override
+            BusinessException insufficient() {
+                return new BusinessException("锁定库存不足，无法扣减");
+            }
+        },
+        
+        RELEASE {
+            @Override
+            int source(int available, int locked) {
+                return locked;
+            }
+            
+            @Override
+            int logged(int available, int locked) {
+                return available;
+            }
+            
+            @Override
+            int loggedDelta(int quantity) {
+                return quantity;
+            }
+            
+            @Override
+            int update(InventoryBucketRepository repository, Long productId, Integer bucketNo, int quantity) {
+                return repository.releaseStock(productId, bucketNo, quantity);
+            }
+            
+            @Override
+            void apply(InventoryBucket bucket, int quantity) {
+                bucket.setAvailableStock(bucket.getAvailableStock() + quantity);
+                bucket.setLockedStock(bucket.getLockedStock() - quantity);
+            }
+            
+            @Override
+            BusinessException insufficient() {
+                return new BusinessException("锁定库存不足，无法释放");
+            }
+        };
+        
+        abstract int source(int available, int locked);
+        
+        abstract int logged(int available, int locked);
+        
+        abstract int loggedDelta(int quantity);
+        
+        abstract int update(InventoryBucketRepository repository, Long productId, Integer bucketNo, int quantity);
+        
+        abstract void apply(InventoryBucket bucket, int quantity);
+        
+        abstract BusinessException insufficient();
+    }
+    
+    /**
+     * 库存变动前后的数量，用于库存日志
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Change {
+        private final int before;
+        private final int after;
+    }
+}
@@ -1,15 +1,23 @@
 package com.ecommerce.inventory.controller;
 
+import com.ecommerce.common.dto.InventoryBatchLockDTO;
 import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
 import com.ecommerce.common.entity.Inventory;
 import com.ecommerce.common.entity.InventoryLog;
 import com.ecommerce.common.result.Result;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.flashsale.FlashSaleManager;
 import com.ecommerce.inventory.service.InventoryService;
+import com.ecommerce.inventory.warning.StockWarningMonitor;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 库存控制器
@@ -20,6 +28,8 @@ import java.util.List;
 public class InventoryController {
     
     private final InventoryService inventoryService;
+    private final FlashSaleManager flashSaleManager;
+    private final StockWarningMonitor stockWarningMonitor;
     
     /**
      * 初始化商品库存
@@ -45,6 +55,14 @@ public class InventoryController {
         return Result.success(inventoryService.getAvailableStock(productId));
     }
     
+    /**
+     * 批量获取可用库存
+     */
+    @GetMapping("/stock")
+    public Result<Map<Long, Integer>> getAvailableStocks(@RequestParam List<Long> productIds) {
+        return Result.success(inventoryService.getAvailableStocks(productIds));
+    }
+    
     /**
      * 锁定库存
      */
@@ -53,6 +71,21 @@ public class InventoryController {
         return Result.success(inventoryService.lockStock(dto.getProductId(), dto.getQuantity(), dto.getOrderId()));
     }
     
+    /**
+     * 批量锁定订单库存
+     */
+    @PostMapping("/lock/batch")
+    public Result<List<InventoryLockVO>> batchLockStock(@RequestBody @Validated InventoryBatchLockDTO dto) {
+        // 秒杀配额在开启库存事务前领取，领取的短事务不与库存事务同时占用连接；
+        // 含已售罄秒杀商品的请求在开启库存事务前直接拒绝，不占用数据库连接
+        flashSaleManager.prefetch(dto.getItems());
+        List<InventoryLockVO> soldOut = flashSaleManager.rejectSoldOut(dto.getItems());
+        if (soldOut != null) {
+            return Result.success(soldOut);
+        }
+        return Result.success(inventoryService.batchLockStock(dto.getOrderId(), dto.getUserId(), dto.getItems()));
+    }
+    
     /**
      * 扣减库存
      */
@@ -85,6 +118,39 @@ public class InventoryController {
         return Result.success(inventoryService.setStock(productId, stock));
     }
     
+    /**
+     * 修改库存分桶数
+     */
+    @PutMapping("/product/{productId}/buckets")
+    public Result<Inventory> changeBucketCount(@PathVariable Long productId, @RequestParam Integer count) {
+        return Result.success(inventoryService.changeBucketCount(productId, count));
+    }
+    
+    /**
+     * 开启秒杀活动
+     */
+    @PostMapping("/flash-sale/{productId}")
+    public Result<FlashSale> activateFlashSale(@PathVariable Long productId, @RequestParam Integer quota,
+                                               @RequestParam Integer perUserLimit) {
+        return Result.success(inventoryService.activateFlashSale(productId, quota, perUserLimit));
+    }
+    
+    /**
+     * 结束秒杀活动
+     */
+    @DeleteMapping("/flash-sale/{productId}")
+    public Result<FlashSale> endFlashSale(@PathVariable Long productId) {
+        return Result.success(inventoryService.endFlashSale(productId));
+    }
+    
+    /**
+     * 获取进行中的秒杀活动
+     */
+    @GetMapping("/flash-sale/{productId}")
+    public Result<FlashSale> getFlashSale(@PathVariable Long productId) {
+        return Result.success(inventoryService.getFlashSale(productId));
+    }
+    
     /**
      * 获取库存预警列表
      */
@@ -93,6 +159,14 @@ public class InventoryController {
         return Result.success(inventoryService.getWarningInventories());
     }
     
+    /**
+     * 订阅库存预警变化（SSE），先推送当前预警列表，之后推送商品进入或解除预警
+     */
+    @GetMapping(value = "/warning/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeWarnings() {
+        return stockWarningMonitor.subscribe();
+    }
+    
     /**
      * 获取库存日志
      */
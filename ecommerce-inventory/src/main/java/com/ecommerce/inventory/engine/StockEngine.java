@@ -0,0 +1,558 @@
+package com.ecommerce.inventory.engine;
+
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.entity.InventoryCheckpoint;
+import com.ecommerce.common.enums.InventoryOperationType;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.repository.InventoryCheckpointRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存库存引擎
+ * 每个商品的可用库存与锁定库存打包在一个AtomicLong中（高32位可用、低32位锁定），
+ * 锁定/扣减/释放通过CAS在内存中完成，不再竞争数据库行锁。
+ * 变动成功后先写本地预写日志（组提交刷盘）再返回，后台定时把日志按商品合并成批量UPDATE，
+ * 与库存日志、检查点在同一事务内写库；启动时从数据库加载库存，再重放检查点之后的日志。
+ * 日志写入或刷盘失败后引擎停止接受库存变动，已有的变动照常写库，需排查磁盘后重启恢复。
+ * 数据库不再参与库存判断，因此同一时间只能有一个库存服务节点开启引擎
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "inventory.engine", name = "enabled", havingValue = "true")
+public class StockEngine {
+    
+    private static final String UPDATE_SQL = "UPDATE t_inventory SET available_stock = available_stock + ?, "
+            + "locked_stock = locked_stock + ?, total_stock = total_stock + ?, update_time = ? WHERE product_id = ?";
+    
+    private static final String LOG_SQL = "INSERT INTO t_inventory_log (product_id, order_id, operation_type, "
+            + "quantity, before_stock, after_stock, remark, create_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    private final InventoryRepository inventoryRepository;
+    private final InventoryCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StockJournal journal;
+    private final int flushBatchSize;
+    private final long journalMaxBytes;
+    
+    /** 商品ID -> 打包的库存 */
+    private final Map<Long, AtomicLong> cells = new ConcurrentHashMap<>();
+    
+    /** 写日志与未写库列表共用的锁，保证两者顺序一致 */
+    private final Object appendLock = new Object();
+    
+    /** 已写日志、尚未写库的记录，按序号递增 */
+    private List<StockJournal.Entry> unflushed = new ArrayList<>();
+    
+    /** 已写库的最大序号 */
+    private volatile long flushedSeq;
+    
+    /** 日志写入或刷盘失败后置位，不再接受库存变动 */
+    private volatile boolean journalFailed;
+    
+    private final Counter flushedCounter;
+    private final Counter flushFailedCounter;
+    
+    public StockEngine(InventoryRepository inventoryRepository,
+                       InventoryCheckpointRepository checkpointRepository,
+                       JdbcTemplate jdbcTemplate,
+                       TransactionTemplate transactionTemplate,
+                       MeterRegistry meterRegistry,
+                       @Value("${inventory.engine.journal-path:./data/inventory-journal.log}") String journalPath,
+                       @Value("${inventory.engine.journal-sync:true}") boolean journalSync,
+                       @Value("${inventory.engine.flush-batch-size:5000}") int flushBatchSize,
+                       @Value("${inventory.engine.journal-max-bytes:67108864}") long journalMaxBytes) throws IOException {
+        this.inventoryRepository = inventoryRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.journal = new StockJournal(Paths.get(journalPath), journalSync);
+        this.flushBatchSize = flushBatchSize;
+        this.journalMaxBytes = journalMaxBytes;
+        
+        Gauge.builder("inventory.engine.unflushed", this, StockEngine::unflushedCount)
+                .description("已写日志、尚未写库的库存变动数")
+                .register(meterRegistry);
+        this.flushedCounter = Counter.builder("inventory.engine.flushed").register(meterRegistry);
+        this.flushFailedCounter = Counter.builder("inventory.engine.flush.failed").register(meterRegistry);
+    }
+    
+    /**
+     * 启动恢复：加载数据库库存，重放检查点之后的日志并立即写库
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        long checkpointSeq = checkpointRepository.findById(InventoryCheckpoint.ENGINE_ID)
+                .map(InventoryCheckpoint::getJournalSeq)
+                .orElseGet(() -> checkpointRepository.save(InventoryCheckpoint.builder()
+                        .id(InventoryCheckpoint.ENGINE_ID)
+                        .journalSeq(0L)
+                        .build()).getJournalSeq());
+        
+        for (Inventory inventory : inventoryRepository.findAll()) {
+            if (inventory.isBucketed()) {
+                // 分桶商品的库存不在t_inventory中，与按差值写库的方式冲突
+                throw new IllegalStateException("商品库存已分桶，开启内存引擎前需先把分桶数改回1: productId="
+                        + inventory.getProductId());
+            }
+            register(inventory);
+        }
+        
+        List<StockJournal.Entry> replay = journal.recover(checkpointSeq);
+        for (StockJournal.Entry entry : replay) {
+            AtomicLong cell = cells.get(entry.productId);
+            if (cell == null) {
+                log.warn("库存日志中的商品没有库存记录，跳过: seq={}, productId={}", entry.seq, entry.productId);
+                continue;
+            }
+            long current = cell.get();
+            cell.set(pack(available(current) + entry.availableDelta(), locked(current) + entry.lockedDelta()));
+            unflushed.add(entry);
+        }
+        flushedSeq = checkpointSeq;
+        log.info("库存引擎恢复完成: products={}, checkpoint={}, replayed={}, journal={}",
+                cells.size(), checkpointSeq, replay.size(), journal.getPath());
+        flush();
+    }
+    
+    /**
+     * 登记新建的库存记录
+     */
+    public void register(Inventory inventory) {
+        cells.put(inventory.getProductId(),
+                new AtomicLong(pack(inventory.getAvailableStock(), inventory.getLockedStock())));
+    }
+    
+    public boolean contains(Long productId) {
+        return cell(productId) != null;
+    }
+    
+    /**
+     * 可用库存，没有库存记录时返回0
+     */
+    public int getAvailableStock(Long productId) {
+        AtomicLong cell = cell(productId);
+        return cell != null ? available(cell.get()) : 0;
+    }
+    
+    /**
+     * 用内存中的库存覆盖数据库读出的库存记录
+     */
+    public Inventory fill(Inventory inventory) {
+        AtomicLong cell = cell(inventory.getProductId());
+        if (cell != null) {
+            long current = cell.get();
+            inventory.setAvailableStock(available(current));
+            inventory.setLockedStock(locked(current));
+            inventory.setTotalStock(available(current) + locked(current));
+        }
+        return inventory;
+    }
+    
+    /**
+     * 锁定库存：可用库存转为锁定库存
+     */
+    public void lock(Long productId, int quantity, Long orderId) {
+        ensureWritable();
+        AtomicLong cell = requireCell(productId);
+        long current;
+        do {
+            current = cell.get();
+            if (available(current) < quantity) {
+                throw new BusinessException(ResultCode.INVENTORY_NOT_ENOUGH);
+            }
+        } while (!cell.compareAndSet(current, pack(available(current) - quantity, locked(current) + quantity)));
+        commit(cell, new StockJournal.Entry(productId, orderId, InventoryOperationType.LOCK, quantity,
+                available(current), available(current) - quantity));
+    }
+    
+    /**
+     * 批量锁定订单库存，任一商品不足则已锁定的全部回退，整单不锁定
+     * @param quantities 按商品ID升序的锁定数量
+     */
+    public List<InventoryLockVO> batchLock(Long orderId, TreeMap<Long, Integer> quantities) {
+        ensureWritable();
+        List<InventoryLockVO> results = new ArrayList<>(quantities.size());
+        List<StockJournal.Entry> entries = new ArrayList<>(quantities.size());
+        boolean enough = true;
+        for (Map.Entry<Long, Integer> item : quantities.entrySet()) {
+            InventoryLockVO result = InventoryLockVO.builder()
+                    .productId(item.getKey())
+                    .quantity(item.getValue())
+                    .success(false)
+                    .build();
+            results.add(result);
+            AtomicLong cell = cell(item.getKey());
+            if (cell == null) {
+                result.setMessage(ResultCode.INVENTORY_NOT_FOUND.getMessage());
+                enough = false;
+                continue;
+            }
+            int quantity = item.getValue();
+            if (!enough) {
+                // 已有商品失败，其余商品只校验不锁定
+                int available = available(cell.get());
+                result.setAvailableStock(available);
+                if (available < quantity) {
+                    result.setMessage(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+                } else {
+                    result.setSuccess(true);
+                }
+                continue;
+            }
+            long current;
+            do {
+                current = cell.get();
+                result.setAvailableStock(available(current));
+                if (available(current) < quantity) {
+                    break;
+                }
+            } while (!cell.compareAndSet(current, pack(available(current) - quantity, locked(current) + quantity)));
+            if (available(current) < quantity) {
+                result.setMessage(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+                enough = false;
+                continue;
+            }
+            result.setSuccess(true);
+            entries.add(new StockJournal.Entry(item.getKey(), orderId, InventoryOperationType.LOCK, quantity,
+                    available(current), available(current) - quantity));
+        }
+        
+        if (!enough) {
+            // 回退已在内存中锁定的商品，这些变动尚未写日志
+            for (StockJournal.Entry entry : entries) {
+                undo(cells.get(entry.productId), entry);
+            }
+            for (InventoryLockVO result : results) {
+                if (result.getSuccess()) {
+                    result.setSuccess(false);
+                    result.setMessage(InventoryLockVO.MESSAGE_OTHER_ITEM_FAILED);
+                }
+            }
+            return results;
+        }
+        
+        commit(entries);
+        return results;
+    }
+    
+    /**
+     * 扣减库存：从锁定库存中扣除
+     */
+    public void deduct(Long productId, int quantity, Long orderId) {
+        ensureWritable();
+        AtomicLong cell = requireCell(productId);
+        long current;
+        do {
+            current = cell.get();
+            if (locked(current) < quantity) {
+                throw new BusinessException("锁定库存不足，无法扣减");
+            }
+        } while (!cell.compareAndSet(current, pack(available(current), locked(current) - quantity)));
+        commit(cell, new StockJournal.Entry(productId, orderId, InventoryOperationType.DEDUCT, quantity,
+                locked(current), locked(current) - quantity));
+    }
+    
+    /**
+     * 释放库存：锁定库存转回可用库存
+     */
+    public void release(Long productId, int quantity, Long orderId) {
+        ensureWritable();
+        AtomicLong cell = requireCell(productId);
+        long current;
+        do {
+            current = cell.get();
+            if (locked(current) < quantity) {
+                throw new BusinessException("锁定库存不足，无法释放");
+            }
+        } while (!cell.compareAndSet(current, pack(available(current) + quantity, locked(current) - quantity)));
+        commit(cell, new StockJournal.Entry(productId, orderId, InventoryOperationType.RELEASE, quantity,
+                available(current), available(current) + quantity));
+    }
+    
+    /**
+     * 增加库存
+     */
+    public void add(Long productId, int quantity) {
+        ensureWritable();
+        AtomicLong cell = requireCell(productId);
+        long current;
+        do {
+            current = cell.get();
+        } while (!cell.compareAndSet(current, pack(available(current) + quantity, locked(current))));
+        commit(cell, new StockJournal.Entry(productId, null, InventoryOperationType.ADD, quantity,
+                available(current), available(current) + quantity));
+    }
+    
+    /**
+     * 设置总库存，差值计入可用库存
+     */
+    public void set(Long productId, int stock) {
+        ensureWritable();
+        AtomicLong cell = requireCell(productId);
+        long current;
+        int diff;
+        do {
+            current = cell.get();
+            diff = stock - available(current) - locked(current);
+        } while (!cell.compareAndSet(current, pack(available(current) + diff, locked(current))));
+        commit(cell, new StockJournal.Entry(productId, null, InventoryOperationType.SET, diff,
+                available(current), available(current) + diff));
+    }
+    
+    /**
+     * 定时把未写库的日志合并写入数据库
+     */
+    @Scheduled(fixedDelayString = "${inventory.engine.flush-interval-ms:100}")
+    public synchronized void flush() {
+        List<StockJournal.Entry> batch;
+        synchronized (appendLock) {
+            if (unflushed.isEmpty()) {
+                return;
+            }
+            batch = unflushed;
+            unflushed = new ArrayList<>();
+        }
+        
+        int offset = 0;
+        try {
+            while (offset < batch.size()) {
+                List<StockJournal.Entry> chunk = batch.subList(offset, Math.min(offset + flushBatchSize, batch.size()));
+                write(chunk);
+                offset += chunk.size();
+                flushedSeq = chunk.get(chunk.size() - 1).seq;
+                flushedCounter.increment(chunk.size());
+            }
+        } catch (Exception e) {
+            flushFailedCounter.increment();
+            log.warn("库存引擎写库失败，稍后重试: pending={}", batch.size() - offset, e);
+        }
+        
+        synchronized (appendLock) {
+            if (offset < batch.size()) {
+                // 未写库的记录放回队首，保持序号顺序
+                List<StockJournal.Entry> remaining = new ArrayList<>(batch.subList(offset, batch.size()));
+                remaining.addAll(unflushed);
+                unflushed = remaining;
+            } else if (unflushed.isEmpty()) {
+                try {
+                    journal.truncateIfFlushed(flushedSeq, journalMaxBytes);
+                } catch (IOException e) {
+                    log.warn("库存日志清理失败: {}", journal.getPath(), e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 应用关闭前写入剩余日志
+     */
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        journal.close();
+        log.info("库存引擎已关闭: unflushed={}", unflushedCount());
+    }
+    
+    /**
+     * 一批日志在同一事务内写库：按商品合并的库存变动、逐条库存日志与检查点
+     */
+    private void write(List<StockJournal.Entry> chunk) {
+        Map<Long, int[]> deltas = new TreeMap<>();
+        List<Object[]> logArgs = new ArrayList<>(chunk.size());
+        for (StockJournal.Entry entry : chunk) {
+            int[] delta = deltas.computeIfAbsent(entry.productId, id -> new int[2]);
+            delta[0] += entry.availableDelta();
+            delta[1] += entry.lockedDelta();
+            logArgs.add(new Object[]{entry.productId, entry.getOrderId(), entry.type.name(), entry.quantity,
+                    entry.beforeStock, entry.afterStock, entry.type.getDescription(),
+                    new Timestamp(entry.time)});
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updateArgs = new ArrayList<>(deltas.size());
+        for (Map.Entry<Long, int[]> entry : deltas.entrySet()) {
+            int[] delta = entry.getValue();
+            updateArgs.add(new Object[]{delta[0], delta[1], delta[0] + delta[1], now, entry.getKey()});
+        }
+        long lastSeq = chunk.get(chunk.size() - 1).seq;
+        
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, updateArgs);
+            jdbcTemplate.batchUpdate(LOG_SQL, logArgs);
+            InventoryCheckpoint checkpoint = checkpointRepository.findById(InventoryCheckpoint.ENGINE_ID)
+                    .orElseThrow(() -> new IllegalStateException("库存引擎检查点不存在"));
+            checkpoint.setJournalSeq(lastSeq);
+            checkpointRepository.save(checkpoint);
+        });
+    }
+    
+    /**
+     * 写日志并等待刷盘，写日志失败时回退内存中的变动
+     */
+    private void commit(AtomicLong cell, StockJournal.Entry entry) {
+        long seq;
+        synchronized (appendLock) {
+            try {
+                seq = journal.append(entry);
+            } catch (IOException e) {
+                undo(cell, entry);
+                journalFailed = true;
+                log.error("库存日志写入失败，库存引擎停止接受变动: productId={}", entry.productId, e);
+                throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED, "库存日志写入失败");
+            }
+            unflushed.add(entry);
+        }
+        sync(seq);
+    }
+    
+    /**
+     * 一批记录整体写日志，中途失败时整批回退：内存中的变动全部撤销，
+     * 已写入的记录追加对应的补偿释放记录，写库后锁定与释放相互抵消
+     */
+    private void commit(Collection<StockJournal.Entry> entries) {
+        long seq = 0;
+        synchronized (appendLock) {
+            List<StockJournal.Entry> appended = new ArrayList<>(entries.size());
+            try {
+                for (StockJournal.Entry entry : entries) {
+                    seq = journal.append(entry);
+                    appended.add(entry);
+                }
+            } catch (IOException e) {
+                journalFailed = true;
+                for (StockJournal.Entry entry : entries) {
+                    undo(cells.get(entry.productId), entry);
+                }
+                unflushed.addAll(appended);
+                unflushed.addAll(compensate(appended, seq));
+                log.error("库存日志写入失败，整批回退，库存引擎停止接受变动: appended={}", appended.size(), e);
+                throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED, "库存日志写入失败");
+            }
+            unflushed.addAll(appended);
+        }
+        sync(seq);
+    }
+    
+    /**
+     * 为已写日志的锁定记录生成补偿释放记录并尽量写入日志；日志已不可写时补偿记录只进入写库队列，
+     * 序号沿用最后一条已写日志的序号，检查点不会回退
+     */
+    private List<StockJournal.Entry> compensate(List<StockJournal.Entry> appended, long lastSeq) {
+        List<StockJournal.Entry> compensations = new ArrayList<>(appended.size());
+        boolean writable = true;
+        for (StockJournal.Entry entry : appended) {
+            StockJournal.Entry compensation = new StockJournal.Entry(entry.productId, entry.getOrderId(),
+                    InventoryOperationType.RELEASE, entry.quantity, entry.afterStock, entry.beforeStock);
+            if (writable) {
+                try {
+                    lastSeq = journal.append(compensation);
+                } catch (IOException e) {
+                    log.error("库存补偿记录写入日志失败，仅写库: productId={}", entry.productId, e);
+                    writable = false;
+                }
+            }
+            if (!writable) {
+                compensation.seq = lastSeq;
+            }
+            compensations.add(compensation);
+        }
+        return compensations;
+    }
+    
+    /**
+     * 等待日志刷盘。刷盘失败后操作系统缓冲中的记录不再可信，引擎停止接受变动，
+     * 并立即把本次变动写库；写库也未完成时本次操作失败，变动留在写库队列中继续重试
+     */
+    private void sync(long seq) {
+        try {
+            journal.sync(seq);
+        } catch (IOException e) {
+            journalFailed = true;
+            log.error("库存日志刷盘失败，库存引擎停止接受变动: seq={}", seq, e);
+            flush();
+            if (flushedSeq < seq) {
+                throw new BusinessException(ResultCode.SERVICE_UNAVAILABLE, "库存日志刷盘失败");
+            }
+        }
+    }
+    
+    private void ensureWritable() {
+        if (journalFailed) {
+            throw new BusinessException(ResultCode.SERVICE_UNAVAILABLE, "库存日志不可用，库存引擎已停止接受变动");
+        }
+    }
+    
+    private static void undo(AtomicLong cell, StockJournal.Entry entry) {
+        long current;
+        do {
+            current = cell.get();
+        } while (!cell.compareAndSet(current, pack(available(current) - entry.availableDelta(),
+                locked(current) - entry.lockedDelta())));
+    }
+    
+    /**
+     * 取商品的库存，不在内存中时从数据库加载（其他途径新建的库存记录）
+     */
+    private AtomicLong cell(Long productId) {
+        AtomicLong cell = cells.get(productId);
+        if (cell != null) {
+            return cell;
+        }
+        return inventoryRepository.findByProductId(productId)
+                .map(inventory -> cells.computeIfAbsent(productId,
+                        id -> new AtomicLong(pack(inventory.getAvailableStock(), inventory.getLockedStock()))))
+                .orElse(null);
+    }
+    
+    private AtomicLong requireCell(Long productId) {
+        AtomicLong cell = cell(productId);
+        if (cell == null) {
+            throw new BusinessException(ResultCode.INVENTORY_NOT_FOUND);
+        }
+        return cell;
+    }
+    
+    private int unflushedCount() {
+        synchronized (appendLock) {
+            return unflushed.size();
+        }
+    }
+    
+    private static long pack(int available, int locked) {
+        return ((long) available << 32) | (locked & 0xFFFFFFFFL);
+    }
+    
+    private static int available(long packed) {
+        return (int) (packed >> 32);
+    }
+    
+    private static int locked(long packed) {
+        return (int) packed;
+    }
+}
@@ -0,0 +1,298 @@
+package com.ecommerce.inventory.engine;
+
+import com.ecommerce.common.enums.InventoryOperationType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 库存引擎预写日志
+ * 定长记录顺序追加到本地文件，每条记录带CRC，恢复时遇到不完整或校验失败的记录即截断尾部。
+ * 刷盘采用组提交：一次force覆盖此前所有已写入的记录，并发等待的线程共享同一次刷盘。
+ * append由调用方串行调用，sync可并发调用
+ */
+public class StockJournal implements AutoCloseable {
+    
+    /** 记录长度：seq(8) productId(8) orderId(8) type(1) quantity(4) before(4) after(4) time(8) crc(4) */
+    static final int RECORD_SIZE = 49;
+    
+    private static final InventoryOperationType[] TYPES = InventoryOperationType.values();
+    
+    private final Path path;
+    private final boolean syncOnWrite;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private final Object syncLock = new Object();
+    
+    /** 下一条记录的序号 */
+    private long nextSeq;
+    
+    /** 已写入文件的最大序号 */
+    private volatile long appendedSeq;
+    
+    /** 已刷盘的最大序号 */
+    private volatile long durableSeq;
+    
+    /**
+     * @param path 日志文件
+     * @param syncOnWrite 是否每次写入后刷盘，关闭时宕机可能丢失操作系统缓冲中的记录
+     */
+    public StockJournal(Path path, boolean syncOnWrite) throws IOException {
+        this.path = path;
+        this.syncOnWrite = syncOnWrite;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+    
+    /**
+     * 读取序号大于检查点的记录，截断损坏的尾部，之后的写入从文件末尾继续
+     * @param checkpointSeq 已写库的最大序号
+     * @return 尚未写库的记录
+     */
+    public List<Entry> recover(long checkpointSeq) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long lastSeq = checkpointSeq;
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        while (position + RECORD_SIZE <= size) {
+            record.clear();
+            while (record.hasRemaining()) {
+                if (channel.read(record, position + record.position()) < 0) {
+                    break;
+                }
+            }
+            record.flip();
+            Entry entry = decode(record);
+            if (entry == null) {
+                break;
+            }
+            if (entry.seq > checkpointSeq) {
+                entries.add(entry);
+            }
+            lastSeq = Math.max(lastSeq, entry.seq);
+            position += RECORD_SIZE;
+        }
+        if (position < size) {
+            channel.truncate(position);
+        }
+        channel.position(position);
+        nextSeq = lastSeq + 1;
+        appendedSeq = lastSeq;
+        durableSeq = lastSeq;
+        return entries;
+    }
+    
+    /**
+     * 追加记录并分配序号，写入操作系统缓冲，持久化需再调用sync；
+     * 写入失败时截掉写了一半的记录，之后的追加不会接在损坏的记录后面
+     * @return 记录序号
+     */
+    public long append(Entry entry) throws IOException {
+        long start = channel.position();
+        try {
+            write(entry);
+        } catch (IOException e) {
+            try {
+                channel.truncate(start);
+                channel.position(start);
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        nextSeq++;
+        appendedSeq = entry.seq;
+        return entry.seq;
+    }
+    
+    private void write(Entry entry) throws IOException {
+        entry.seq = nextSeq;
+        buffer.clear();
+        buffer.putLong(entry.seq)
+                .putLong(entry.productId)
+                .putLong(entry.orderId)
+                .put((byte) entry.type.ordinal())
+                .putInt(entry.quantity)
+                .putInt(entry.beforeStock)
+                .putInt(entry.afterStock)
+                .putLong(entry.time);
+        crc.reset();
+        crc.update(buffer.array(), 0, RECORD_SIZE - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+    
+    /**
+     * 等待指定序号之前的记录刷盘
+     * @param seq 记录序号
+     */
+    public void sync(long seq) throws IOException {
+        if (!syncOnWrite || durableSeq >= seq) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (durableSeq >= seq) {
+                return;
+            }
+            long target = appendedSeq;
+            channel.force(false);
+            durableSeq = target;
+        }
+    }
+    
+    /**
+     * 所有记录都已写库时清空日志文件，由调用方保证期间没有append
+     * @param flushedSeq 已写库的最大序号
+     * @param maxBytes 文件超过该大小才清空
+     * @return 是否已清空
+     */
+    public boolean truncateIfFlushed(long flushedSeq, long maxBytes) throws IOException {
+        if (flushedSeq != appendedSeq || channel.size() < maxBytes) {
+            return false;
+        }
+        synchronized (syncLock) {
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(true);
+        }
+        return true;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        channel.force(true);
+        channel.close();
+    }
+    
+    private Entry decode(ByteBuffer record) {
+        crc.reset();
+        crc.update(record.array(), 0, RECORD_SIZE - 4);
+        if ((int) crc.getValue() != record.getInt(RECORD_SIZE - 4)) {
+            return null;
+        }
+        Entry entry = new Entry();
+        entry.seq = record.getLong();
+        entry.productId = record.getLong();
+        entry.orderId = record.getLong();
+        int type = record.get();
+        if (type < 0 || type >= TYPES.length) {
+            return null;
+        }
+        entry.type = TYPES[type];
+        entry.quantity = record.getInt();
+        entry.beforeStock = record.getInt();
+        entry.afterStock = record.getInt();
+        entry.time = record.getLong();
+        return entry;
+    }
+    
+    /**
+     * 日志记录，一条记录对应一次库存变动
+     */
+    public static final class Entry {
+        
+        long seq;
+        long productId;
+        /** 订单ID，没有订单时为0 */
+        long orderId;
+        InventoryOperationType type;
+        /** 变动数量，SET为总库存的差值 */
+        int quantity;
+        int beforeStock;
+        int afterStock;
+        /** 操作时间（毫秒） */
+        long time;
+        
+        Entry() {
+        }
+        
+        Entry(long productId, Long orderId, InventoryOperationType type, int quantity, int beforeStock, int afterStock) {
+            this.productId = productId;
+            this.orderId = orderId != null ? orderId : 0L;
+            this.type = type;
+            this.quantity = quantity;
+            this.beforeStock = beforeStock;
+            this.afterStock = afterStock;
+            this.time = System.currentTimeMillis();
+        }
+        
+        /** 可用库存变化量 */
+        int availableDelta() {
+            switch (type) {
+                case LOCK:
+                    return -quantity;
+                case RELEASE:
+                case ADD:
+                case SET:
+                    return quantity;
+                default:
+                    return 0;
+            }
+        }
+        
+        /** 锁定库存变化量 */
+        int lockedDelta() {
+            switch (type) {
+                case LOCK:
+                    return quantity;
+                case DEDUCT:
+                case RELEASE:
+                    return -quantity;
+                default:
+                    return 0;
+            }
+        }
+        
+        public long getSeq() {
+            return seq;
+        }
+        
+        public long getProductId() {
+            return productId;
+        }
+        
+        public Long getOrderId() {
+            return orderId != 0L ? orderId : null;
+        }
+        
+        public InventoryOperationType getType() {
+            return type;
+        }
+        
+        public int getQuantity() {
+            return quantity;
+        }
+        
+        public int getBeforeStock() {
+            return beforeStock;
+        }
+        
+        public int getAfterStock() {
+            return afterStock;
+        }
+        
+        public long getTime() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.ecommerce.inventory.flashsale;
+
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.enums.InventoryOperationType;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.common.structure.LongCountMap;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.log.InventoryLogWriter;
+import com.ecommerce.inventory.repository.FlashSaleRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import com.ecommerce.inventory.warning.StockWarningMonitor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 秒杀配额管理
+ * 每个进行中的秒杀商品在本节点有一个内存配额计数器，抢购只做一次CAS扣减，不访问库存行；
+ * 计数器低于低水位或不够本次购买时，在开启库存事务之前由prefetch从活动剩余配额领取下一批，
+ * 领取的短事务不会与抢购事务同时占用两个连接；活动配额领完后标记售罄，之后的请求不再访问数据库。
+ * 每个用户的购买数量记录在紧凑的计数表中，按节点限购（多节点部署时需按用户路由才能严格限购）。
+ * 抢购事务回滚时配额退回计数器；活动结束或节点停机时，本节点未用完的配额退回活动或可用库存。
+ * 各节点定时从数据库刷新进行中的活动
+ */
+@Slf4j
+@Component
+public class FlashSaleManager {
+    
+    private final FlashSaleRepository flashSaleRepository;
+    private final InventoryRepository inventoryRepository;
+    private final InventoryLogWriter inventoryLogWriter;
+    private final FlashSaleMaterializer flashSaleMaterializer;
+    private final StockWarningMonitor stockWarningMonitor;
+    private final TransactionTemplate requiresNewTemplate;
+    private final int leaseSize;
+    
+    /** 本地配额低于该值时提前领取下一批 */
+    private final int lowWater;
+    
+    /** 商品ID -> 进行中的秒杀配额 */
+    private final Map<Long, Slot> slots = new ConcurrentHashMap<>();
+    
+    private final Counter acquiredCounter;
+    private final Counter soldOutCounter;
+    private final Counter limitCounter;
+    private final Counter busyCounter;
+    
+    public FlashSaleManager(FlashSaleRepository flashSaleRepository,
+                            InventoryRepository inventoryRepository,
+                            InventoryLogWriter inventoryLogWriter,
+                            FlashSaleMaterializer flashSaleMaterializer,
+                            StockWarningMonitor stockWarningMonitor,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${inventory.flash-sale.lease-size:50}") int leaseSize) {
+        this.flashSaleRepository = flashSaleRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.inventoryLogWriter = inventoryLogWriter;
+        this.flashSaleMaterializer = flashSaleMaterializer;
+        this.stockWarningMonitor = stockWarningMonitor;
+        this.requiresNewTemplate = new TransactionTemplate(transactionManager);
+        this.requiresNewTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.leaseSize = leaseSize;
+        this.lowWater = Math.max(1, leaseSize / 2);
+        this.acquiredCounter = Counter.builder("inventory.flashsale.acquired").register(meterRegistry);
+        this.soldOutCounter = Counter.builder("inventory.flashsale.rejected").tag("reason", "sold_out")
+                .register(meterRegistry);
+        this.limitCounter = Counter.builder("inventory.flashsale.rejected").tag("reason", "limit")
+                .register(meterRegistry);
+        this.busyCounter = Counter.builder("inventory.flashsale.rejected").tag("reason", "busy")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 商品是否在秒杀中（本地状态，可能落后于数据库一个刷新周期）
+     */
+    public boolean isFlashSale(Long productId) {
+        return slots.containsKey(productId);
+    }
+    
+    /**
+     * 为整单中的秒杀商品补足本节点配额，在开启库存事务之前调用：本地配额不够本次购买或低于低水位时领取下一批。
+     * 抢购事务内只扣本地计数器，不再领取
+     */
+    public void prefetch(List<InventoryDTO> items) {
+        if (slots.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> quantities = new HashMap<>();
+        for (InventoryDTO item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        quantities.forEach((productId, quantity) -> {
+            Slot slot = slots.get(productId);
+            if (slot != null && !slot.closed && !slot.soldOut) {
+                refill(slot, quantity);
+            }
+        });
+    }
+    
+    /**
+     * 整单中有已售罄的秒杀商品时直接返回失败结果，在开启库存事务之前调用，不访问数据库
+     * @return 失败结果，没有售罄商品时返回null
+     */
+    public List<InventoryLockVO> rejectSoldOut(List<InventoryDTO> items) {
+        if (slots.isEmpty()) {
+            return null;
+        }
+        Map<Long, Integer> quantities = new TreeMap<>();
+        boolean soldOut = false;
+        for (InventoryDTO item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+            Slot slot = slots.get(item.getProductId());
+            soldOut = soldOut || slot != null && slot.soldOut;
+        }
+        if (!soldOut) {
+            return null;
+        }
+        soldOutCounter.increment();
+        List<InventoryLockVO> results = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> {
+            Slot slot = slots.get(productId);
+            boolean rejected = slot != null && slot.soldOut;
+            results.add(InventoryLockVO.builder()
+                    .productId(productId)
+                    .quantity(quantity)
+                    .success(false)
+                    .availableStock(rejected ? 0 : null)
+                    .message(rejected ? ResultCode.FLASH_SALE_SOLD_OUT.getMessage()
+                            : InventoryLockVO.MESSAGE_OTHER_ITEM_FAILED)
+                    .build());
+        });
+        return results;
+    }
+    
+    /**
+     * 从本地秒杀配额中抢购，需在库存事务中调用，并在整单成功后调用settle；不访问数据库
+     * @return SUCCESS，或售罄/超过限购/本地配额被并发抢完的错误码
+     */
+    public ResultCode tryAcquire(Long productId, Long userId, int quantity) {
+        Slot slot = slots.get(productId);
+        if (slot == null || slot.closed || slot.soldOut) {
+            soldOutCounter.increment();
+            return ResultCode.FLASH_SALE_SOLD_OUT;
+        }
+        if (userId == null || !slot.buyers.tryAdd(userId, quantity, slot.perUserLimit)) {
+            limitCounter.increment();
+            return ResultCode.FLASH_SALE_LIMIT_EXCEEDED;
+        }
+        if (!takeLocal(slot, quantity)) {
+            slot.buyers.add(userId, -quantity);
+            if (slot.closed || slot.drained) {
+                soldOutCounter.increment();
+                return ResultCode.FLASH_SALE_SOLD_OUT;
+            }
+            // 预取之后本地配额被并发请求抢完，活动仍有剩余，由下一次请求的预取补足
+            busyCounter.increment();
+            return ResultCode.FLASH_SALE_BUSY;
+        }
+        if (slot.drained && slot.units.get() == 0) {
+            markSoldOut(slot);
+        }
+        acquiredCounter.increment();
+        return ResultCode.SUCCESS;
+    }
+    
+    /**
+     * 登记本次抢购到的配额：事务提交后交给批量写库，回滚时退回配额和用户购买数量
+     * @param acquired 商品ID -> 抢到的数量，回滚前仍可继续添加
+     */
+    public void settle(Long orderId, Long userId, Map<Long, Integer> acquired) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (acquired.isEmpty()) {
+                    return;
+                }
+                if (status == STATUS_COMMITTED) {
+                    flashSaleMaterializer.add(orderId, acquired);
+                } else {
+                    acquired.forEach((productId, quantity) -> giveBack(productId, userId, quantity));
+                }
+            }
+        });
+    }
+    
+    /**
+     * 活动开启的事务提交后在本节点生效
+     */
+    public void activate(FlashSale sale) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                register(sale);
+            }
+        });
+    }
+    
+    /**
+     * 活动结束的事务提交后在本节点结束，其他节点在下次刷新时结束
+     */
+    public void end(Long productId) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                close(productId, null);
+            }
+        });
+    }
+    
+    /**
+     * 定时从数据库刷新进行中的活动：新开启的在本节点生效，已结束的退回本节点剩余配额
+     */
+    @Scheduled(fixedDelayString = "${inventory.flash-sale.refresh-interval-ms:5000}")
+    public void refresh() {
+        long refreshTime = System.nanoTime();
+        Map<Long, FlashSale> active = new HashMap<>();
+        for (FlashSale sale : flashSaleRepository.findByStatus(FlashSale.STATUS_ACTIVE)) {
+            active.put(sale.getProductId(), sale);
+        }
+        for (FlashSale sale : active.values()) {
+            Slot slot = slots.get(sale.getProductId());
+            if (slot == null || slot.saleId != sale.getId()) {
+                register(sale);
+            } else if (slot.drained && sale.getRemaining() > 0) {
+                // 其他节点停机退回了配额
+                slot.drained = false;
+                slot.soldOut = false;
+            }
+        }
+        for (Slot slot : slots.values()) {
+            FlashSale sale = active.get(slot.productId);
+            // 刷新开始后才在本节点开启的活动可能不在本次查询结果中
+            if ((sale == null || sale.getId() != slot.saleId) && slot.registerTime < refreshTime) {
+                close(slot.productId, slot.saleId);
+            }
+        }
+    }
+    
+    /**
+     * 停机前把本节点未用完的配额退回活动
+     */
+    @PreDestroy
+    public void shutdown() {
+        for (Slot slot : slots.values()) {
+            close(slot.productId, slot.saleId);
+        }
+    }
+    
+    /**
+     * 退回抢到的配额和用户购买数量，活动已在本节点结束时直接退回库存
+     */
+    private void giveBack(Long productId, Long userId, int quantity) {
+        Slot slot = slots.get(productId);
+        if (slot == null) {
+            returnUnits(null, productId, quantity);
+            return;
+        }
+        slot.buyers.add(userId, -quantity);
+        slot.units.addAndGet(quantity);
+        slot.soldOut = false;
+        if (slot.closed) {
+            returnUnits(slot);
+        }
+    }
+    
+    private void register(FlashSale sale) {
+        Slot added = new Slot(sale);
+        Slot replaced = slots.put(sale.getProductId(), added);
+        if (replaced != null && replaced.saleId != added.saleId) {
+            replaced.closed = true;
+            returnUnits(replaced);
+        }
+        log.info("秒杀活动已生效: productId={}, saleId={}, quota={}, perUserLimit={}",
+                sale.getProductId(), sale.getId(), sale.getQuota(), sale.getPerUserLimit());
+    }
+    
+    /**
+     * 在本节点结束活动
+     * @param saleId 只结束该活动，为null时结束商品当前的活动
+     */
+    private void close(Long productId, Long saleId) {
+        Slot slot = slots.get(productId);
+        if (slot == null || saleId != null && slot.saleId != saleId || !slots.remove(productId, slot)) {
+            return;
+        }
+        slot.closed = true;
+        returnUnits(slot);
+        log.info("秒杀活动已在本节点结束: productId={}, saleId={}", productId, slot.saleId);
+    }
+    
+    /**
+     * 从本地计数器扣减配额
+     */
+    private static boolean takeLocal(Slot slot, int quantity) {
+        int current;
+        do {
+            current = slot.units.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!slot.units.compareAndSet(current, current - quantity));
+        return true;
+    }
+    
+    /**
+     * 本地配额不够本次购买或低于低水位时领取下一批，同一商品同时只有一个线程领取；
+     * 本地配额够本次购买、已有线程在领取时直接返回，不排队
+     */
+    private void refill(Slot slot, int quantity) {
+        int target = Math.max(quantity, lowWater);
+        if (slot.drained || slot.units.get() >= target) {
+            return;
+        }
+        if (slot.units.get() >= quantity && slot.leasing) {
+            return;
+        }
+        synchronized (slot) {
+            slot.leasing = true;
+            try {
+                while (slot.units.get() < target && !slot.drained) {
+                    if (slot.closed) {
+                        return;
+                    }
+                    int granted = lease(slot, quantity);
+                    if (granted == 0) {
+                        slot.drained = true;
+                        break;
+                    }
+                    slot.units.addAndGet(granted);
+                    if (slot.closed) {
+                        // 领取期间活动已在本节点结束
+                        returnUnits(slot);
+                        return;
+                    }
+                }
+                if (slot.drained && slot.units.get() == 0) {
+                    markSoldOut(slot);
+                }
+            } finally {
+                slot.leasing = false;
+            }
+        }
+    }
+    
+    private void markSoldOut(Slot slot) {
+        if (!slot.soldOut) {
+            slot.soldOut = true;
+            log.info("秒杀商品已售罄: productId={}, saleId={}", slot.productId, slot.saleId);
+        }
+    }
+    
+    /**
+     * 在独立事务中从活动剩余配额领取一批，调用方不能处于库存事务中
+     * @return 领取到的数量，活动已结束或配额已领完时返回0
+     */
+    private int lease(Slot slot, int quantity) {
+        Integer granted = requiresNewTemplate.execute(status -> flashSaleRepository.findByIdForUpdate(slot.saleId)
+                .filter(sale -> sale.getStatus() == FlashSale.STATUS_ACTIVE && sale.getRemaining() > 0)
+                .map(sale -> {
+                    int count = Math.min(sale.getRemaining(), Math.max(leaseSize, quantity));
+                    sale.setRemaining(sale.getRemaining() - count);
+                    flashSaleRepository.save(sale);
+                    return count;
+                })
+                .orElse(0));
+        return granted != null ? granted : 0;
+    }
+    
+    private void returnUnits(Slot slot) {
+        int units = slot.units.getAndSet(0);
+        if (units > 0) {
+            returnUnits(slot.saleId, slot.productId, units);
+        }
+    }
+    
+    /**
+     * 在独立事务中退回配额：活动仍在进行时退回活动剩余配额，否则从锁定库存释放回可用库存
+     */
+    private void returnUnits(Long saleId, Long productId, int units) {
+        try {
+            requiresNewTemplate.executeWithoutResult(status -> {
+                FlashSale sale = saleId != null ? flashSaleRepository.findByIdForUpdate(saleId).orElse(null) : null;
+                if (sale != null && sale.getStatus() == FlashSale.STATUS_ACTIVE) {
+                    sale.setRemaining(sale.getRemaining() + units);
+                    flashSaleRepository.save(sale);
+                    return;
+                }
+                Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId).orElse(null);
+                if (inventory == null || inventoryRepository.releaseStock(productId, units) == 0) {
+                    log.error("秒杀配额退回库存失败: productId={}, quantity={}", productId, units);
+                    return;
+                }
+                inventoryLogWriter.record(productId, null, InventoryOperationType.RELEASE, units,
+                        inventory.getAvailableStock(), inventory.getAvailableStock() + units);
+                stockWarningMonitor.record(productId, InventoryOperationType.RELEASE, units);
+            });
+        } catch (Exception e) {
+            log.error("秒杀配额退回失败: productId={}, saleId={}, quantity={}", productId, saleId, units, e);
+        }
+    }
+    
+    /**
+     * 一个商品在本节点的秒杀配额
+     */
+    private static final class Slot {
+        
+        final long saleId;
+        final long productId;
+        final int perUserLimit;
+        final long registerTime = System.nanoTime();
+        
+        /** 本节点已领取、尚未售出的配额 */
+        final AtomicInteger units = new AtomicInteger();
+        
+        /** 用户ID -> 已购买数量 */
+        final LongCountMap buyers = new LongCountMap();
+        
+        /** 活动剩余配额已领完（其他节点退回配额后由刷新任务清除） */
+        volatile boolean drained;
+        
+        /** 本节点和活动都没有剩余配额 */
+        volatile boolean soldOut;
+        
+        /** 有线程正在领取配额 */
+        volatile boolean leasing;
+        
+        /** 活动已在本节点结束 */
+        volatile boolean closed;
+        
+        Slot(FlashSale sale) {
+            this.saleId = sale.getId();
+            this.productId = sale.getProductId();
+            this.perUserLimit = sale.getPerUserLimit();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.ecommerce.inventory.flashsale;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀中签预占的批量写库
+ * 秒杀配额在开启活动时已转入锁定库存，中签只需补写预占记录；抢购事务提交后先记在内存中，
+ * 由定时任务按批用INSERT IGNORE写入预占表，写入失败的留到下一轮重试。
+ * 同一订单的扣减/释放/重复锁定请求会先调用flush(orderId)在自己的事务中补写，不会因预占尚未落库而绕过预占。
+ * 中签记录写入并提交后才移出待写入，写入期间flush(orderId)仍能看到并重复写入：
+ * INSERT IGNORE会等待正在写入的同一条记录提交后忽略，重复写入无害
+ */
+@Slf4j
+@Component
+public class FlashSaleMaterializer {
+    
+    private static final String INSERT_SQL = "INSERT IGNORE INTO t_inventory_reservation "
+            + "(order_id, product_id, quantity, deducted_quantity, released_quantity, status, expire_time, create_time, update_time) "
+            + "VALUES (?, ?, ?, 0, 0, 0, ?, ?, ?)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final Duration ttl;
+    private final int batchSize;
+    
+    /** 订单ID -> 待写入的中签记录 */
+    private final Map<Long, List<Winner>> pending = new ConcurrentHashMap<>();
+    
+    private final Counter materializedCounter;
+    
+    public FlashSaleMaterializer(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${inventory.reservation.ttl-minutes:40}") long ttlMinutes,
+                                 @Value("${inventory.flash-sale.flush-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.batchSize = batchSize;
+        this.materializedCounter = Counter.builder("inventory.flashsale.materialized")
+                .description("已写入预占表的秒杀中签记录数")
+                .register(meterRegistry);
+        Gauge.builder("inventory.flashsale.pending", pending, Map::size)
+                .description("等待写入预占表的秒杀订单数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 登记订单的中签商品，抢购事务提交后调用
+     * @param quantities 商品ID -> 中签数量
+     */
+    public void add(Long orderId, Map<Long, Integer> quantities) {
+        LocalDateTime lockTime = LocalDateTime.now();
+        List<Winner> winners = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> winners.add(new Winner(orderId, productId, quantity, lockTime)));
+        pending.merge(orderId, winners, FlashSaleMaterializer::concat);
+    }
+    
+    /**
+     * 在调用方事务中写入订单尚未落库的中签记录，调用方事务提交后才移出待写入
+     */
+    public void flush(Long orderId) {
+        if (orderId == null) {
+            return;
+        }
+        List<Winner> winners = pending.get(orderId);
+        if (winners == null) {
+            return;
+        }
+        write(winners);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    remove(orderId, winners);
+                }
+            });
+        } else {
+            remove(orderId, winners);
+        }
+    }
+    
+    /**
+     * 定时批量写入中签记录
+     */
+    @Scheduled(fixedDelayString = "${inventory.flash-sale.flush-interval-ms:200}")
+    public void flush() {
+        Map<Long, List<Winner>> batch = new HashMap<>();
+        int count = 0;
+        for (Map.Entry<Long, List<Winner>> entry : pending.entrySet()) {
+            batch.put(entry.getKey(), entry.getValue());
+            count += entry.getValue().size();
+            if (count >= batchSize) {
+                if (!writeBatch(batch)) {
+                    return;
+                }
+                count = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+    
+    /**
+     * 停机前写入全部待写入的中签记录
+     */
+    @PreDestroy
+    public void drain() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.error("秒杀中签记录未能全部写入预占表: orders={}", pending.keySet());
+        }
+    }
+    
+    /**
+     * 写入一批中签记录，成功后移出待写入，失败时保留到下一轮重试
+     * @param batch 订单ID -> 本批写入的中签记录
+     * @return 是否写入成功
+     */
+    private boolean writeBatch(Map<Long, List<Winner>> batch) {
+        List<Winner> winners = new ArrayList<>();
+        batch.values().forEach(winners::addAll);
+        try {
+            write(winners);
+            batch.forEach(this::remove);
+            return true;
+        } catch (Exception e) {
+            log.warn("秒杀中签记录写入失败，稍后重试: count={}", winners.size(), e);
+            return false;
+        } finally {
+            batch.clear();
+        }
+    }
+    
+    /**
+     * 移出已写入的中签记录，写入期间追加的记录保留
+     */
+    private void remove(Long orderId, List<Winner> written) {
+        pending.computeIfPresent(orderId, (id, current) -> {
+            List<Winner> rest = new ArrayList<>(current.size());
+            for (Winner winner : current) {
+                if (!written.contains(winner)) {
+                    rest.add(winner);
+                }
+            }
+            return rest.isEmpty() ? null : rest;
+        });
+    }
+    
+    private void write(List<Winner> winners) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Object[]> args = new ArrayList<>(winners.size());
+        for (Winner winner : winners) {
+            args.add(new Object[]{winner.orderId, winner.productId, winner.quantity,
+                    Timestamp.valueOf(winner.lockTime.plus(ttl)), Timestamp.valueOf(winner.lockTime),
+                    Timestamp.valueOf(now)});
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, args);
+        materializedCounter.increment(winners.size());
+    }
+    
+    private static List<Winner> concat(List<Winner> current, List<Winner> added) {
+        List<Winner> merged = new ArrayList<>(current.size() + added.size());
+        merged.addAll(current);
+        merged.addAll(added);
+        return merged;
+    }
+    
+    /**
+     * 一条中签记录
+     */
+    private static final class Winner {
+        
+        final long orderId;
+        final long productId;
+        final int quantity;
+        final LocalDateTime lockTime;
+        
+        Winner(long orderId, long productId, int quantity, LocalDateTime lockTime) {
+            this.orderId = orderId;
+            this.productId = productId;
+            this.quantity = quantity;
+            this.lockTime = lockTime;
+        }
+    }
+}
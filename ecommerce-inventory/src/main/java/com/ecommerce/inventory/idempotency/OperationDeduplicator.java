@@ -0,0 +1,142 @@
+package com.ecommerce.inventory.idempotency;
+
+import com.ecommerce.common.enums.InventoryOperationType;
+import com.ecommerce.common.structure.BoundedCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 库存操作去重
+ * 带订单ID的锁定/扣减/释放以(订单ID, 商品ID, 操作类型)为幂等键，在库存事务修改库存之前用INSERT IGNORE写入操作记录。
+ * 唯一约束保证同一个键只有一个事务写入成功：并发的重复请求会等待先到的事务结束，先到的提交则判定为重复并返回其结果，
+ * 回滚则由后到的请求重新执行。抛出异常的操作随事务回滚、不留下记录，重试时会重新执行。
+ * 最近提交的键与结果保存在有界本地窗口中，重复请求大多不必访问数据库；超过保留天数的记录定时清理
+ */
+@Slf4j
+@Component
+public class OperationDeduplicator {
+    
+    private static final String INSERT_SQL = "INSERT IGNORE INTO t_inventory_operation_record "
+            + "(order_id, product_id, operation_type, quantity, success, create_time) VALUES (?, ?, ?, ?, 1, ?)";
+    
+    private static final String SELECT_SQL = "SELECT success FROM t_inventory_operation_record "
+            + "WHERE order_id = ? AND product_id = ? AND operation_type = ? LOCK IN SHARE MODE";
+    
+    private static final String FAIL_SQL = "UPDATE t_inventory_operation_record SET success = 0 "
+            + "WHERE order_id = ? AND product_id = ? AND operation_type = ?";
+    
+    private static final String PURGE_SQL = "DELETE FROM t_inventory_operation_record WHERE create_time < ? LIMIT ?";
+    
+    /** 每次清理删除的记录数 */
+    private static final int PURGE_BATCH_SIZE = 1000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final int retentionDays;
+    
+    /** 幂等键 -> 操作结果 */
+    private final BoundedCache<String, Boolean> recent;
+    
+    private final Counter replayedCounter;
+    
+    public OperationDeduplicator(JdbcTemplate jdbcTemplate,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${inventory.idempotency.window-size:100000}") int windowSize,
+                                 @Value("${inventory.idempotency.window-ttl-minutes:60}") long windowTtlMinutes,
+                                 @Value("${inventory.idempotency.retention-days:7}") int retentionDays) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.retentionDays = retentionDays;
+        this.recent = new BoundedCache<>(windowSize, windowTtlMinutes, TimeUnit.MINUTES);
+        this.replayedCounter = Counter.builder("inventory.idempotency.replayed")
+                .description("按幂等键返回原结果的重复请求数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 登记一次操作，需在库存事务中、修改库存之前调用
+     * @return 重复请求时返回原操作的结果；首次请求或没有订单ID时返回null，由调用方执行并在结束时调用complete
+     */
+    public Boolean begin(Long orderId, Long productId, InventoryOperationType operationType, int quantity) {
+        if (orderId == null) {
+            return null;
+        }
+        String key = key(orderId, productId, operationType);
+        Boolean outcome = recent.get(key);
+        if (outcome == null) {
+            int inserted = jdbcTemplate.update(INSERT_SQL, orderId, productId, operationType.name(), quantity,
+                    Timestamp.valueOf(LocalDateTime.now()));
+            if (inserted > 0) {
+                return null;
+            }
+            List<Boolean> found = jdbcTemplate.queryForList(SELECT_SQL, Boolean.class,
+                    orderId, productId, operationType.name());
+            if (found.isEmpty()) {
+                // 记录刚被清理，按首次请求处理会重复执行，宁可拒绝
+                throw new IllegalStateException("库存操作记录不存在: " + key);
+            }
+            outcome = found.get(0);
+            recent.put(key, outcome);
+        }
+        replayedCounter.increment();
+        log.info("重复的库存操作请求，返回原结果: orderId={}, productId={}, type={}, success={}",
+                orderId, productId, operationType, outcome);
+        return outcome;
+    }
+    
+    /**
+     * 记录操作结果，事务提交后放入本地窗口
+     * @param success 操作结果，失败时更新操作记录，重复请求同样返回失败
+     */
+    public void complete(Long orderId, Long productId, InventoryOperationType operationType, boolean success) {
+        if (orderId == null) {
+            return;
+        }
+        if (!success) {
+            jdbcTemplate.update(FAIL_SQL, orderId, productId, operationType.name());
+        }
+        String key = key(orderId, productId, operationType);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recent.put(key, success);
+                }
+            });
+        } else {
+            recent.put(key, success);
+        }
+    }
+    
+    /**
+     * 定时分批删除超过保留天数的操作记录
+     */
+    @Scheduled(initialDelayString = "${inventory.idempotency.purge-interval-ms:3600000}",
+            fixedDelayString = "${inventory.idempotency.purge-interval-ms:3600000}")
+    public void purge() {
+        Timestamp before = Timestamp.valueOf(LocalDateTime.now().minusDays(retentionDays));
+        int total = 0;
+        int deleted;
+        do {
+            deleted = jdbcTemplate.update(PURGE_SQL, before, PURGE_BATCH_SIZE);
+            total += deleted;
+        } while (deleted == PURGE_BATCH_SIZE);
+        if (total > 0) {
+            log.info("已清理过期库存操作记录: count={}", total);
+        }
+    }
+    
+    private static String key(Long orderId, Long productId, InventoryOperationType operationType) {
+        return orderId + ":" + productId + ":" + operationType.name();
+    }
+}
@@ -0,0 +1,221 @@
+package com.ecommerce.inventory.log;
+
+import com.ecommerce.common.enums.InventoryOperationType;
+import com.ecommerce.common.structure.InventoryOperationQueue;
+import com.ecommerce.common.structure.InventoryOperationQueue.FullPolicy;
+import com.ecommerce.common.structure.InventoryOperationQueue.InventoryOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 库存日志异步批量写入
+ * 库存事务提交后才把日志放入操作队列，后台线程按条数或等待时间凑批，用JDBC批量INSERT写入t_inventory_log，
+ * 库存事务本身只更新库存表，回滚的操作也不会留下日志。
+ * 队列满时按full-policy等待（REJECT不等待），最多等待enqueue-timeout-ms，仍然放不进去就由当前线程直接写库，
+ * 以此向上游施加背压而不丢日志；应用关闭前会写完队列中剩余的日志
+ */
+@Slf4j
+@Component
+public class InventoryLogWriter {
+    
+    private static final String INSERT_SQL = "INSERT INTO t_inventory_log (product_id, order_id, operation_type, "
+            + "quantity, before_stock, after_stock, remark, create_time) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    
+    /** 队列为空时后台线程每次挂起的时长（纳秒） */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryOperationQueue queue;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long enqueueTimeoutMs;
+    private final long retryIntervalMs;
+    
+    private final Timer flushTimer;
+    private final Counter writtenCounter;
+    private final Counter flushFailedCounter;
+    private final Counter callerWriteCounter;
+    
+    /** 后台线程正在凑批的日志，只由后台线程访问（关闭时在其退出后由shutdown接手） */
+    private final List<Object[]> batch = new ArrayList<>();
+    private final Consumer<InventoryOperation> collector = operation -> batch.add(toArgs(operation));
+    
+    private Thread writerThread;
+    private volatile boolean running;
+    
+    public InventoryLogWriter(JdbcTemplate jdbcTemplate,
+                              MeterRegistry meterRegistry,
+                              @Value("${inventory.log.queue-capacity:8192}") int queueCapacity,
+                              @Value("${inventory.log.full-policy:BLOCK}") FullPolicy fullPolicy,
+                              @Value("${inventory.log.batch-size:500}") int batchSize,
+                              @Value("${inventory.log.flush-interval-ms:200}") long flushIntervalMs,
+                              @Value("${inventory.log.enqueue-timeout-ms:50}") long enqueueTimeoutMs,
+                              @Value("${inventory.log.retry-interval-ms:1000}") long retryIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.queue = new InventoryOperationQueue(queueCapacity, fullPolicy);
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.enqueueTimeoutMs = enqueueTimeoutMs;
+        this.retryIntervalMs = retryIntervalMs;
+        
+        Gauge.builder("inventory.log.queue.depth", queue, InventoryOperationQueue::size)
+                .description("等待写库的库存日志数")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("inventory.log.flush")
+                .description("一批库存日志的写库耗时")
+                .register(meterRegistry);
+        this.writtenCounter = Counter.builder("inventory.log.written").register(meterRegistry);
+        this.flushFailedCounter = Counter.builder("inventory.log.flush.failed").register(meterRegistry);
+        this.callerWriteCounter = Counter.builder("inventory.log.caller.write")
+                .description("队列满时由入队线程直接写库的日志数")
+                .register(meterRegistry);
+    }
+    
+    @PostConstruct
+    public void start() {
+        running = true;
+        writerThread = new Thread(this::run, "inventory-log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+    
+    /**
+     * 记录一次库存变动，在事务中调用时等事务提交后再入队
+     */
+    public void record(Long productId, Long orderId, InventoryOperationType operationType,
+                       int quantity, int beforeStock, int afterStock) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    enqueue(productId, orderId, operationType, quantity, beforeStock, afterStock);
+                }
+            });
+        } else {
+            enqueue(productId, orderId, operationType, quantity, beforeStock, afterStock);
+        }
+    }
+    
+    /**
+     * 应用关闭前停止后台线程，并写完队列中剩余的日志
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        if (writerThread.isAlive()) {
+            log.error("库存日志写入线程未能退出，剩余日志未写入: pending={}", queue.size());
+            return;
+        }
+        do {
+            queue.drainTo(collector, batchSize - batch.size());
+            if (batch.isEmpty()) {
+                break;
+            }
+            try {
+                write(batch);
+            } catch (Exception e) {
+                log.error("库存日志写库失败，剩余日志未写入: pending={}", batch.size() + queue.size(), e);
+                return;
+            }
+            batch.clear();
+        } while (true);
+        log.info("库存日志已全部写入");
+    }
+    
+    /**
+     * 队列满时按策略等待，仍然入队失败时由当前线程直接写库
+     */
+    private void enqueue(Long productId, Long orderId, InventoryOperationType operationType,
+                         int quantity, int beforeStock, int afterStock) {
+        if (queue.enqueue(productId, orderId, operationType, quantity, beforeStock, afterStock,
+                enqueueTimeoutMs, TimeUnit.MILLISECONDS)) {
+            return;
+        }
+        callerWriteCounter.increment();
+        Object[] args = {productId, orderId, operationType.name(), quantity, beforeStock, afterStock,
+                operationType.getDescription(), new Timestamp(System.currentTimeMillis())};
+        try {
+            write(Collections.singletonList(args));
+        } catch (Exception e) {
+            // 库存已提交，这里不能再抛出；日志内容完整打印便于补录
+            log.error("库存日志写入失败: productId={}, orderId={}, type={}, quantity={}, before={}, after={}",
+                    productId, orderId, operationType, quantity, beforeStock, afterStock, e);
+        }
+    }
+    
+    /**
+     * 后台写库循环：取到第一条后最多再等flush-interval-ms，凑满batch-size立即写库
+     */
+    private void run() {
+        long deadline = 0;
+        while (running) {
+            queue.drainTo(collector, batchSize - batch.size());
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            if (deadline == 0) {
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+            }
+            if (batch.size() < batchSize && deadline - System.nanoTime() > 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            try {
+                flushWithRetry(batch);
+            } catch (InterruptedException e) {
+                // 关闭时中断，未写入的日志由shutdown写完
+                break;
+            }
+            batch.clear();
+            deadline = 0;
+        }
+    }
+    
+    /**
+     * 写库失败时按固定间隔重试，期间新日志在队列中积压，队列满后由入队线程直接写库
+     */
+    private void flushWithRetry(List<Object[]> args) throws InterruptedException {
+        while (true) {
+            try {
+                write(args);
+                return;
+            } catch (Exception e) {
+                flushFailedCounter.increment();
+                log.warn("库存日志写库失败，稍后重试: batch={}, queued={}", args.size(), queue.size(), e);
+                Thread.sleep(retryIntervalMs);
+            }
+        }
+    }
+    
+    private void write(List<Object[]> args) {
+        flushTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_SQL, args));
+        writtenCounter.increment(args.size());
+    }
+    
+    private static Object[] toArgs(InventoryOperation operation) {
+        return new Object[]{operation.getProductId(), operation.getOrderId(), operation.getOperationType().name(),
+                operation.getQuantity(), operation.getBeforeStock(), operation.getAfterStock(), operation.getRemark(),
+                new Timestamp(operation.getOperationTime())};
+    }
+}
@@ -0,0 +1,42 @@
+package com.ecommerce.inventory.repository;
+
+import com.ecommerce.common.entity.FlashSale;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 秒杀活动数据访问接口
+ */
+@Repository
+public interface FlashSaleRepository extends JpaRepository<FlashSale, Long> {
+    
+    /**
+     * 查找指定状态的秒杀活动
+     */
+    List<FlashSale> findByStatus(Integer status);
+    
+    /**
+     * 查找商品指定状态的秒杀活动
+     */
+    Optional<FlashSale> findFirstByProductIdAndStatus(Long productId, Integer status);
+    
+    /**
+     * 根据ID查找秒杀活动（带悲观锁）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FlashSale f WHERE f.id = ?1")
+    Optional<FlashSale> findByIdForUpdate(Long id);
+    
+    /**
+     * 查找商品进行中的秒杀活动（带悲观锁）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT f FROM FlashSale f WHERE f.productId = ?1 AND f.status = 0")
+    Optional<FlashSale> findActiveByProductIdForUpdate(Long productId);
+}
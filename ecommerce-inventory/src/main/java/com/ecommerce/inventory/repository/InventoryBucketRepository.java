@@ -0,0 +1,96 @@
+package com.ecommerce.inventory.repository;
+
+import com.ecommerce.common.entity.InventoryBucket;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 库存分桶数据访问接口
+ */
+@Repository
+public interface InventoryBucketRepository extends JpaRepository<InventoryBucket, Long> {
+    
+    /**
+     * 查询商品各桶的库存（不加锁，不进入持久化上下文）
+     */
+    @Query("SELECT b.bucketNo AS bucketNo, b.availableStock AS availableStock, b.lockedStock AS lockedStock "
+            + "FROM InventoryBucket b WHERE b.productId = ?1 ORDER BY b.bucketNo")
+    List<BucketView> findViewsByProductId(Long productId);
+    
+    /**
+     * 查询单个桶的库存
+     */
+    @Query("SELECT b.bucketNo AS bucketNo, b.availableStock AS availableStock, b.lockedStock AS lockedStock "
+            + "FROM InventoryBucket b WHERE b.productId = ?1 AND b.bucketNo = ?2")
+    BucketView findView(Long productId, Integer bucketNo);
+    
+    /**
+     * 按商品汇总各桶库存
+     */
+    @Query("SELECT b.productId AS productId, SUM(b.availableStock) AS availableStock, SUM(b.lockedStock) AS lockedStock "
+            + "FROM InventoryBucket b WHERE b.productId IN ?1 GROUP BY b.productId")
+    List<BucketSumView> sumByProductIdIn(Collection<Long> productIds);
+    
+    /**
+     * 查询商品的所有桶（带悲观锁），按桶序号加锁
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b FROM InventoryBucket b WHERE b.productId = ?1 ORDER BY b.bucketNo")
+    List<InventoryBucket> findByProductIdForUpdate(Long productId);
+    
+    /**
+     * 删除商品的所有桶
+     */
+    @Modifying
+    @Query("DELETE FROM InventoryBucket b WHERE b.productId = ?1")
+    int deleteByProductId(Long productId);
+    
+    /**
+     * 在指定桶中锁定库存
+     */
+    @Modifying
+    @Query("UPDATE InventoryBucket b SET b.availableStock = b.availableStock - ?3, b.lockedStock = b.lockedStock + ?3 "
+            + "WHERE b.productId = ?1 AND b.bucketNo = ?2 AND b.availableStock >= ?3")
+    int lockStock(Long productId, Integer bucketNo, Integer quantity);
+    
+    /**
+     * 从指定桶的锁定库存中扣减
+     */
+    @Modifying
+    @Query("UPDATE InventoryBucket b SET b.lockedStock = b.lockedStock - ?3 "
+            + "WHERE b.productId = ?1 AND b.bucketNo = ?2 AND b.lockedStock >= ?3")
+    int deductStock(Long productId, Integer bucketNo, Integer quantity);
+    
+    /**
+     * 把指定桶的锁定库存释放回可用库存
+     */
+    @Modifying
+    @Query("UPDATE InventoryBucket b SET b.availableStock = b.availableStock + ?3, b.lockedStock = b.lockedStock - ?3 "
+            + "WHERE b.productId = ?1 AND b.bucketNo = ?2 AND b.lockedStock >= ?3")
+    int releaseStock(Long productId, Integer bucketNo, Integer quantity);
+    
+    /**
+     * 单个桶的库存
+     */
+    interface BucketView {
+        Integer getBucketNo();
+        Integer getAvailableStock();
+        Integer getLockedStock();
+    }
+    
+    /**
+     * 商品各桶库存合计
+     */
+    interface BucketSumView {
+        Long getProductId();
+        Long getAvailableStock();
+        Long getLockedStock();
+    }
+}
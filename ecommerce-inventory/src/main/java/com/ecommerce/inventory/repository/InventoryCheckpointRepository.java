@@ -0,0 +1,12 @@
+package com.ecommerce.inventory.repository;
+
+import com.ecommerce.common.entity.InventoryCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * 库存引擎检查点数据访问接口
+ */
+@Repository
+public interface InventoryCheckpointRepository extends JpaRepository<InventoryCheckpoint, Long> {
+}
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import javax.persistence.LockModeType;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -22,6 +23,11 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
      */
     Optional<Inventory> findByProductId(Long productId);
     
+    /**
+     * 根据商品ID列表批量查找库存
+     */
+    List<Inventory> findByProductIdIn(Collection<Long> productIds);
+    
     /**
      * 根据商品ID查找库存（带悲观锁）
      */
@@ -30,10 +36,30 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     Optional<Inventory> findByProductIdForUpdate(Long productId);
     
     /**
-     * 查找需要预警的库存
+     * 批量查找库存（带悲观锁），按商品ID升序加锁，避免并发订单之间死锁
      */
-    @Query("SELECT i FROM Inventory i WHERE i.availableStock <= i.warningThreshold")
-    List<Inventory> findWarningInventories();
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i WHERE i.productId IN ?1 ORDER BY i.productId")
+    List<Inventory> findByProductIdInForUpdate(Collection<Long> productIds);
+    
+    /**
+     * 查找分桶存放的库存
+     */
+    List<Inventory> findByBucketCountGreaterThan(Integer bucketCount);
+    
+    /**
+     * 用各桶合计刷新分桶商品的库存汇总
+     */
+    @Modifying
+    @Query("UPDATE Inventory i SET i.availableStock = ?2, i.lockedStock = ?3, i.totalStock = ?2 + ?3 WHERE i.productId = ?1")
+    int syncBucketTotals(Long productId, Integer availableStock, Integer lockedStock);
+    
+    /**
+     * 查询全部商品的可用库存与预警阈值（不进入持久化上下文），用于校准内存中的低库存集合
+     */
+    @Query("SELECT i.productId AS productId, i.availableStock AS availableStock, i.warningThreshold AS warningThreshold "
+            + "FROM Inventory i")
+    List<StockLevelView> findStockLevels();
     
     /**
      * 锁定库存
@@ -62,5 +88,14 @@ public interface InventoryRepository extends JpaRepository<Inventory, Long> {
     @Modifying
     @Query("UPDATE Inventory i SET i.totalStock = i.totalStock + ?2, i.availableStock = i.availableStock + ?2 WHERE i.productId = ?1")
     int addStock(Long productId, Integer quantity);
+    
+    /**
+     * 商品的可用库存与预警阈值
+     */
+    interface StockLevelView {
+        Long getProductId();
+        Integer getAvailableStock();
+        Integer getWarningThreshold();
+    }
 }
 
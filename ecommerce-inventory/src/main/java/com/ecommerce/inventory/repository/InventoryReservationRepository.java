@@ -0,0 +1,61 @@
+package com.ecommerce.inventory.repository;
+
+import com.ecommerce.common.entity.InventoryReservation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 库存预占数据访问接口
+ */
+@Repository
+public interface InventoryReservationRepository extends JpaRepository<InventoryReservation, Long> {
+    
+    /**
+     * 查找订单在商品上的预占
+     */
+    Optional<InventoryReservation> findByOrderIdAndProductId(Long orderId, Long productId);
+    
+    /**
+     * 查找订单的全部预占
+     */
+    List<InventoryReservation> findByOrderId(Long orderId);
+    
+    /**
+     * 查找订单在商品上的预占（带悲观锁）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM InventoryReservation r WHERE r.orderId = ?1 AND r.productId = ?2")
+    Optional<InventoryReservation> findByOrderIdAndProductIdForUpdate(Long orderId, Long productId);
+    
+    /**
+     * 根据ID查找预占（带悲观锁）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM InventoryReservation r WHERE r.id = ?1")
+    Optional<InventoryReservation> findByIdForUpdate(Long id);
+    
+    /**
+     * 按(过期时间, ID)游标查找已过期的预占（不加锁，由调用方逐条按主键加锁后复核）
+     */
+    @Query("SELECT r.id AS id, r.expireTime AS expireTime FROM InventoryReservation r "
+            + "WHERE r.status = ?1 AND r.expireTime <= ?2 "
+            + "AND (r.expireTime > ?3 OR (r.expireTime = ?3 AND r.id > ?4)) ORDER BY r.expireTime, r.id")
+    List<ExpiredView> findExpiredAfter(Integer status, LocalDateTime now, LocalDateTime afterExpireTime,
+                                       Long afterId, Pageable pageable);
+    
+    /**
+     * 过期预占投影
+     */
+    interface ExpiredView {
+        Long getId();
+        LocalDateTime getExpireTime();
+    }
+}
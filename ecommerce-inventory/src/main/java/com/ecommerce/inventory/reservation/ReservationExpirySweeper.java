@@ -0,0 +1,83 @@
+package com.ecommerce.inventory.reservation;
+
+import com.ecommerce.inventory.repository.InventoryReservationRepository;
+import com.ecommerce.inventory.service.impl.InventoryServiceImpl;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 过期库存预占清理任务
+ * 按过期时间索引分批取出已过期、仍在锁定中的预占，逐条在独立的短事务中释放剩余锁定库存，
+ * 调用方（如订单服务）宕机或漏发释放请求时，被占住的库存也能自行回到可用库存。
+ * 每条预占先按主键加锁再复核状态，多个节点同时清理不会重复释放。
+ * 按(过期时间, ID)游标翻页，释放失败的预占留到下一轮重试，不会挡住后面的预占。
+ * 内存库存引擎模式下库存不经过预占表，不启用
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "inventory.engine", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class ReservationExpirySweeper {
+    
+    /** 游标起点，早于任何过期时间 */
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    private final StockReservationManager stockReservationManager;
+    private final InventoryServiceImpl inventoryService;
+    private final int batchSize;
+    private final Counter expiredCounter;
+    private final Counter failedCounter;
+    
+    public ReservationExpirySweeper(StockReservationManager stockReservationManager,
+                                    InventoryServiceImpl inventoryService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${inventory.reservation.sweep-batch-size:200}") int batchSize) {
+        this.stockReservationManager = stockReservationManager;
+        this.inventoryService = inventoryService;
+        this.batchSize = batchSize;
+        this.expiredCounter = Counter.builder("inventory.reservation.expired").register(meterRegistry);
+        this.failedCounter = Counter.builder("inventory.reservation.expire.failed").register(meterRegistry);
+    }
+    
+    /**
+     * 定时释放过期预占，一次调度内按游标连续处理直到没有满批
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.sweep-interval-ms:10000}")
+    public void sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime afterExpireTime = CURSOR_START;
+        long afterId = 0L;
+        List<InventoryReservationRepository.ExpiredView> page;
+        do {
+            page = stockReservationManager.findExpired(now, afterExpireTime, afterId, batchSize);
+            int expired = 0;
+            for (InventoryReservationRepository.ExpiredView view : page) {
+                try {
+                    if (inventoryService.expireReservation(view.getId())) {
+                        expired++;
+                    }
+                } catch (Exception e) {
+                    failedCounter.increment();
+                    log.warn("过期库存预占释放失败: reservationId={}", view.getId(), e);
+                }
+            }
+            expiredCounter.increment(expired);
+            if (expired > 0) {
+                log.info("过期库存预占已释放: count={}", expired);
+            }
+            if (!page.isEmpty()) {
+                // 游标越过本批，包括释放失败的预占
+                InventoryReservationRepository.ExpiredView last = page.get(page.size() - 1);
+                afterExpireTime = last.getExpireTime();
+                afterId = last.getId();
+            }
+        } while (page.size() == batchSize);
+    }
+}
@@ -0,0 +1,190 @@
+package com.ecommerce.inventory.reservation;
+
+import com.ecommerce.common.entity.InventoryReservation;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.inventory.repository.InventoryReservationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 库存预占管理
+ * 锁定库存时按(订单ID, 商品ID)写入预占记录并设置过期时间，扣减/释放按预占剩余数量进行，
+ * 重复的扣减/释放请求只会作用到剩余部分，不会多扣多放。
+ * 没有订单ID的锁定不写预占；预占记录不存在的扣减/释放按原有方式只操作库存计数。
+ * 所有方法都需要在调用方的事务中执行
+ */
+@Slf4j
+@Component
+public class StockReservationManager {
+    
+    private final InventoryReservationRepository reservationRepository;
+    private final Duration ttl;
+    
+    public StockReservationManager(InventoryReservationRepository reservationRepository,
+                                   @Value("${inventory.reservation.ttl-minutes:40}") long ttlMinutes) {
+        this.reservationRepository = reservationRepository;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+    }
+    
+    /**
+     * 查找预占（不加锁），用于判断锁定请求是否重复
+     * @return 预占记录，没有订单ID或不存在时返回null
+     */
+    public InventoryReservation find(Long orderId, Long productId) {
+        if (orderId == null) {
+            return null;
+        }
+        return reservationRepository.findByOrderIdAndProductId(orderId, productId).orElse(null);
+    }
+    
+    /**
+     * 查找订单的全部预占（不加锁）
+     * @return 商品ID -> 预占记录
+     */
+    public Map<Long, InventoryReservation> findByOrder(Long orderId) {
+        Map<Long, InventoryReservation> reservations = new HashMap<>();
+        if (orderId != null) {
+            for (InventoryReservation reservation : reservationRepository.findByOrderId(orderId)) {
+                reservations.put(reservation.getProductId(), reservation);
+            }
+        }
+        return reservations;
+    }
+    
+    /**
+     * 锁住预占记录，扣减/释放在修改库存前调用，与过期清理互斥
+     * @return 预占记录，没有订单ID或不存在时返回null
+     */
+    public InventoryReservation lock(Long orderId, Long productId) {
+        if (orderId == null) {
+            return null;
+        }
+        return reservationRepository.findByOrderIdAndProductIdForUpdate(orderId, productId).orElse(null);
+    }
+    
+    /**
+     * 写入一条预占，没有订单ID时忽略
+     */
+    public void reserve(Long orderId, Long productId, int quantity) {
+        if (orderId != null) {
+            reservationRepository.save(newReservation(orderId, productId, quantity));
+        }
+    }
+    
+    /**
+     * 写入订单的全部预占
+     * @param quantities 商品ID -> 锁定数量
+     */
+    public void reserveAll(Long orderId, Map<Long, Integer> quantities) {
+        if (orderId == null) {
+            return;
+        }
+        List<InventoryReservation> reservations = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) -> reservations.add(newReservation(orderId, productId, quantity)));
+        reservationRepository.saveAll(reservations);
+    }
+    
+    /**
+     * 预占是否仍持有库存或已扣减，重复锁定请求据此判断原请求是否成功
+     */
+    public boolean isLive(InventoryReservation reservation) {
+        return reservation.getStatus() == InventoryReservation.STATUS_LOCKED
+                || reservation.getStatus() == InventoryReservation.STATUS_DEDUCTED;
+    }
+    
+    /**
+     * 重复锁定请求：预占仍有效时视为已锁定，已释放或过期时拒绝
+     */
+    public void requireLive(InventoryReservation reservation) {
+        if (!isLive(reservation)) {
+            throw new BusinessException(ResultCode.INVENTORY_RESERVATION_INVALID);
+        }
+    }
+    
+    /**
+     * 记录扣减，预占剩余数量为0时结束
+     * @param quantity 本次实际扣减的数量
+     */
+    public void deducted(InventoryReservation reservation, int quantity) {
+        reservation.setDeductedQuantity(reservation.getDeductedQuantity() + quantity);
+        if (reservation.getStatus() == InventoryReservation.STATUS_EXPIRED) {
+            // 过期时已释放的库存被重新占用并扣减
+            reservation.setReleasedQuantity(reservation.getReleasedQuantity() - quantity);
+        }
+        finish(reservation);
+        reservationRepository.save(reservation);
+    }
+    
+    /**
+     * 记录释放，预占剩余数量为0时结束
+     * @param quantity 本次实际释放的数量
+     */
+    public void released(InventoryReservation reservation, int quantity) {
+        reservation.setReleasedQuantity(reservation.getReleasedQuantity() + quantity);
+        finish(reservation);
+        reservationRepository.save(reservation);
+    }
+    
+    /**
+     * 记录过期释放
+     * @param quantity 释放的剩余数量
+     */
+    public void expired(InventoryReservation reservation, int quantity) {
+        reservation.setReleasedQuantity(reservation.getReleasedQuantity() + quantity);
+        reservation.setStatus(InventoryReservation.STATUS_EXPIRED);
+        reservationRepository.save(reservation);
+    }
+    
+    /**
+     * 按过期时间索引查找游标之后一批已过期、仍在锁定中的预占
+     * @param now 过期判断的时间点
+     * @param afterExpireTime 游标：上一批最后一条的过期时间
+     * @param afterId 游标：上一批最后一条的ID
+     */
+    public List<InventoryReservationRepository.ExpiredView> findExpired(LocalDateTime now, LocalDateTime afterExpireTime,
+                                                                        Long afterId, int limit) {
+        return reservationRepository.findExpiredAfter(InventoryReservation.STATUS_LOCKED, now,
+                afterExpireTime, afterId, PageRequest.of(0, limit));
+    }
+    
+    /**
+     * 按主键锁住预占并复核是否仍需过期处理
+     * @return 预占记录，已被扣减/释放或其他节点处理过时返回null
+     */
+    public InventoryReservation lockExpired(Long id) {
+        return reservationRepository.findByIdForUpdate(id)
+                .filter(reservation -> reservation.getStatus() == InventoryReservation.STATUS_LOCKED)
+                .filter(reservation -> !reservation.getExpireTime().isAfter(LocalDateTime.now()))
+                .orElse(null);
+    }
+    
+    private void finish(InventoryReservation reservation) {
+        if (reservation.getStatus() != InventoryReservation.STATUS_LOCKED || reservation.getRemainingQuantity() > 0) {
+            return;
+        }
+        reservation.setStatus(reservation.getDeductedQuantity() > 0
+                ? InventoryReservation.STATUS_DEDUCTED : InventoryReservation.STATUS_RELEASED);
+    }
+    
+    private InventoryReservation newReservation(Long orderId, Long productId, int quantity) {
+        return InventoryReservation.builder()
+                .orderId(orderId)
+                .productId(productId)
+                .quantity(quantity)
+                .deductedQuantity(0)
+                .releasedQuantity(0)
+                .status(InventoryReservation.STATUS_LOCKED)
+                .expireTime(LocalDateTime.now().plus(ttl))
+                .build();
+    }
+}
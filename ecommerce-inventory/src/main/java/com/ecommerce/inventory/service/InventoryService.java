@@ -1,9 +1,13 @@
 package com.ecommerce.inventory.service;
 
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
 import com.ecommerce.common.entity.Inventory;
 import com.ecommerce.common.entity.InventoryLog;
+import com.ecommerce.common.vo.InventoryLockVO;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * 库存服务接口
@@ -26,17 +30,27 @@ public interface InventoryService {
     Integer getAvailableStock(Long productId);
     
     /**
-     * 锁定库存
+     * 批量获取可用库存，没有库存记录的商品返回0
+     */
+    Map<Long, Integer> getAvailableStocks(List<Long> productIds);
+    
+    /**
+     * 锁定库存（带订单ID时写入预占，同一订单重复请求不会重复锁定；秒杀商品需整单锁定）
      */
     boolean lockStock(Long productId, Integer quantity, Long orderId);
     
     /**
-     * 扣减库存
+     * 批量锁定订单库存（单事务，任一商品失败则整单不锁定；秒杀商品从内存配额抢购并按用户限购）
+     */
+    List<InventoryLockVO> batchLockStock(Long orderId, Long userId, List<InventoryDTO> items);
+    
+    /**
+     * 扣减库存（有预占时按预占剩余数量扣减，重复请求不会多扣）
      */
     boolean deductStock(Long productId, Integer quantity, Long orderId);
     
     /**
-     * 释放库存
+     * 释放库存（有预占时按预占剩余数量释放，重复请求不会多放）
      */
     boolean releaseStock(Long productId, Integer quantity, Long orderId);
     
@@ -50,6 +64,26 @@ public interface InventoryService {
      */
     Inventory setStock(Long productId, Integer stock);
     
+    /**
+     * 修改库存分桶数（热点商品拆分库存行，分散行锁竞争）
+     */
+    Inventory changeBucketCount(Long productId, Integer bucketCount);
+    
+    /**
+     * 开启秒杀活动（配额从可用库存转入锁定库存）
+     */
+    FlashSale activateFlashSale(Long productId, Integer quota, Integer perUserLimit);
+    
+    /**
+     * 结束秒杀活动（未售出的配额释放回可用库存）
+     */
+    FlashSale endFlashSale(Long productId);
+    
+    /**
+     * 获取进行中的秒杀活动
+     */
+    FlashSale getFlashSale(Long productId);
+    
     /**
      * 获取库存预警列表
      */
@@ -0,0 +1,174 @@
+package com.ecommerce.inventory.service.impl;
+
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.entity.InventoryLog;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.engine.StockEngine;
+import com.ecommerce.inventory.service.InventoryService;
+import com.ecommerce.inventory.warning.StockWarningMonitor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 内存库存引擎模式下的库存服务
+ * 库存变动由StockEngine在内存中完成并异步写库，不开启数据库事务；
+ * 建档、预警与日志查询仍委托给数据库实现。
+ * 引擎尚未按(订单ID, 商品ID)记录预占与操作结果，重复投递的扣减/释放会动用其他订单锁定的库存，
+ * 锁定超时也不会自动释放，因此暂不允许开启：StockEngine恢复并写库完成后拒绝启动
+ */
+@Slf4j
+@Primary
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "inventory.engine", name = "enabled", havingValue = "true")
+public class EngineInventoryService implements InventoryService {
+    
+    private final StockEngine stockEngine;
+    private final InventoryServiceImpl inventoryServiceImpl;
+    private final StockWarningMonitor stockWarningMonitor;
+    
+    /**
+     * 拒绝以内存引擎模式启动，StockEngine已在此之前把日志中未写库的变动写入数据库
+     */
+    @PostConstruct
+    public void refuseToStart() {
+        throw new IllegalStateException("内存库存引擎不支持按订单幂等的扣减/释放与预占过期，"
+                + "请设置inventory.engine.enabled=false后重启");
+    }
+    
+    @Override
+    public Inventory initInventory(Long productId, Integer stock) {
+        Inventory inventory = inventoryServiceImpl.initInventory(productId, stock);
+        stockEngine.register(inventory);
+        return inventory;
+    }
+    
+    @Override
+    public Inventory getInventory(Long productId) {
+        return stockEngine.fill(inventoryServiceImpl.getInventory(productId));
+    }
+    
+    @Override
+    public Integer getAvailableStock(Long productId) {
+        return stockEngine.getAvailableStock(productId);
+    }
+    
+    @Override
+    public Map<Long, Integer> getAvailableStocks(List<Long> productIds) {
+        Map<Long, Integer> stocks = new HashMap<>(productIds.size() * 2);
+        for (Long productId : productIds) {
+            stocks.put(productId, stockEngine.getAvailableStock(productId));
+        }
+        return stocks;
+    }
+    
+    @Override
+    public boolean lockStock(Long productId, Integer quantity, Long orderId) {
+        stockEngine.lock(productId, quantity, orderId);
+        updateWarning(productId);
+        log.info("库存锁定成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
+    }
+    
+    @Override
+    public List<InventoryLockVO> batchLockStock(Long orderId, Long userId, List<InventoryDTO> items) {
+        TreeMap<Long, Integer> quantities = new TreeMap<>();
+        for (InventoryDTO item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        List<InventoryLockVO> results = stockEngine.batchLock(orderId, quantities);
+        quantities.keySet().forEach(this::updateWarning);
+        return results;
+    }
+    
+    @Override
+    public boolean deductStock(Long productId, Integer quantity, Long orderId) {
+        stockEngine.deduct(productId, quantity, orderId);
+        log.info("库存扣减成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
+    }
+    
+    @Override
+    public boolean releaseStock(Long productId, Integer quantity, Long orderId) {
+        stockEngine.release(productId, quantity, orderId);
+        updateWarning(productId);
+        log.info("库存释放成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
+    }
+    
+    @Override
+    public boolean addStock(Long productId, Integer quantity) {
+        if (!stockEngine.contains(productId)) {
+            // 不存在则初始化
+            initInventory(productId, quantity);
+            return true;
+        }
+        stockEngine.add(productId, quantity);
+        updateWarning(productId);
+        return true;
+    }
+    
+    @Override
+    public Inventory setStock(Long productId, Integer stock) {
+        if (!stockEngine.contains(productId)) {
+            return initInventory(productId, stock);
+        }
+        stockEngine.set(productId, stock);
+        updateWarning(productId);
+        return getInventory(productId);
+    }
+    
+    @Override
+    public Inventory changeBucketCount(Long productId, Integer bucketCount) {
+        // 内存引擎没有行锁竞争，分桶只用于数据库模式
+        throw new BusinessException("内存库存引擎模式不支持库存分桶");
+    }
+    
+    @Override
+    public FlashSale activateFlashSale(Long productId, Integer quota, Integer perUserLimit) {
+        // 内存引擎的锁定本身不访问数据库，秒杀配额只用于数据库模式
+        throw new BusinessException("内存库存引擎模式不支持秒杀活动");
+    }
+    
+    @Override
+    public FlashSale endFlashSale(Long productId) {
+        throw new BusinessException("内存库存引擎模式不支持秒杀活动");
+    }
+    
+    @Override
+    public FlashSale getFlashSale(Long productId) {
+        return inventoryServiceImpl.getFlashSale(productId);
+    }
+    
+    @Override
+    public List<Inventory> getWarningInventories() {
+        // 按低库存集合筛选，返回库存引擎中的最新库存
+        List<Inventory> inventories = inventoryServiceImpl.getWarningInventories();
+        inventories.forEach(stockEngine::fill);
+        return inventories;
+    }
+    
+    @Override
+    public List<InventoryLog> getInventoryLogs(Long productId) {
+        return inventoryServiceImpl.getInventoryLogs(productId);
+    }
+    
+    /**
+     * 库存引擎不经过数据库事务，变动后直接用最新的可用库存更新低库存集合
+     */
+    private void updateWarning(Long productId) {
+        stockWarningMonitor.update(productId, stockEngine.getAvailableStock(productId));
+    }
+}
@@ -1,20 +1,41 @@
 package com.ecommerce.inventory.service.impl;
 
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
 import com.ecommerce.common.entity.Inventory;
 import com.ecommerce.common.entity.InventoryLog;
+import com.ecommerce.common.entity.InventoryReservation;
 import com.ecommerce.common.enums.InventoryOperationType;
 import com.ecommerce.common.exception.BusinessException;
 import com.ecommerce.common.result.ResultCode;
-import com.ecommerce.common.structure.InventoryOperationQueue;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.bucket.StockBucketManager;
+import com.ecommerce.inventory.flashsale.FlashSaleManager;
+import com.ecommerce.inventory.flashsale.FlashSaleMaterializer;
+import com.ecommerce.inventory.idempotency.OperationDeduplicator;
+import com.ecommerce.inventory.log.InventoryLogWriter;
+import com.ecommerce.inventory.repository.FlashSaleRepository;
 import com.ecommerce.inventory.repository.InventoryLogRepository;
 import com.ecommerce.inventory.repository.InventoryRepository;
+import com.ecommerce.inventory.reservation.StockReservationManager;
 import com.ecommerce.inventory.service.InventoryService;
+import com.ecommerce.inventory.warning.StockWarningMonitor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 库存服务实现类
@@ -26,9 +47,14 @@ public class InventoryServiceImpl implements InventoryService {
     
     private final InventoryRepository inventoryRepository;
     private final InventoryLogRepository inventoryLogRepository;
-    
-    // 库存操作队列（用于记录操作日志）
-    private final InventoryOperationQueue operationQueue = new InventoryOperationQueue();
+    private final StockBucketManager stockBucketManager;
+    private final InventoryLogWriter inventoryLogWriter;
+    private final StockReservationManager stockReservationManager;
+    private final OperationDeduplicator operationDeduplicator;
+    private final FlashSaleRepository flashSaleRepository;
+    private final FlashSaleManager flashSaleManager;
+    private final FlashSaleMaterializer flashSaleMaterializer;
+    private final StockWarningMonitor stockWarningMonitor;
     
     @Override
     @Transactional
@@ -44,30 +70,364 @@ public class InventoryServiceImpl implements InventoryService {
                 .availableStock(stock)
                 .lockedStock(0)
                 .warningThreshold(10)
+                .bucketCount(1)
                 .build();
         
-        return inventoryRepository.save(inventory);
+        inventory = inventoryRepository.save(inventory);
+        stockWarningMonitor.register(inventory);
+        return inventory;
     }
     
     @Override
     public Inventory getInventory(Long productId) {
-        return inventoryRepository.findByProductId(productId)
+        Inventory inventory = inventoryRepository.findByProductId(productId)
                 .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        return inventory.isBucketed() ? stockBucketManager.fill(inventory) : inventory;
     }
     
     @Override
     public Integer getAvailableStock(Long productId) {
+        if (stockBucketManager.isBucketed(productId)) {
+            return stockBucketManager.sumAvailable(Collections.singletonList(productId)).getOrDefault(productId, 0);
+        }
         return inventoryRepository.findByProductId(productId)
                 .map(Inventory::getAvailableStock)
                 .orElse(0);
     }
     
     @Override
-    @Transactional
+    public Map<Long, Integer> getAvailableStocks(List<Long> productIds) {
+        Map<Long, Integer> stocks = new HashMap<>(productIds.size() * 2);
+        for (Long productId : productIds) {
+            stocks.put(productId, 0);
+        }
+        List<Long> bucketed = new ArrayList<>();
+        for (Inventory inventory : inventoryRepository.findByProductIdIn(stocks.keySet())) {
+            stocks.put(inventory.getProductId(), inventory.getAvailableStock());
+            if (inventory.isBucketed()) {
+                bucketed.add(inventory.getProductId());
+            }
+        }
+        if (!bucketed.isEmpty()) {
+            stocks.putAll(stockBucketManager.sumAvailable(bucketed));
+        }
+        return stocks;
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public boolean lockStock(Long productId, Integer quantity, Long orderId) {
+        if (flashSaleManager.isFlashSale(productId)) {
+            // 秒杀商品需要用户ID限购
+            throw new BusinessException("秒杀商品请通过订单整单锁定库存");
+        }
+        Boolean replayed = operationDeduplicator.begin(orderId, productId, InventoryOperationType.LOCK, quantity);
+        if (replayed != null) {
+            return replayed;
+        }
+        
+        InventoryReservation reservation = stockReservationManager.find(orderId, productId);
+        if (reservation != null) {
+            // 已由整单锁定写入预占，预占仍有效即视为已锁定
+            stockReservationManager.requireLive(reservation);
+            log.info("库存已锁定，忽略重复请求: productId={}, orderId={}", productId, orderId);
+        } else {
+            doLockStock(productId, quantity, orderId);
+            stockReservationManager.reserve(orderId, productId, quantity);
+        }
+        operationDeduplicator.complete(orderId, productId, InventoryOperationType.LOCK, true);
+        return true;
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public List<InventoryLockVO> batchLockStock(Long orderId, Long userId, List<InventoryDTO> items) {
+        // 合并同一商品的多行，TreeMap保证按商品ID升序处理
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (InventoryDTO item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        
+        flashSaleMaterializer.flush(orderId);
+        Map<Long, InventoryReservation> reservations = stockReservationManager.findByOrder(orderId);
+        if (!reservations.isEmpty()) {
+            return replayBatchLock(orderId, quantities, reservations);
+        }
+        if (quantities.keySet().stream().anyMatch(flashSaleManager::isFlashSale)) {
+            return batchLockFlashSale(orderId, userId, quantities);
+        }
+        
+        List<InventoryLockVO> results = doBatchLockStock(orderId, quantities);
+        if (results.stream().allMatch(InventoryLockVO::getSuccess)) {
+            stockReservationManager.reserveAll(orderId, quantities);
+        }
+        return results;
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public boolean deductStock(Long productId, Integer quantity, Long orderId) {
+        Boolean replayed = operationDeduplicator.begin(orderId, productId, InventoryOperationType.DEDUCT, quantity);
+        if (replayed != null) {
+            return replayed;
+        }
+        
+        boolean success = deductReservedStock(productId, quantity, orderId);
+        operationDeduplicator.complete(orderId, productId, InventoryOperationType.DEDUCT, success);
+        return success;
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public boolean releaseStock(Long productId, Integer quantity, Long orderId) {
+        Boolean replayed = operationDeduplicator.begin(orderId, productId, InventoryOperationType.RELEASE, quantity);
+        if (replayed != null) {
+            return replayed;
+        }
+        
+        boolean success = releaseReservedStock(productId, quantity, orderId);
+        operationDeduplicator.complete(orderId, productId, InventoryOperationType.RELEASE, success);
+        return success;
+    }
+    
+    @Override
+    @Transactional
+    public boolean addStock(Long productId, Integer quantity) {
+        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
+        
+        if (inventory == null) {
+            // 不存在则初始化
+            initInventory(productId, quantity);
+            return true;
+        }
+        
+        if (inventory.isBucketed()) {
+            StockBucketManager.Change change = stockBucketManager.adjust(productId, quantity);
+            saveLog(productId, null, InventoryOperationType.ADD, quantity, change.getBefore(), change.getAfter());
+            log.info("库存增加成功: productId={}, quantity={}", productId, quantity);
+            return true;
+        }
+        
+        int result = inventoryRepository.addStock(productId, quantity);
+        if (result > 0) {
+            saveLog(productId, null, InventoryOperationType.ADD, quantity,
+                    inventory.getAvailableStock(), inventory.getAvailableStock() + quantity);
+            
+            log.info("库存增加成功: productId={}, quantity={}", productId, quantity);
+            return true;
+        }
+        
+        return false;
+    }
+    
+    @Override
+    @Transactional
+    public Inventory setStock(Long productId, Integer stock) {
+        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
+        
+        if (inventory == null) {
+            return initInventory(productId, stock);
+        }
+        
+        if (inventory.isBucketed()) {
+            stockBucketManager.fill(inventory);
+            int diff = stock - inventory.getTotalStock();
+            StockBucketManager.Change change = stockBucketManager.adjust(productId, diff);
+            saveLog(productId, null, InventoryOperationType.SET, diff, change.getBefore(), change.getAfter());
+            inventory.setTotalStock(stock);
+            inventory.setAvailableStock(change.getAfter());
+            return inventory;
+        }
+        
+        int diff = stock - inventory.getTotalStock();
+        inventory.setTotalStock(stock);
+        inventory.setAvailableStock(inventory.getAvailableStock() + diff);
+        
+        saveLog(productId, null, InventoryOperationType.SET, diff,
+                inventory.getAvailableStock() - diff, inventory.getAvailableStock());
+        
+        return inventoryRepository.save(inventory);
+    }
+    
+    @Override
+    @Transactional
+    public Inventory changeBucketCount(Long productId, Integer bucketCount) {
+        Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId)
+                .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        if (flashSaleRepository.findFirstByProductIdAndStatus(productId, FlashSale.STATUS_ACTIVE).isPresent()) {
+            throw new BusinessException("秒杀中的商品不支持库存分桶");
+        }
+        stockBucketManager.changeBucketCount(inventory, bucketCount);
+        return inventory;
+    }
+    
+    @Override
+    @Transactional
+    public FlashSale activateFlashSale(Long productId, Integer quota, Integer perUserLimit) {
+        if (quota == null || quota <= 0 || perUserLimit == null || perUserLimit <= 0) {
+            throw new BusinessException(ResultCode.BAD_REQUEST);
+        }
+        // 与配额退回、活动结束相同的加锁顺序：先活动再库存行
+        if (flashSaleRepository.findActiveByProductIdForUpdate(productId).isPresent()) {
+            throw new BusinessException("该商品已有进行中的秒杀活动");
+        }
+        Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId)
+                .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        if (inventory.isBucketed()) {
+            throw new BusinessException("分桶商品不支持秒杀，请先取消分桶");
+        }
+        if (inventory.getAvailableStock() < quota) {
+            throw new BusinessException(ResultCode.INVENTORY_NOT_ENOUGH);
+        }
+        
+        // 秒杀配额整体转入锁定库存，抢购期间不再修改库存行
+        if (inventoryRepository.lockStock(productId, quota) == 0) {
+            throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED);
+        }
+        saveLog(productId, null, InventoryOperationType.LOCK, quota,
+                inventory.getAvailableStock(), inventory.getAvailableStock() - quota);
+        
+        FlashSale sale = flashSaleRepository.save(FlashSale.builder()
+                .productId(productId)
+                .quota(quota)
+                .remaining(quota)
+                .perUserLimit(perUserLimit)
+                .status(FlashSale.STATUS_ACTIVE)
+                .build());
+        flashSaleManager.activate(sale);
+        log.info("秒杀活动已开启: productId={}, quota={}, perUserLimit={}", productId, quota, perUserLimit);
+        return sale;
+    }
+    
+    @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public FlashSale endFlashSale(Long productId) {
+        FlashSale sale = flashSaleRepository.findActiveByProductIdForUpdate(productId)
+                .orElseThrow(() -> new BusinessException("该商品没有进行中的秒杀活动"));
+        // 未被节点领取的配额释放回可用库存，已领取未售出的由各节点结束活动时释放
+        if (sale.getRemaining() > 0) {
+            doReleaseStock(productId, sale.getRemaining(), null);
+        }
+        sale.setRemaining(0);
+        sale.setStatus(FlashSale.STATUS_ENDED);
+        flashSaleRepository.save(sale);
+        flashSaleManager.end(productId);
+        log.info("秒杀活动已结束: productId={}, saleId={}", productId, sale.getId());
+        return sale;
+    }
+    
+    @Override
+    public FlashSale getFlashSale(Long productId) {
+        return flashSaleRepository.findFirstByProductIdAndStatus(productId, FlashSale.STATUS_ACTIVE)
+                .orElseThrow(() -> new BusinessException("该商品没有进行中的秒杀活动"));
+    }
+    
+    @Override
+    public List<Inventory> getWarningInventories() {
+        return stockWarningMonitor.getWarnings();
+    }
+    
+    @Override
+    public List<InventoryLog> getInventoryLogs(Long productId) {
+        return inventoryLogRepository.findByProductIdOrderByCreateTimeDesc(productId);
+    }
+    
+    /**
+     * 释放一条过期预占的剩余锁定库存，由过期清理任务逐条调用
+     * @param reservationId 预占ID
+     * @return 是否已释放，预占已被扣减/释放或其他节点处理过时返回false
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public boolean expireReservation(Long reservationId) {
+        InventoryReservation reservation = stockReservationManager.lockExpired(reservationId);
+        if (reservation == null) {
+            return false;
+        }
+        int remaining = reservation.getRemainingQuantity();
+        if (remaining > 0) {
+            doReleaseStock(reservation.getProductId(), remaining, reservation.getOrderId());
+        }
+        stockReservationManager.expired(reservation, remaining);
+        log.info("库存预占已过期释放: productId={}, quantity={}, orderId={}",
+                reservation.getProductId(), remaining, reservation.getOrderId());
+        return true;
+    }
+    
+    /**
+     * 扣减库存，有预占时按预占剩余数量扣减
+     */
+    private boolean deductReservedStock(Long productId, Integer quantity, Long orderId) {
+        flashSaleMaterializer.flush(orderId);
+        InventoryReservation reservation = stockReservationManager.lock(orderId, productId);
+        if (reservation == null) {
+            return doDeductStock(productId, quantity, orderId);
+        }
+        
+        if (reservation.getStatus() == InventoryReservation.STATUS_RELEASED) {
+            throw new BusinessException(ResultCode.INVENTORY_RESERVATION_INVALID);
+        }
+        // 扣减总量不超过预占数量，重复请求只作用到剩余部分
+        int applied = 0;
+        if (reservation.getStatus() == InventoryReservation.STATUS_LOCKED) {
+            applied = Math.min(quantity, reservation.getRemainingQuantity());
+        } else if (reservation.getStatus() == InventoryReservation.STATUS_EXPIRED) {
+            applied = Math.min(quantity, reservation.getQuantity() - reservation.getDeductedQuantity());
+        }
+        if (applied <= 0) {
+            log.info("库存已扣减，忽略重复请求: productId={}, orderId={}", productId, orderId);
+            return true;
+        }
+        if (reservation.getStatus() == InventoryReservation.STATUS_EXPIRED) {
+            // 预占过期后库存已回到可用库存，重新锁定后再扣减，可用库存不足时失败
+            log.warn("库存预占已过期，重新锁定后扣减: productId={}, quantity={}, orderId={}", productId, applied, orderId);
+            doLockStock(productId, applied, orderId);
+        }
+        if (!doDeductStock(productId, applied, orderId)) {
+            return false;
+        }
+        stockReservationManager.deducted(reservation, applied);
+        return true;
+    }
+    
+    /**
+     * 释放库存，有预占时按预占剩余数量释放
+     */
+    private boolean releaseReservedStock(Long productId, Integer quantity, Long orderId) {
+        flashSaleMaterializer.flush(orderId);
+        InventoryReservation reservation = stockReservationManager.lock(orderId, productId);
+        if (reservation == null) {
+            return doReleaseStock(productId, quantity, orderId);
+        }
+        
+        // 已扣减、已释放或已过期的预占没有可释放的库存
+        int applied = reservation.getStatus() == InventoryReservation.STATUS_LOCKED
+                ? Math.min(quantity, reservation.getRemainingQuantity()) : 0;
+        if (applied <= 0) {
+            log.info("库存预占无剩余，忽略释放请求: productId={}, orderId={}, status={}",
+                    productId, orderId, reservation.getStatus());
+            return true;
+        }
+        if (!doReleaseStock(productId, applied, orderId)) {
+            return false;
+        }
+        stockReservationManager.released(reservation, applied);
+        return true;
+    }
+    
+    /**
+     * 锁定单个商品的库存，失败时抛出异常
+     */
+    private void doLockStock(Long productId, Integer quantity, Long orderId) {
+        if (stockBucketManager.isBucketed(productId) && lockBucketStock(productId, quantity, orderId)) {
+            return;
+        }
+        
         // 使用悲观锁获取库存
         Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId)
                 .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        if (stockBucketManager.route(inventory) && lockBucketStock(productId, quantity, orderId)) {
+            return;
+        }
         
         // 检查库存是否充足
         if (inventory.getAvailableStock() < quantity) {
@@ -81,21 +441,208 @@ public class InventoryServiceImpl implements InventoryService {
             saveLog(productId, orderId, InventoryOperationType.LOCK, quantity, 
                     inventory.getAvailableStock(), inventory.getAvailableStock() - quantity);
             
-            // 加入操作队列
-            operationQueue.enqueue(InventoryOperationQueue.createLockOperation(productId, orderId, quantity));
-            
             log.info("库存锁定成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
-            return true;
+            return;
         }
         
         throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED);
     }
     
-    @Override
-    @Transactional
-    public boolean deductStock(Long productId, Integer quantity, Long orderId) {
+    /**
+     * 重复的整单锁定请求：按已有预占返回原结果，不再锁定
+     */
+    private List<InventoryLockVO> replayBatchLock(Long orderId, Map<Long, Integer> quantities,
+                                                  Map<Long, InventoryReservation> reservations) {
+        List<InventoryLockVO> results = new ArrayList<>(quantities.size());
+        boolean live = true;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            InventoryReservation reservation = reservations.get(entry.getKey());
+            InventoryLockVO result = InventoryLockVO.builder()
+                    .productId(entry.getKey())
+                    .quantity(entry.getValue())
+                    .success(true)
+                    .build();
+            if (reservation == null || !stockReservationManager.isLive(reservation)) {
+                result.setSuccess(false);
+                result.setMessage(ResultCode.INVENTORY_RESERVATION_INVALID.getMessage());
+            }
+            live = live && result.getSuccess();
+            results.add(result);
+        }
+        if (!live) {
+            markOrderFailed(results);
+        }
+        log.info("订单库存已锁定，按预占返回重复请求: orderId={}, success={}", orderId, live);
+        return results;
+    }
+    
+    /**
+     * 锁定含秒杀商品的整单库存：秒杀商品只扣内存配额，其余商品照常锁定库存行，任一失败则回滚整单
+     * @param quantities 商品ID -> 数量，按商品ID升序
+     */
+    private List<InventoryLockVO> batchLockFlashSale(Long orderId, Long userId, Map<Long, Integer> quantities) {
+        Map<Long, Integer> acquired = new TreeMap<>();
+        Map<Long, Integer> rowQuantities = new TreeMap<>();
+        // 先登记，本事务回滚时退回已抢到的配额
+        flashSaleManager.settle(orderId, userId, acquired);
+        
+        List<InventoryLockVO> results = new ArrayList<>(quantities.size());
+        boolean success = true;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            InventoryLockVO result = InventoryLockVO.builder()
+                    .productId(entry.getKey())
+                    .quantity(entry.getValue())
+                    .success(true)
+                    .build();
+            results.add(result);
+            if (!flashSaleManager.isFlashSale(entry.getKey())) {
+                rowQuantities.put(entry.getKey(), entry.getValue());
+                continue;
+            }
+            if (!success) {
+                continue;
+            }
+            ResultCode code = flashSaleManager.tryAcquire(entry.getKey(), userId, entry.getValue());
+            if (code == ResultCode.SUCCESS) {
+                acquired.put(entry.getKey(), entry.getValue());
+            } else {
+                result.setSuccess(false);
+                result.setMessage(code.getMessage());
+                success = false;
+            }
+        }
+        
+        if (success && !rowQuantities.isEmpty()) {
+            for (InventoryLockVO rowResult : doBatchLockStock(orderId, rowQuantities)) {
+                for (InventoryLockVO result : results) {
+                    if (result.getProductId().equals(rowResult.getProductId())) {
+                        result.setSuccess(rowResult.getSuccess());
+                        result.setAvailableStock(rowResult.getAvailableStock());
+                        result.setMessage(rowResult.getMessage());
+                    }
+                }
+                success = success && rowResult.getSuccess();
+            }
+        }
+        
+        if (!success) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            markOrderFailed(results);
+            log.info("秒杀订单库存锁定失败: orderId={}, userId={}", orderId, userId);
+            return results;
+        }
+        if (!rowQuantities.isEmpty()) {
+            stockReservationManager.reserveAll(orderId, rowQuantities);
+        }
+        log.info("秒杀订单库存锁定成功: orderId={}, userId={}, flashSaleItems={}", orderId, userId, acquired.size());
+        return results;
+    }
+    
+    /**
+     * 锁定整单库存，任一商品不足时整单不锁定
+     * @param quantities 商品ID -> 数量，按商品ID升序
+     */
+    private List<InventoryLockVO> doBatchLockStock(Long orderId, Map<Long, Integer> quantities) {
+        // 一条 SELECT ... FOR UPDATE 按商品ID升序锁住本单涉及的所有库存行，分桶商品不锁汇总行
+        Set<Long> rowProductIds = quantities.keySet().stream()
+                .filter(productId -> !stockBucketManager.isBucketed(productId))
+                .collect(Collectors.toSet());
+        Map<Long, Inventory> inventoryMap = rowProductIds.isEmpty() ? Collections.emptyMap()
+                : inventoryRepository.findByProductIdInForUpdate(rowProductIds).stream()
+                        .collect(Collectors.toMap(Inventory::getProductId, Function.identity()));
+        
+        // 先校验全部商品，任一不足则整单不锁定；分桶商品按各桶合计预校验
+        boolean anyBucketed = rowProductIds.size() < quantities.size()
+                || inventoryMap.values().stream().anyMatch(Inventory::isBucketed);
+        Map<Long, Integer> bucketStocks = anyBucketed
+                ? stockBucketManager.sumAvailable(quantities.keySet()) : Collections.emptyMap();
+        List<InventoryLockVO> results = new ArrayList<>(quantities.size());
+        boolean enough = true;
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            Inventory inventory = inventoryMap.get(entry.getKey());
+            InventoryLockVO result = InventoryLockVO.builder()
+                    .productId(entry.getKey())
+                    .quantity(entry.getValue())
+                    .success(true)
+                    .build();
+            boolean bucketed = inventory != null ? stockBucketManager.route(inventory)
+                    : stockBucketManager.isBucketed(entry.getKey());
+            if (bucketed) {
+                int available = bucketStocks.getOrDefault(entry.getKey(), 0);
+                result.setAvailableStock(available);
+                if (available < entry.getValue()) {
+                    result.setSuccess(false);
+                    result.setMessage(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+                }
+            } else if (inventory == null) {
+                result.setSuccess(false);
+                result.setMessage(ResultCode.INVENTORY_NOT_FOUND.getMessage());
+            } else {
+                result.setAvailableStock(inventory.getAvailableStock());
+                if (inventory.getAvailableStock() < entry.getValue()) {
+                    result.setSuccess(false);
+                    result.setMessage(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+                }
+            }
+            enough = enough && result.getSuccess();
+            results.add(result);
+        }
+        
+        if (!enough) {
+            markOrderFailed(results);
+            log.info("批量库存锁定失败: orderId={}", orderId);
+            return results;
+        }
+        
+        for (InventoryLockVO result : results) {
+            if (stockBucketManager.isBucketed(result.getProductId())) {
+                StockBucketManager.Change change;
+                try {
+                    change = stockBucketManager.lock(result.getProductId(), result.getQuantity(), orderId);
+                } catch (BusinessException e) {
+                    // 预校验后被并发订单抢先，回滚本单已锁定的商品
+                    TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+                    result.setSuccess(false);
+                    result.setMessage(e.getMessage());
+                    markOrderFailed(results);
+                    log.info("批量库存锁定失败: orderId={}", orderId);
+                    return results;
+                }
+                if (change == null) {
+                    // 分桶已取消，汇总行未加锁，整单重试即可
+                    throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED);
+                }
+                saveLog(result.getProductId(), orderId, InventoryOperationType.LOCK, result.getQuantity(),
+                        change.getBefore(), change.getAfter());
+                continue;
+            }
+            Inventory inventory = inventoryMap.get(result.getProductId());
+            int updated = inventoryRepository.lockStock(result.getProductId(), result.getQuantity());
+            if (updated == 0) {
+                // 行已被锁住，理论上不会发生；抛异常回滚已锁定的商品
+                throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED);
+            }
+            saveLog(result.getProductId(), orderId, InventoryOperationType.LOCK, result.getQuantity(),
+                    inventory.getAvailableStock(), inventory.getAvailableStock() - result.getQuantity());
+        }
+        
+        log.info("批量库存锁定成功: orderId={}, items={}", orderId, results.size());
+        return results;
+    }
+    
+    /**
+     * 从锁定库存扣减单个商品的库存
+     */
+    private boolean doDeductStock(Long productId, Integer quantity, Long orderId) {
+        if (stockBucketManager.isBucketed(productId) && deductBucketStock(productId, quantity, orderId)) {
+            return true;
+        }
+        
         Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId)
                 .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        if (stockBucketManager.route(inventory) && deductBucketStock(productId, quantity, orderId)) {
+            return true;
+        }
         
         // 检查锁定库存是否充足
         if (inventory.getLockedStock() < quantity) {
@@ -107,8 +654,6 @@ public class InventoryServiceImpl implements InventoryService {
             saveLog(productId, orderId, InventoryOperationType.DEDUCT, quantity,
                     inventory.getLockedStock(), inventory.getLockedStock() - quantity);
             
-            operationQueue.enqueue(InventoryOperationQueue.createDeductOperation(productId, orderId, quantity));
-            
             log.info("库存扣减成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
             return true;
         }
@@ -116,11 +661,19 @@ public class InventoryServiceImpl implements InventoryService {
         return false;
     }
     
-    @Override
-    @Transactional
-    public boolean releaseStock(Long productId, Integer quantity, Long orderId) {
+    /**
+     * 把单个商品的锁定库存释放回可用库存
+     */
+    private boolean doReleaseStock(Long productId, Integer quantity, Long orderId) {
+        if (stockBucketManager.isBucketed(productId) && releaseBucketStock(productId, quantity, orderId)) {
+            return true;
+        }
+        
         Inventory inventory = inventoryRepository.findByProductIdForUpdate(productId)
                 .orElseThrow(() -> new BusinessException(ResultCode.INVENTORY_NOT_FOUND));
+        if (stockBucketManager.route(inventory) && releaseBucketStock(productId, quantity, orderId)) {
+            return true;
+        }
         
         // 检查锁定库存是否充足
         if (inventory.getLockedStock() < quantity) {
@@ -132,8 +685,6 @@ public class InventoryServiceImpl implements InventoryService {
             saveLog(productId, orderId, InventoryOperationType.RELEASE, quantity,
                     inventory.getAvailableStock(), inventory.getAvailableStock() + quantity);
             
-            operationQueue.enqueue(InventoryOperationQueue.createReleaseOperation(productId, orderId, quantity));
-            
             log.info("库存释放成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
             return true;
         }
@@ -141,74 +692,65 @@ public class InventoryServiceImpl implements InventoryService {
         return false;
     }
     
-    @Override
-    @Transactional
-    public boolean addStock(Long productId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
-        
-        if (inventory == null) {
-            // 不存在则初始化
-            initInventory(productId, quantity);
-            return true;
-        }
-        
-        int result = inventoryRepository.addStock(productId, quantity);
-        if (result > 0) {
-            saveLog(productId, null, InventoryOperationType.ADD, quantity,
-                    inventory.getAvailableStock(), inventory.getAvailableStock() + quantity);
-            
-            log.info("库存增加成功: productId={}, quantity={}", productId, quantity);
-            return true;
+    /**
+     * 在分桶中锁定库存
+     * @return 是否已处理，商品实际未分桶时返回false，由调用方走单行库存
+     */
+    private boolean lockBucketStock(Long productId, Integer quantity, Long orderId) {
+        StockBucketManager.Change change = stockBucketManager.lock(productId, quantity, orderId);
+        if (change == null) {
+            return false;
         }
-        
-        return false;
+        saveLog(productId, orderId, InventoryOperationType.LOCK, quantity, change.getBefore(), change.getAfter());
+        log.info("库存锁定成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
     }
     
-    @Override
-    @Transactional
-    public Inventory setStock(Long productId, Integer stock) {
-        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
-        
-        if (inventory == null) {
-            return initInventory(productId, stock);
+    /**
+     * 从分桶中扣减库存
+     */
+    private boolean deductBucketStock(Long productId, Integer quantity, Long orderId) {
+        StockBucketManager.Change change = stockBucketManager.deduct(productId, quantity, orderId);
+        if (change == null) {
+            return false;
         }
-        
-        int diff = stock - inventory.getTotalStock();
-        inventory.setTotalStock(stock);
-        inventory.setAvailableStock(inventory.getAvailableStock() + diff);
-        
-        saveLog(productId, null, InventoryOperationType.SET, diff,
-                inventory.getAvailableStock() - diff, inventory.getAvailableStock());
-        
-        return inventoryRepository.save(inventory);
+        saveLog(productId, orderId, InventoryOperationType.DEDUCT, quantity, change.getBefore(), change.getAfter());
+        log.info("库存扣减成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
     }
     
-    @Override
-    public List<Inventory> getWarningInventories() {
-        return inventoryRepository.findWarningInventories();
+    /**
+     * 在分桶中释放库存
+     */
+    private boolean releaseBucketStock(Long productId, Integer quantity, Long orderId) {
+        StockBucketManager.Change change = stockBucketManager.release(productId, quantity, orderId);
+        if (change == null) {
+            return false;
+        }
+        saveLog(productId, orderId, InventoryOperationType.RELEASE, quantity, change.getBefore(), change.getAfter());
+        log.info("库存释放成功: productId={}, quantity={}, orderId={}", productId, quantity, orderId);
+        return true;
     }
     
-    @Override
-    public List<InventoryLog> getInventoryLogs(Long productId) {
-        return inventoryLogRepository.findByProductIdOrderByCreateTimeDesc(productId);
+    /**
+     * 整单锁定失败时，把本身可以锁定的商品也标记为失败
+     */
+    private static void markOrderFailed(List<InventoryLockVO> results) {
+        for (InventoryLockVO result : results) {
+            if (result.getSuccess()) {
+                result.setSuccess(false);
+                result.setMessage(InventoryLockVO.MESSAGE_OTHER_ITEM_FAILED);
+            }
+        }
     }
     
     /**
-     * 保存库存操作日志
+     * 保存库存操作日志，事务提交后异步批量写库，并增量更新低库存集合
      */
     private void saveLog(Long productId, Long orderId, InventoryOperationType operationType,
                          Integer quantity, Integer beforeStock, Integer afterStock) {
-        InventoryLog log = InventoryLog.builder()
-                .productId(productId)
-                .orderId(orderId)
-                .operationType(operationType.name())
-                .quantity(quantity)
-                .beforeStock(beforeStock)
-                .afterStock(afterStock)
-                .remark(operationType.getDescription())
-                .build();
-        
-        inventoryLogRepository.save(log);
+        inventoryLogWriter.record(productId, orderId, operationType, quantity, beforeStock, afterStock);
+        stockWarningMonitor.record(productId, operationType, quantity);
     }
 }
 
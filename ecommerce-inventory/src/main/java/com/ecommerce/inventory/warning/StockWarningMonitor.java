@@ -0,0 +1,383 @@
+package com.ecommerce.inventory.warning;
+
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.enums.InventoryOperationType;
+import com.ecommerce.common.structure.LongCountMap;
+import com.ecommerce.common.vo.InventoryWarningVO;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 低库存监控
+ * 在内存中维护各商品的可用库存与预警阈值，库存变动提交后按变化量增量更新，
+ * 可用库存不高于阈值的商品保存在预警集合中，查询预警列表不再扫描库存表；
+ * 商品进入或解除预警时通过SSE推送给订阅方。
+ * 所有更新由单个后台线程按顺序处理，不占用库存事务的时间。
+ * 其他节点的库存变动只在定时校准时同步，预警列表最多落后一个校准周期
+ */
+@Slf4j
+@Component
+public class StockWarningMonitor {
+    
+    private static final String EVENT_WARNING = "warning";
+    private static final String EVENT_SNAPSHOT = "snapshot";
+    
+    /** 校准时每次按商品ID读取的库存记录数 */
+    private static final int LOAD_BATCH_SIZE = 1000;
+    
+    private final InventoryRepository inventoryRepository;
+    private final long emitterTimeoutMs;
+    
+    /** 商品ID -> 可用库存，只由后台线程修改 */
+    private final LongCountMap availableStocks = new LongCountMap();
+    
+    /** 商品ID -> 预警阈值，只由后台线程修改 */
+    private final LongCountMap thresholds = new LongCountMap();
+    
+    /** 商品ID -> 预警中的库存快照，后台线程整体替换，查询线程只读 */
+    private final Map<Long, Inventory> warnings = new ConcurrentHashMap<>();
+    
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private final ThreadPoolExecutor executor;
+    private final Counter droppedCounter;
+    
+    public StockWarningMonitor(InventoryRepository inventoryRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${inventory.warning.queue-capacity:100000}") int queueCapacity,
+                               @Value("${inventory.warning.emitter-timeout-ms:1800000}") long emitterTimeoutMs) {
+        this.inventoryRepository = inventoryRepository;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.droppedCounter = Counter.builder("inventory.warning.dropped")
+                .description("队列满被丢弃、等待校准修正的库存变动数")
+                .register(meterRegistry);
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "inventory-stock-warning");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> droppedCounter.increment());
+        Gauge.builder("inventory.warning.products", warnings, Map::size)
+                .description("预警中的商品数")
+                .register(meterRegistry);
+        Gauge.builder("inventory.warning.subscribers", emitters, List::size)
+                .description("预警推送的订阅数")
+                .register(meterRegistry);
+    }
+    
+    /**
+     * 记录一次库存变动，在事务中调用时等事务提交后再处理
+     * @param quantity 变动数量，SET为总库存的差值
+     */
+    public void record(Long productId, InventoryOperationType operationType, int quantity) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(() -> apply(productId, operationType, quantity));
+                }
+            });
+        } else {
+            executor.execute(() -> apply(productId, operationType, quantity));
+        }
+    }
+    
+    /**
+     * 用最新的可用库存覆盖内存值，供不经过数据库事务的内存库存引擎调用
+     */
+    public void update(Long productId, int availableStock) {
+        executor.execute(() -> {
+            if (!availableStocks.containsKey(productId) && !load(productId)) {
+                return;
+            }
+            availableStocks.put(productId, availableStock);
+            evaluate(productId, null, 0);
+        });
+    }
+    
+    /**
+     * 登记新建的库存记录
+     */
+    public void register(Inventory inventory) {
+        Long productId = inventory.getProductId();
+        int available = inventory.getAvailableStock();
+        int threshold = inventory.getWarningThreshold();
+        Runnable task = () -> {
+            availableStocks.put(productId, available);
+            thresholds.put(productId, threshold);
+            evaluate(productId, null, 0);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    executor.execute(task);
+                }
+            });
+        } else {
+            executor.execute(task);
+        }
+    }
+    
+    /**
+     * 预警中的库存，按商品ID升序
+     */
+    public List<Inventory> getWarnings() {
+        List<Inventory> inventories = new ArrayList<>(warnings.size());
+        for (Inventory inventory : warnings.values()) {
+            inventories.add(copy(inventory));
+        }
+        inventories.sort(Comparator.comparing(Inventory::getProductId));
+        return inventories;
+    }
+    
+    /**
+     * 订阅预警变化，订阅后先推送一次当前的预警列表，之后推送每次进入或解除预警
+     */
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        // 由后台线程登记并推送当前列表，保证订阅方先收到列表再收到之后的变化
+        executor.execute(() -> {
+            emitters.add(emitter);
+            send(emitter, SseEmitter.event().name(EVENT_SNAPSHOT).data(getWarnings()));
+        });
+        return emitter;
+    }
+    
+    /**
+     * 定时从数据库校准全部商品的可用库存与阈值，启动时立即执行一次
+     */
+    @Scheduled(fixedDelayString = "${inventory.warning.resync-interval-ms:300000}")
+    public void resync() {
+        executor.execute(() -> {
+            try {
+                doResync();
+            } catch (Exception e) {
+                log.warn("低库存集合校准失败", e);
+            }
+        });
+    }
+    
+    /**
+     * 定时向订阅方发送心跳，同时清理已断开的连接
+     */
+    @Scheduled(fixedDelayString = "${inventory.warning.heartbeat-interval-ms:30000}")
+    public void heartbeat() {
+        executor.execute(() -> {
+            for (SseEmitter emitter : emitters) {
+                send(emitter, SseEmitter.event().comment("heartbeat"));
+            }
+        });
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        for (SseEmitter emitter : emitters) {
+            emitter.complete();
+        }
+        emitters.clear();
+    }
+    
+    private void doResync() {
+        Set<Long> lowProductIds = new HashSet<>();
+        for (InventoryRepository.StockLevelView level : inventoryRepository.findStockLevels()) {
+            availableStocks.put(level.getProductId(), level.getAvailableStock());
+            thresholds.put(level.getProductId(), level.getWarningThreshold());
+            if (level.getAvailableStock() <= level.getWarningThreshold()) {
+                lowProductIds.add(level.getProductId());
+            }
+        }
+        
+        for (Long productId : new ArrayList<>(warnings.keySet())) {
+            if (!lowProductIds.contains(productId) && warnings.remove(productId) != null
+                    && availableStocks.containsKey(productId)) {
+                publish(productId, availableStocks.get(productId), thresholds.get(productId), false);
+            }
+        }
+        // 预警中的商品整行重新读取，修正推算的锁定库存与总库存
+        List<Long> productIds = new ArrayList<>(lowProductIds);
+        for (int from = 0; from < productIds.size(); from += LOAD_BATCH_SIZE) {
+            List<Long> batch = productIds.subList(from, Math.min(from + LOAD_BATCH_SIZE, productIds.size()));
+            for (Inventory inventory : inventoryRepository.findByProductIdIn(batch)) {
+                boolean entered = !warnings.containsKey(inventory.getProductId());
+                warnings.put(inventory.getProductId(), inventory);
+                if (entered) {
+                    publish(inventory.getProductId(), inventory.getAvailableStock(), inventory.getWarningThreshold(), true);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 按变动类型更新可用库存，并检查是否越过阈值
+     */
+    private void apply(Long productId, InventoryOperationType operationType, int quantity) {
+        if (!availableStocks.containsKey(productId)) {
+            // 其他节点新建的商品，从数据库读到的已是提交后的值
+            load(productId);
+            return;
+        }
+        int availableDelta = availableDelta(operationType, quantity);
+        if (availableDelta != 0) {
+            availableStocks.add(productId, availableDelta);
+        }
+        evaluate(productId, operationType, quantity);
+    }
+    
+    /**
+     * 比较可用库存与阈值，更新预警集合，进入或解除预警时推送
+     * @param operationType 本次变动类型，为null时快照只更新可用库存
+     */
+    private void evaluate(Long productId, InventoryOperationType operationType, int quantity) {
+        int available = availableStocks.get(productId);
+        int threshold = thresholds.get(productId);
+        Inventory current = warnings.get(productId);
+        if (available > threshold) {
+            if (current != null) {
+                warnings.remove(productId);
+                publish(productId, available, threshold, false);
+            }
+            return;
+        }
+        if (current != null) {
+            warnings.put(productId, adjust(current, available, threshold, operationType, quantity));
+            return;
+        }
+        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
+        if (inventory == null) {
+            return;
+        }
+        inventory.setAvailableStock(available);
+        inventory.setWarningThreshold(threshold);
+        warnings.put(productId, inventory);
+        publish(productId, available, threshold, true);
+    }
+    
+    /**
+     * 从数据库加载单个商品
+     * @return 库存记录是否存在
+     */
+    private boolean load(Long productId) {
+        Inventory inventory = inventoryRepository.findByProductId(productId).orElse(null);
+        if (inventory == null) {
+            return false;
+        }
+        availableStocks.put(productId, inventory.getAvailableStock());
+        thresholds.put(productId, inventory.getWarningThreshold());
+        evaluate(productId, null, 0);
+        return true;
+    }
+    
+    private void publish(Long productId, int available, int threshold, boolean warning) {
+        if (warning) {
+            log.info("商品库存低于预警阈值: productId={}, availableStock={}, threshold={}", productId, available, threshold);
+        }
+        if (emitters.isEmpty()) {
+            return;
+        }
+        InventoryWarningVO event = InventoryWarningVO.builder()
+                .productId(productId)
+                .availableStock(available)
+                .warningThreshold(threshold)
+                .warning(warning)
+                .time(LocalDateTime.now())
+                .build();
+        for (SseEmitter emitter : emitters) {
+            send(emitter, SseEmitter.event().name(EVENT_WARNING).data(event));
+        }
+    }
+    
+    private void send(SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+        } catch (IOException | IllegalStateException e) {
+            emitters.remove(emitter);
+            emitter.completeWithError(e);
+        }
+    }
+    
+    private static int availableDelta(InventoryOperationType operationType, int quantity) {
+        switch (operationType) {
+            case LOCK:
+                return -quantity;
+            case RELEASE:
+            case ADD:
+            case SET:
+                return quantity;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * 生成更新后的快照，锁定库存与总库存按变动类型推算
+     */
+    private static Inventory adjust(Inventory inventory, int available, int threshold,
+                                    InventoryOperationType operationType, int quantity) {
+        Inventory adjusted = copy(inventory);
+        adjusted.setAvailableStock(available);
+        adjusted.setWarningThreshold(threshold);
+        if (operationType == null) {
+            return adjusted;
+        }
+        switch (operationType) {
+            case LOCK:
+                adjusted.setLockedStock(adjusted.getLockedStock() + quantity);
+                break;
+            case RELEASE:
+                adjusted.setLockedStock(adjusted.getLockedStock() - quantity);
+                break;
+            case DEDUCT:
+                adjusted.setLockedStock(adjusted.getLockedStock() - quantity);
+                adjusted.setTotalStock(adjusted.getTotalStock() - quantity);
+                break;
+            default:
+                adjusted.setTotalStock(adjusted.getTotalStock() + quantity);
+                break;
+        }
+        return adjusted;
+    }
+    
+    private static Inventory copy(Inventory inventory) {
+        return Inventory.builder()
+                .id(inventory.getId())
+                .productId(inventory.getProductId())
+                .totalStock(inventory.getTotalStock())
+                .availableStock(inventory.getAvailableStock())
+                .lockedStock(inventory.getLockedStock())
+                .warningThreshold(inventory.getWarningThreshold())
+                .bucketCount(inventory.getBucketCount())
+                .createTime(inventory.getCreateTime())
+                .updateTime(inventory.getUpdateTime())
+                .build();
+    }
+}
@@ -0,0 +1,179 @@
+package com.ecommerce.inventory.bucket;
+
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.entity.InventoryBucket;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.inventory.repository.InventoryBucketRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 热点商品库存分桶
+ * 修改桶数时库存均分到各桶、合并时原样收回；单桶足够时只改一个桶，不足时跨桶扣取，
+ * 合计不足时整体拒绝；定时均衡把倾斜的桶重新均分并写回汇总值。
+ * 每次操作在独立事务中执行，与线上调用方式一致
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:inventory_bucket;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockBucketManagerTest {
+    
+    private static final Long PRODUCT_ID = 1L;
+    
+    @Autowired
+    private StockBucketManager stockBucketManager;
+    
+    @Autowired
+    private InventoryRepository inventoryRepository;
+    
+    @Autowired
+    private InventoryBucketRepository bucketRepository;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @BeforeEach
+    void setUp() {
+        bucketRepository.deleteAll();
+        inventoryRepository.deleteAll();
+        stockBucketManager.refresh();
+    }
+    
+    @Test
+    void changeBucketCountSplitsAndMergesStock() {
+        createInventory(10, 3);
+        
+        changeBucketCount(4);
+        assertThat(stockBucketManager.isBucketed(PRODUCT_ID)).isTrue();
+        assertThat(bucketStocks()).containsExactly("3/1", "3/1", "2/1", "2/0");
+        Inventory inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertThat(inventory.getBucketCount()).isEqualTo(4);
+        assertThat(inventory.getTotalStock()).isEqualTo(13);
+        
+        changeBucketCount(1);
+        assertThat(stockBucketManager.isBucketed(PRODUCT_ID)).isFalse();
+        assertThat(bucketRepository.findViewsByProductId(PRODUCT_ID)).isEmpty();
+        inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertThat(inventory.getAvailableStock()).isEqualTo(10);
+        assertThat(inventory.getLockedStock()).isEqualTo(3);
+        
+        assertThatThrownBy(() -> changeBucketCount(0)).isInstanceOf(BusinessException.class);
+    }
+    
+    @Test
+    void operationsUseSingleBucketFirstAndFallBackAcrossBuckets() {
+        createInventory(7, 0);
+        changeBucketCount(3);
+        assertThat(bucketStocks()).containsExactly("3/0", "2/0", "2/0");
+        
+        // 只有0号桶够3件，无论订单落在哪个桶都由0号桶锁定
+        StockBucketManager.Change change = inTransaction(() -> stockBucketManager.lock(PRODUCT_ID, 3, 100L));
+        assertThat(change.getBefore()).isEqualTo(3);
+        assertThat(change.getAfter()).isZero();
+        assertThat(bucketStocks()).containsExactly("0/3", "2/0", "2/0");
+        
+        // 任何单桶都不够4件，跨桶扣取，日志记录全部桶合计
+        change = inTransaction(() -> stockBucketManager.lock(PRODUCT_ID, 4, 101L));
+        assertThat(change.getBefore()).isEqualTo(4);
+        assertThat(change.getAfter()).isZero();
+        assertThat(bucketStocks()).containsExactly("0/3", "0/2", "0/2");
+        
+        assertThatThrownBy(() -> inTransaction(() -> stockBucketManager.lock(PRODUCT_ID, 1, 102L)))
+                .isInstanceOf(BusinessException.class)
+                .hasMessage(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+        
+        change = inTransaction(() -> stockBucketManager.deduct(PRODUCT_ID, 5, 100L));
+        assertThat(change.getBefore()).isEqualTo(7);
+        assertThat(change.getAfter()).isEqualTo(2);
+        assertThat(bucketStocks()).containsExactly("0/0", "0/0", "0/2");
+        
+        change = inTransaction(() -> stockBucketManager.release(PRODUCT_ID, 2, 101L));
+        assertThat(change.getBefore()).isZero();
+        assertThat(change.getAfter()).isEqualTo(2);
+        assertThat(bucketStocks()).containsExactly("0/0", "0/0", "2/0");
+        
+        Inventory inventory = stockBucketManager.fill(inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow());
+        assertThat(inventory.getAvailableStock()).isEqualTo(2);
+        assertThat(inventory.getLockedStock()).isZero();
+        assertThat(stockBucketManager.sumAvailable(List.of(PRODUCT_ID, 2L))).containsOnlyKeys(PRODUCT_ID);
+    }
+    
+    @Test
+    void rebalanceEvensOutSkewedBucketsAndSyncsTotals() {
+        createInventory(10, 0);
+        changeBucketCount(3);
+        transactionTemplate.executeWithoutResult(status -> {
+            List<InventoryBucket> buckets = bucketRepository.findByProductIdForUpdate(PRODUCT_ID);
+            buckets.get(0).setAvailableStock(10);
+            buckets.get(1).setAvailableStock(0);
+            buckets.get(2).setAvailableStock(0);
+            buckets.get(2).setLockedStock(2);
+        });
+        
+        stockBucketManager.rebalance();
+        
+        assertThat(bucketStocks()).containsExactly("4/0", "3/0", "3/2");
+        Inventory inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertThat(inventory.getAvailableStock()).isEqualTo(10);
+        assertThat(inventory.getLockedStock()).isEqualTo(2);
+        assertThat(inventory.getTotalStock()).isEqualTo(12);
+    }
+    
+    private void createInventory(int available, int locked) {
+        inventoryRepository.save(Inventory.builder()
+                .productId(PRODUCT_ID)
+                .availableStock(available)
+                .lockedStock(locked)
+                .totalStock(available + locked)
+                .warningThreshold(0)
+                .bucketCount(1)
+                .build());
+    }
+    
+    private void changeBucketCount(int count) {
+        transactionTemplate.executeWithoutResult(status -> stockBucketManager.changeBucketCount(
+                inventoryRepository.findByProductIdForUpdate(PRODUCT_ID).orElseThrow(), count));
+    }
+    
+    private <T> T inTransaction(Supplier<T> action) {
+        return transactionTemplate.execute(status -> action.get());
+    }
+    
+    /**
+     * 各桶库存，格式为“可用/锁定”，按桶序号排列
+     */
+    private List<String> bucketStocks() {
+        return bucketRepository.findViewsByProductId(PRODUCT_ID).stream()
+                .map(view -> view.getAvailableStock() + "/" + view.getLockedStock())
+                .collect(Collectors.toList());
+    }
+    
+    @Configuration
+    @EntityScan(basePackageClasses = Inventory.class)
+    @EnableJpaRepositories(basePackageClasses = InventoryRepository.class)
+    @Import(StockBucketManager.class)
+    static class Config {
+    }
+}
@@ -0,0 +1,200 @@
+package com.ecommerce.inventory.engine;
+
+import com.ecommerce.common.entity.Inventory;
+import com.ecommerce.common.entity.InventoryCheckpoint;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.repository.InventoryCheckpointRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 内存库存引擎
+ * 批量锁定任一商品不足时整单回退且不写日志；写库按商品合并并推进检查点；
+ * 写库未完成时宕机，重启后只重放检查点之后的日志，每条变动恰好写库一次
+ */
+class StockEngineTest {
+    
+    @TempDir
+    Path dir;
+    
+    private InventoryRepository inventoryRepository;
+    private InventoryCheckpointRepository checkpointRepository;
+    private JdbcTemplate jdbcTemplate;
+    private InventoryCheckpoint checkpoint;
+    
+    /** 数据库中的库存：商品ID -> {可用, 锁定} */
+    private final Map<Long, int[]> database = new TreeMap<>();
+    
+    /** 写入的库存日志行数 */
+    private int loggedRows;
+    
+    /** 还能成功写库的批次数，用完后写库失败 */
+    private int allowedWrites = Integer.MAX_VALUE;
+    
+    @BeforeEach
+    void setUp() {
+        database.put(1L, new int[]{10, 0});
+        database.put(2L, new int[]{1, 0});
+        checkpoint = InventoryCheckpoint.builder()
+                .id(InventoryCheckpoint.ENGINE_ID)
+                .journalSeq(0L)
+                .build();
+        
+        inventoryRepository = mock(InventoryRepository.class);
+        when(inventoryRepository.findAll()).thenAnswer(invocation -> database.entrySet().stream()
+                .map(entry -> Inventory.builder()
+                        .productId(entry.getKey())
+                        .availableStock(entry.getValue()[0])
+                        .lockedStock(entry.getValue()[1])
+                        .totalStock(entry.getValue()[0] + entry.getValue()[1])
+                        .build())
+                .collect(Collectors.toList()));
+        
+        checkpointRepository = mock(InventoryCheckpointRepository.class);
+        when(checkpointRepository.findById(InventoryCheckpoint.ENGINE_ID))
+                .thenAnswer(invocation -> Optional.of(checkpoint));
+        when(checkpointRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            String sql = invocation.getArgument(0);
+            List<Object[]> args = invocation.getArgument(1);
+            if (sql.startsWith("UPDATE")) {
+                if (allowedWrites-- <= 0) {
+                    throw new DataAccessResourceFailureException("数据库不可用");
+                }
+                for (Object[] row : args) {
+                    int[] stock = database.get((Long) row[4]);
+                    stock[0] += (Integer) row[0];
+                    stock[1] += (Integer) row[1];
+                }
+            } else {
+                loggedRows += args.size();
+            }
+            return new int[args.size()];
+        });
+    }
+    
+    @Test
+    void batchLockRollsBackWholeOrderWhenAnyItemIsShort() throws IOException {
+        StockEngine engine = engine(Long.MAX_VALUE);
+        
+        List<InventoryLockVO> results = engine.batchLock(100L, new TreeMap<>(Map.of(1L, 5, 2L, 3)));
+        
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).getSuccess()).isFalse();
+        assertThat(results.get(0).getMessage()).isEqualTo(InventoryLockVO.MESSAGE_OTHER_ITEM_FAILED);
+        assertThat(results.get(1).getSuccess()).isFalse();
+        assertThat(results.get(1).getMessage()).isEqualTo(ResultCode.INVENTORY_NOT_ENOUGH.getMessage());
+        assertThat(results.get(1).getAvailableStock()).isEqualTo(1);
+        assertThat(engine.getAvailableStock(1L)).isEqualTo(10);
+        
+        // 回退的锁定没有写日志，也不会写库
+        engine.shutdown();
+        assertThat(Files.size(dir.resolve("journal.log"))).isZero();
+        assertThat(loggedRows).isZero();
+        assertThat(checkpoint.getJournalSeq()).isZero();
+    }
+    
+    @Test
+    void flushMergesChangesAndAdvancesCheckpoint() throws IOException {
+        StockEngine engine = engine(0);
+        
+        List<InventoryLockVO> results = engine.batchLock(100L, new TreeMap<>(Map.of(1L, 5, 2L, 1)));
+        assertThat(results.stream().allMatch(InventoryLockVO::getSuccess)).isTrue();
+        engine.deduct(1L, 5, 100L);
+        engine.release(2L, 1, 100L);
+        assertThat(engine.getAvailableStock(1L)).isEqualTo(5);
+        assertThat(database.get(1L)).containsExactly(10, 0);
+        
+        engine.flush();
+        
+        assertThat(database.get(1L)).containsExactly(5, 0);
+        assertThat(database.get(2L)).containsExactly(1, 0);
+        assertThat(loggedRows).isEqualTo(4);
+        assertThat(checkpoint.getJournalSeq()).isEqualTo(4L);
+        // 全部写库后日志被清空
+        assertThat(Files.size(dir.resolve("journal.log"))).isZero();
+        engine.shutdown();
+    }
+    
+    @Test
+    void recoveryReplaysOnlyEntriesAfterCheckpoint() throws IOException {
+        StockEngine crashed = engine(Long.MAX_VALUE);
+        crashed.lock(1L, 1, 100L);
+        crashed.lock(1L, 1, 101L);
+        crashed.lock(2L, 1, 102L);
+        
+        // 第一批（每批2条）写库成功，第二批失败后宕机
+        allowedWrites = 1;
+        crashed.flush();
+        assertThat(checkpoint.getJournalSeq()).isEqualTo(2L);
+        assertThat(database.get(1L)).containsExactly(8, 2);
+        assertThat(database.get(2L)).containsExactly(1, 0);
+        
+        allowedWrites = Integer.MAX_VALUE;
+        StockEngine restarted = engine(Long.MAX_VALUE);
+        assertThat(restarted.getAvailableStock(1L)).isEqualTo(8);
+        assertThat(restarted.getAvailableStock(2L)).isZero();
+        assertThat(database.get(2L)).containsExactly(0, 1);
+        assertThat(checkpoint.getJournalSeq()).isEqualTo(3L);
+        restarted.shutdown();
+        
+        // 日志仍保留全部记录，检查点之前的不再重放
+        StockEngine again = engine(Long.MAX_VALUE);
+        assertThat(again.getAvailableStock(1L)).isEqualTo(8);
+        assertThat(again.getAvailableStock(2L)).isZero();
+        assertThat(loggedRows).isEqualTo(3);
+        again.shutdown();
+    }
+    
+    /**
+     * 创建引擎并执行启动恢复，每批写库2条记录
+     * @param journalMaxBytes 全部写库后日志超过该大小才清空
+     */
+    private StockEngine engine(long journalMaxBytes) throws IOException {
+        StockEngine engine = new StockEngine(inventoryRepository, checkpointRepository, jdbcTemplate,
+                transactionTemplate(), new SimpleMeterRegistry(), dir.resolve("journal.log").toString(),
+                true, 2, journalMaxBytes);
+        engine.recover();
+        return engine;
+    }
+    
+    /**
+     * 直接执行回调的事务模板，回调抛出的异常原样抛出
+     */
+    private static TransactionTemplate transactionTemplate() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        return transactionTemplate;
+    }
+}
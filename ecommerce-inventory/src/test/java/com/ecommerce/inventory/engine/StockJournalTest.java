@@ -0,0 +1,160 @@
+package com.ecommerce.inventory.engine;
+
+import com.ecommerce.common.enums.InventoryOperationType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 库存引擎预写日志
+ * 记录编码后可原样恢复，恢复只返回检查点之后的记录；
+ * 写了一半或校验失败的尾部被截断，之后的追加从截断处继续且序号连续
+ */
+class StockJournalTest {
+    
+    @TempDir
+    Path dir;
+    
+    @Test
+    void recoversAppendedEntriesAfterCheckpoint() throws IOException {
+        Path path = dir.resolve("journal.log");
+        try (StockJournal journal = new StockJournal(path, true)) {
+            assertThat(journal.recover(0)).isEmpty();
+            assertThat(journal.append(new StockJournal.Entry(1L, 100L, InventoryOperationType.LOCK, 3, 10, 7)))
+                    .isEqualTo(1L);
+            assertThat(journal.append(new StockJournal.Entry(2L, null, InventoryOperationType.SET, -5, 20, 15)))
+                    .isEqualTo(2L);
+            long seq = journal.append(new StockJournal.Entry(1L, 100L, InventoryOperationType.DEDUCT, 3, 3, 0));
+            assertThat(seq).isEqualTo(3L);
+            journal.sync(seq);
+        }
+        assertThat(Files.size(path)).isEqualTo(3L * StockJournal.RECORD_SIZE);
+        
+        try (StockJournal journal = new StockJournal(path, true)) {
+            List<StockJournal.Entry> entries = journal.recover(0);
+            assertThat(entries).hasSize(3);
+            
+            StockJournal.Entry lock = entries.get(0);
+            assertThat(lock.getSeq()).isEqualTo(1L);
+            assertThat(lock.getProductId()).isEqualTo(1L);
+            assertThat(lock.getOrderId()).isEqualTo(100L);
+            assertThat(lock.getType()).isEqualTo(InventoryOperationType.LOCK);
+            assertThat(lock.getQuantity()).isEqualTo(3);
+            assertThat(lock.getBeforeStock()).isEqualTo(10);
+            assertThat(lock.getAfterStock()).isEqualTo(7);
+            assertThat(lock.getTime()).isGreaterThan(0L);
+            assertThat(lock.availableDelta()).isEqualTo(-3);
+            assertThat(lock.lockedDelta()).isEqualTo(3);
+            
+            StockJournal.Entry set = entries.get(1);
+            assertThat(set.getOrderId()).isNull();
+            assertThat(set.getQuantity()).isEqualTo(-5);
+            assertThat(set.availableDelta()).isEqualTo(-5);
+            assertThat(set.lockedDelta()).isZero();
+            
+            assertThat(entries.get(2).getType()).isEqualTo(InventoryOperationType.DEDUCT);
+            assertThat(entries.get(2).availableDelta()).isZero();
+            assertThat(entries.get(2).lockedDelta()).isEqualTo(-3);
+            
+            // 恢复后追加的序号接在已有记录之后
+            assertThat(journal.append(new StockJournal.Entry(3L, null, InventoryOperationType.ADD, 1, 0, 1)))
+                    .isEqualTo(4L);
+        }
+        
+        try (StockJournal journal = new StockJournal(path, false)) {
+            List<StockJournal.Entry> entries = journal.recover(2);
+            assertThat(entries).hasSize(2);
+            assertThat(entries.get(0).getSeq()).isEqualTo(3L);
+            assertThat(entries.get(1).getSeq()).isEqualTo(4L);
+        }
+    }
+    
+    @Test
+    void truncatesPartiallyWrittenTail() throws IOException {
+        Path path = dir.resolve("journal.log");
+        appendLocks(path, 3);
+        // 模拟写第4条记录时宕机：只落盘了一部分
+        appendLocks(path, 1);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(3L * StockJournal.RECORD_SIZE + 20);
+        }
+        
+        try (StockJournal journal = new StockJournal(path, true)) {
+            assertThat(journal.recover(0)).hasSize(3);
+            assertThat(Files.size(path)).isEqualTo(3L * StockJournal.RECORD_SIZE);
+            assertThat(journal.append(new StockJournal.Entry(9L, 900L, InventoryOperationType.LOCK, 1, 1, 0)))
+                    .isEqualTo(4L);
+        }
+        
+        try (StockJournal journal = new StockJournal(path, true)) {
+            List<StockJournal.Entry> entries = journal.recover(0);
+            assertThat(entries).hasSize(4);
+            assertThat(entries.get(3).getProductId()).isEqualTo(9L);
+        }
+    }
+    
+    @Test
+    void truncatesFromFirstCorruptedRecord() throws IOException {
+        Path path = dir.resolve("journal.log");
+        appendLocks(path, 3);
+        // 第2条记录的数量字段被改写，CRC校验失败
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7F}), StockJournal.RECORD_SIZE + 26L);
+        }
+        
+        try (StockJournal journal = new StockJournal(path, true)) {
+            List<StockJournal.Entry> entries = journal.recover(0);
+            assertThat(entries).hasSize(1);
+            assertThat(entries.get(0).getSeq()).isEqualTo(1L);
+            assertThat(Files.size(path)).isEqualTo(StockJournal.RECORD_SIZE);
+            assertThat(journal.append(new StockJournal.Entry(1L, 1L, InventoryOperationType.RELEASE, 1, 0, 1)))
+                    .isEqualTo(2L);
+        }
+    }
+    
+    @Test
+    void clearsFileOnlyWhenEverythingIsFlushed() throws IOException {
+        Path path = dir.resolve("journal.log");
+        try (StockJournal journal = new StockJournal(path, true)) {
+            journal.recover(0);
+            journal.append(new StockJournal.Entry(1L, 1L, InventoryOperationType.LOCK, 1, 5, 4));
+            journal.append(new StockJournal.Entry(1L, 2L, InventoryOperationType.LOCK, 1, 4, 3));
+            
+            assertThat(journal.truncateIfFlushed(1, 0)).isFalse();
+            assertThat(journal.truncateIfFlushed(2, Long.MAX_VALUE)).isFalse();
+            assertThat(journal.truncateIfFlushed(2, 0)).isTrue();
+            assertThat(Files.size(path)).isZero();
+            
+            // 清空后序号继续递增，检查点之后的记录不会与已写库的序号重复
+            assertThat(journal.append(new StockJournal.Entry(1L, 3L, InventoryOperationType.LOCK, 1, 3, 2)))
+                    .isEqualTo(3L);
+        }
+        
+        try (StockJournal journal = new StockJournal(path, true)) {
+            List<StockJournal.Entry> entries = journal.recover(2);
+            assertThat(entries).hasSize(1);
+            assertThat(entries.get(0).getSeq()).isEqualTo(3L);
+        }
+    }
+    
+    /**
+     * 打开日志并追加若干条锁定记录
+     */
+    private static void appendLocks(Path path, int count) throws IOException {
+        try (StockJournal journal = new StockJournal(path, true)) {
+            journal.recover(0);
+            for (int i = 0; i < count; i++) {
+                journal.append(new StockJournal.Entry(1L, (long) i, InventoryOperationType.LOCK, 1, 10, 9));
+            }
+        }
+    }
+}
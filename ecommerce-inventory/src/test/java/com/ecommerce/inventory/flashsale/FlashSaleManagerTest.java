@@ -0,0 +1,268 @@
+package com.ecommerce.inventory.flashsale;
+
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.FlashSale;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.common.vo.InventoryLockVO;
+import com.ecommerce.inventory.log.InventoryLogWriter;
+import com.ecommerce.inventory.repository.FlashSaleRepository;
+import com.ecommerce.inventory.repository.InventoryRepository;
+import com.ecommerce.inventory.warning.StockWarningMonitor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 秒杀配额管理
+ * 按库存服务的调用顺序并发抢购（事务前预取、拦截售罄，事务内抢购并登记，随机回滚）：
+ * 提交的数量不超过配额，售出、本节点剩余与活动剩余之和始终等于配额，每个用户不超过限购；
+ * 回滚退回的配额可以被其他用户再次抢购
+ */
+class FlashSaleManagerTest {
+    
+    private static final Long PRODUCT_ID = 1L;
+    
+    private FlashSale sale;
+    private FlashSaleManager flashSaleManager;
+    
+    /** 已提交、交给批量写库的数量 */
+    private final AtomicLong materialized = new AtomicLong();
+    
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+    
+    @Test
+    void concurrentPurchasesNeverOversellAndRespectPerUserLimit() throws Exception {
+        int quota = 200;
+        int perUserLimit = 3;
+        startSale(quota, perUserLimit, 10);
+        
+        int threads = 16;
+        int attempts = 400;
+        int users = 100;
+        Map<Long, AtomicInteger> committedByUser = new ConcurrentHashMap<>();
+        AtomicLong orderIds = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < attempts; i++) {
+                    long userId = 1 + random.nextInt(users);
+                    int quantity = 1 + random.nextInt(2);
+                    // 约五分之一的抢购事务回滚
+                    boolean commit = random.nextInt(5) != 0;
+                    if (purchase(orderIds.incrementAndGet(), userId, quantity, commit)) {
+                        committedByUser.computeIfAbsent(userId, id -> new AtomicInteger()).addAndGet(quantity);
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        
+        long sold = materialized.get();
+        assertThat(sold).isGreaterThan(0L);
+        assertThat(sold).isLessThanOrEqualTo(quota);
+        assertThat(committedByUser.values().stream().mapToLong(AtomicInteger::get).sum()).isEqualTo(sold);
+        for (AtomicInteger bought : committedByUser.values()) {
+            assertThat(bought.get()).isLessThanOrEqualTo(perUserLimit);
+        }
+        
+        // 停机把本节点剩余配额退回活动，此时活动剩余即为本节点剩余与活动剩余之和
+        flashSaleManager.shutdown();
+        assertThat(sold + sale.getRemaining()).isEqualTo(quota);
+    }
+    
+    @Test
+    void rolledBackPurchaseReturnsQuotaToOtherBuyers() {
+        startSale(2, 2, 10);
+        List<InventoryDTO> items = items(2);
+        
+        flashSaleManager.prefetch(items);
+        Map<Long, Integer> acquired = begin(1L, 1L);
+        assertThat(flashSaleManager.tryAcquire(PRODUCT_ID, 1L, 2)).isEqualTo(ResultCode.SUCCESS);
+        acquired.put(PRODUCT_ID, 2);
+        assertThat(sale.getRemaining()).isZero();
+        
+        // 本节点和活动都已领完，后续请求在事务前直接拒绝
+        List<InventoryLockVO> rejected = flashSaleManager.rejectSoldOut(items);
+        assertThat(rejected).hasSize(1);
+        assertThat(rejected.get(0).getMessage()).isEqualTo(ResultCode.FLASH_SALE_SOLD_OUT.getMessage());
+        
+        complete(false);
+        assertThat(flashSaleManager.rejectSoldOut(items)).isNull();
+        assertThat(purchase(2L, 2L, 2, true)).isTrue();
+        assertThat(purchase(3L, 1L, 1, true)).isFalse();
+        
+        assertThat(materialized.get()).isEqualTo(2L);
+        flashSaleManager.shutdown();
+        assertThat(sale.getRemaining()).isZero();
+    }
+    
+    @Test
+    void perUserLimitCountsInFlightPurchasesAndRollbacks() {
+        startSale(10, 2, 10);
+        
+        flashSaleManager.prefetch(items(2));
+        Map<Long, Integer> acquired = begin(1L, 1L);
+        assertThat(flashSaleManager.tryAcquire(PRODUCT_ID, 1L, 2)).isEqualTo(ResultCode.SUCCESS);
+        acquired.put(PRODUCT_ID, 2);
+        // 未提交的购买也计入限购
+        assertThat(flashSaleManager.tryAcquire(PRODUCT_ID, 1L, 1)).isEqualTo(ResultCode.FLASH_SALE_LIMIT_EXCEEDED);
+        assertThat(flashSaleManager.tryAcquire(PRODUCT_ID, null, 1)).isEqualTo(ResultCode.FLASH_SALE_LIMIT_EXCEEDED);
+        complete(false);
+        
+        assertThat(purchase(2L, 1L, 2, true)).isTrue();
+        assertThat(purchase(3L, 1L, 1, true)).isFalse();
+        assertThat(purchase(4L, 2L, 2, true)).isTrue();
+        
+        flashSaleManager.shutdown();
+        assertThat(materialized.get()).isEqualTo(4L);
+        assertThat(sale.getRemaining()).isEqualTo(6);
+    }
+    
+    /**
+     * 开启秒杀活动并在本节点生效
+     */
+    private void startSale(int quota, int perUserLimit, int leaseSize) {
+        sale = FlashSale.builder()
+                .id(10L)
+                .productId(PRODUCT_ID)
+                .quota(quota)
+                .remaining(quota)
+                .perUserLimit(perUserLimit)
+                .status(FlashSale.STATUS_ACTIVE)
+                .build();
+        FlashSaleRepository flashSaleRepository = mock(FlashSaleRepository.class);
+        when(flashSaleRepository.findByStatus(FlashSale.STATUS_ACTIVE)).thenReturn(List.of(sale));
+        when(flashSaleRepository.findByIdForUpdate(sale.getId())).thenReturn(Optional.of(sale));
+        when(flashSaleRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        
+        FlashSaleMaterializer flashSaleMaterializer = mock(FlashSaleMaterializer.class);
+        doAnswer(invocation -> {
+            Map<Long, Integer> quantities = invocation.getArgument(1);
+            quantities.values().forEach(materialized::addAndGet);
+            return null;
+        }).when(flashSaleMaterializer).add(anyLong(), any());
+        
+        flashSaleManager = new FlashSaleManager(flashSaleRepository, mock(InventoryRepository.class),
+                mock(InventoryLogWriter.class), flashSaleMaterializer, mock(StockWarningMonitor.class),
+                new LockingTransactionManager(), new SimpleMeterRegistry(), leaseSize);
+        flashSaleManager.refresh();
+        assertThat(flashSaleManager.isFlashSale(PRODUCT_ID)).isTrue();
+    }
+    
+    /**
+     * 按库存服务的调用顺序抢购一次：事务前预取并拦截售罄，事务内登记并抢购，最后提交或回滚
+     * @param commit 抢购成功后是否提交，否则回滚
+     * @return 是否抢购成功并提交
+     */
+    private boolean purchase(long orderId, long userId, int quantity, boolean commit) {
+        List<InventoryDTO> items = items(quantity);
+        flashSaleManager.prefetch(items);
+        if (flashSaleManager.rejectSoldOut(items) != null) {
+            return false;
+        }
+        Map<Long, Integer> acquired = begin(orderId, userId);
+        boolean committed = false;
+        try {
+            if (flashSaleManager.tryAcquire(PRODUCT_ID, userId, quantity) == ResultCode.SUCCESS) {
+                acquired.put(PRODUCT_ID, quantity);
+                committed = commit;
+            }
+        } finally {
+            complete(committed);
+        }
+        return committed;
+    }
+    
+    /**
+     * 开启模拟的库存事务并登记抢购
+     * @return 抢到的数量，回滚前仍可继续添加
+     */
+    private Map<Long, Integer> begin(long orderId, long userId) {
+        TransactionSynchronizationManager.initSynchronization();
+        Map<Long, Integer> acquired = new HashMap<>();
+        flashSaleManager.settle(orderId, userId, acquired);
+        return acquired;
+    }
+    
+    /**
+     * 结束模拟的库存事务
+     */
+    private static void complete(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        int status = commit ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK;
+        synchronizations.forEach(synchronization -> synchronization.afterCompletion(status));
+    }
+    
+    private static List<InventoryDTO> items(int quantity) {
+        return List.of(InventoryDTO.builder().productId(PRODUCT_ID).quantity(quantity).build());
+    }
+    
+    /**
+     * 独立事务串行执行的事务管理器，相当于活动行上的悲观锁
+     */
+    private static final class LockingTransactionManager implements PlatformTransactionManager {
+        
+        private final ReentrantLock lock = new ReentrantLock();
+        
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            lock.lock();
+            return new SimpleTransactionStatus();
+        }
+        
+        @Override
+        public void commit(TransactionStatus status) {
+            lock.unlock();
+        }
+        
+        @Override
+        public void rollback(TransactionStatus status) {
+            lock.unlock();
+        }
+    }
+}
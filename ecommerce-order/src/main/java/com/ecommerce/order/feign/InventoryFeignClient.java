@@ -1,11 +1,15 @@
 package com.ecommerce.order.feign;
 
+import com.ecommerce.common.dto.InventoryBatchLockDTO;
 import com.ecommerce.common.dto.InventoryDTO;
 import com.ecommerce.common.result.Result;
+import com.ecommerce.common.vo.InventoryLockVO;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 
+import java.util.List;
+
 /**
  * 库存服务Feign客户端
  */
@@ -18,6 +22,12 @@ public interface InventoryFeignClient {
     @PostMapping("/inventory/lock")
     Result<Boolean> lockStock(@RequestBody InventoryDTO dto);
     
+    /**
+     * 批量锁定订单库存
+     */
+    @PostMapping("/inventory/lock/batch")
+    Result<List<InventoryLockVO>> batchLockStock(@RequestBody InventoryBatchLockDTO dto);
+    
     /**
      * 扣减库存
      */
@@ -8,6 +8,8 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import java.util.List;
+
 /**
  * 商品服务Feign客户端
  */
@@ -21,9 +23,17 @@ public interface ProductFeignClient {
     Result<Product> getProductEntityById(@PathVariable("id") Long id);
     
     /**
-     * 增加销量
+     * 批量获取商品实体
+     */
+    @GetMapping("/product/entities")
+    Result<List<Product>> getProductEntitiesByIds(@RequestParam("ids") List<Long> ids);
+    
+    /**
+     * 增加销量，同一订单同一商品只计入一次
      */
     @PutMapping("/product/{id}/sales")
-    Result<Void> increaseSales(@PathVariable("id") Long id, @RequestParam("quantity") Integer quantity);
+    Result<Void> increaseSales(@PathVariable("id") Long id,
+                               @RequestParam("orderId") Long orderId,
+                               @RequestParam("quantity") Integer quantity);
 }
 
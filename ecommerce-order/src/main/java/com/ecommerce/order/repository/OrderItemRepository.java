@@ -4,6 +4,7 @@ import com.ecommerce.common.entity.OrderItem;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -17,6 +18,11 @@ public interface OrderItemRepository extends JpaRepository<OrderItem, Long> {
      */
     List<OrderItem> findByOrderId(Long orderId);
     
+    /**
+     * 根据订单ID列表批量查找订单商品
+     */
+    List<OrderItem> findByOrderIdIn(Collection<Long> orderIds);
+    
     /**
      * 根据订单号查找订单商品
      */
@@ -0,0 +1,40 @@
+package com.ecommerce.order.repository;
+
+import com.ecommerce.common.entity.OrderOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 订单发件箱数据访问接口
+ */
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutbox, Long> {
+    
+    /**
+     * 查找到期待投递的事件（带悲观锁，跳过其他节点已锁定的行）
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "javax.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT o FROM OrderOutbox o WHERE o.status = ?1 AND o.nextRetryTime <= ?2 ORDER BY o.id")
+    List<OrderOutbox> findDueForUpdate(Integer status, LocalDateTime now, Pageable pageable);
+    
+    /**
+     * 统计指定状态的事件数
+     */
+    long countByStatus(Integer status);
+    
+    /**
+     * 获取最早一条指定状态事件的创建时间
+     */
+    @Query("SELECT MIN(o.createTime) FROM OrderOutbox o WHERE o.status = ?1")
+    LocalDateTime findOldestCreateTime(Integer status);
+}
@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -51,16 +52,75 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     @Query("UPDATE Order o SET o.status = ?2, o.updateTime = ?3 WHERE o.id = ?1")
     void updateStatus(Long id, OrderStatus status, LocalDateTime updateTime);
     
+    /**
+     * 条件更新订单状态：仅当当前状态属于允许的前驱状态时更新
+     * @return 影响行数，0表示状态不满足或订单不存在
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = ?2, o.updateTime = ?4 WHERE o.id = ?1 AND o.status IN ?3")
+    int compareAndSetStatus(Long id, OrderStatus status, Collection<OrderStatus> expected, LocalDateTime updateTime);
+    
+    /**
+     * 条件更新为已支付
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.ecommerce.common.enums.OrderStatus.PAID, o.payTime = ?3, o.updateTime = ?3 WHERE o.id = ?1 AND o.status IN ?2")
+    int updateToPaid(Long id, Collection<OrderStatus> expected, LocalDateTime time);
+    
+    /**
+     * 条件更新为已发货
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.ecommerce.common.enums.OrderStatus.SHIPPED, o.shipTime = ?3, o.updateTime = ?3 WHERE o.id = ?1 AND o.status IN ?2")
+    int updateToShipped(Long id, Collection<OrderStatus> expected, LocalDateTime time);
+    
+    /**
+     * 条件更新为已收货
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.ecommerce.common.enums.OrderStatus.RECEIVED, o.receiveTime = ?3, o.updateTime = ?3 WHERE o.id = ?1 AND o.status IN ?2")
+    int updateToReceived(Long id, Collection<OrderStatus> expected, LocalDateTime time);
+    
+    /**
+     * 条件更新为已完成
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.ecommerce.common.enums.OrderStatus.COMPLETED, o.completeTime = ?3, o.updateTime = ?3 WHERE o.id = ?1 AND o.status IN ?2")
+    int updateToCompleted(Long id, Collection<OrderStatus> expected, LocalDateTime time);
+    
+    /**
+     * 条件更新为已取消
+     */
+    @Modifying
+    @Query("UPDATE Order o SET o.status = com.ecommerce.common.enums.OrderStatus.CANCELLED, o.cancelTime = ?3, o.updateTime = ?3 WHERE o.id = ?1 AND o.status IN ?2")
+    int updateToCancelled(Long id, Collection<OrderStatus> expected, LocalDateTime time);
+    
     /**
      * 查找超时未支付的订单
      */
     @Query("SELECT o FROM Order o WHERE o.status = ?1 AND o.createTime < ?2")
     List<Order> findTimeoutOrders(OrderStatus status, LocalDateTime timeout);
     
+    /**
+     * 按ID游标分页查找超时未支付订单，只取ID和创建时间
+     */
+    @Query("SELECT o.id AS id, o.createTime AS createTime FROM Order o WHERE o.status = ?1 AND o.createTime < ?2 AND o.id > ?3 ORDER BY o.id")
+    List<OrderTimeoutView> findTimeoutOrders(OrderStatus status, LocalDateTime timeout, Long afterId, Pageable pageable);
+    
     /**
      * 获取总收入（已支付/已完成订单的总金额）
      */
     @Query("SELECT COALESCE(SUM(o.payAmount), 0) FROM Order o WHERE o.status IN (com.ecommerce.common.enums.OrderStatus.PAID, com.ecommerce.common.enums.OrderStatus.SHIPPED, com.ecommerce.common.enums.OrderStatus.RECEIVED, com.ecommerce.common.enums.OrderStatus.COMPLETED)")
     java.math.BigDecimal getTotalRevenue();
+    
+    /**
+     * 超时订单投影
+     */
+    interface OrderTimeoutView {
+        
+        Long getId();
+        
+        LocalDateTime getCreateTime();
+    }
 }
 
@@ -0,0 +1,219 @@
+package com.ecommerce.order.scheduler;
+
+import com.ecommerce.common.dto.InventoryDTO;
+import com.ecommerce.common.entity.OrderOutbox;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.Result;
+import com.ecommerce.order.feign.InventoryFeignClient;
+import com.ecommerce.order.feign.ProductFeignClient;
+import com.ecommerce.order.repository.OrderOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 订单发件箱投递任务
+ * 分批认领到期事件并调用库存/商品服务（扣减库存、释放库存、增加销量），失败按指数退避重试。
+ * 每个事件投递后立即单独保存结果，租期将满时停止投递本批剩余事件；租期过后其他节点可能重复投递，
+ * 下游按(订单ID, 商品ID, 操作)幂等处理，版本号保证过期的投递结果不会覆盖新的结果。
+ * 通过 order.outbox.lag / order.outbox.pending 等指标暴露投递积压情况
+ */
+@Slf4j
+@Component
+public class OrderOutboxRelay {
+    
+    /** 每批投递的事件数 */
+    private static final int BATCH_SIZE = 20;
+    
+    /** 最大重试次数，超过后标记为投递失败 */
+    private static final int MAX_RETRIES = 10;
+    
+    /** 认领租期，节点宕机时到期后由其他节点重新投递 */
+    private static final long LEASE_SECONDS = 60;
+    
+    /** 租期剩余不足该时长时不再开始投递新事件，需大于单次远程调用的超时时间 */
+    private static final long LEASE_MARGIN_SECONDS = 15;
+    
+    /** 最大退避间隔 */
+    private static final long MAX_BACKOFF_SECONDS = 300;
+    
+    private final OrderOutboxRepository outboxRepository;
+    private final InventoryFeignClient inventoryFeignClient;
+    private final ProductFeignClient productFeignClient;
+    private final TransactionTemplate transactionTemplate;
+    
+    /** 最早待投递事件距今的毫秒数 */
+    private final AtomicLong lagMillis = new AtomicLong();
+    
+    /** 待投递事件数 */
+    private final AtomicLong pendingCount = new AtomicLong();
+    
+    private final Counter deliveredCounter;
+    private final Counter retriedCounter;
+    private final Counter failedCounter;
+    
+    public OrderOutboxRelay(OrderOutboxRepository outboxRepository,
+                            InventoryFeignClient inventoryFeignClient,
+                            ProductFeignClient productFeignClient,
+                            TransactionTemplate transactionTemplate,
+                            MeterRegistry meterRegistry) {
+        this.outboxRepository = outboxRepository;
+        this.inventoryFeignClient = inventoryFeignClient;
+        this.productFeignClient = productFeignClient;
+        this.transactionTemplate = transactionTemplate;
+        
+        Gauge.builder("order.outbox.lag", lagMillis, value -> value.get() / 1000.0)
+                .description("最早待投递事件的积压时长（秒）")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder("order.outbox.pending", pendingCount, AtomicLong::get)
+                .description("待投递事件数")
+                .register(meterRegistry);
+        this.deliveredCounter = Counter.builder("order.outbox.delivered").register(meterRegistry);
+        this.retriedCounter = Counter.builder("order.outbox.retried").register(meterRegistry);
+        this.failedCounter = Counter.builder("order.outbox.failed").register(meterRegistry);
+    }
+    
+    /**
+     * 投递到期事件，一次调度内连续处理直到没有满批
+     */
+    @Scheduled(fixedDelay = 500)
+    public void relay() {
+        List<OrderOutbox> batch;
+        boolean leaseExhausted = false;
+        do {
+            batch = claimBatch();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(LEASE_SECONDS - LEASE_MARGIN_SECONDS);
+            for (OrderOutbox event : batch) {
+                if (System.nanoTime() - deadline > 0) {
+                    // 剩余事件不再投递，租期结束后重新认领
+                    log.warn("发件箱认领租期将满，剩余事件稍后投递: nextId={}", event.getId());
+                    leaseExhausted = true;
+                    break;
+                }
+                deliver(event);
+                save(event);
+            }
+        } while (!leaseExhausted && batch.size() == BATCH_SIZE);
+        
+        refreshLag();
+    }
+    
+    /**
+     * 认领一批到期事件：短事务内锁定并顺延下次投递时间，其他节点在租期内不会重复投递
+     */
+    private List<OrderOutbox> claimBatch() {
+        List<OrderOutbox> batch = transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<OrderOutbox> due = outboxRepository.findDueForUpdate(
+                    OrderOutbox.STATUS_PENDING, now, PageRequest.of(0, BATCH_SIZE));
+            for (OrderOutbox event : due) {
+                event.setNextRetryTime(now.plusSeconds(LEASE_SECONDS));
+            }
+            return outboxRepository.saveAll(due);
+        });
+        return batch != null ? batch : Collections.emptyList();
+    }
+    
+    /**
+     * 保存单个事件的投递结果；版本冲突说明租期已过、事件已被其他节点重新认领，以对方的结果为准
+     */
+    private void save(OrderOutbox event) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> outboxRepository.save(event));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            log.warn("发件箱事件已被重新认领，丢弃本次投递结果: id={}, orderId={}, type={}",
+                    event.getId(), event.getOrderId(), event.getEventType());
+        }
+    }
+    
+    /**
+     * 投递单个事件并更新其状态（由调用方保存）
+     */
+    private void deliver(OrderOutbox event) {
+        try {
+            switch (event.getEventType()) {
+                case DEDUCT_STOCK:
+                    InventoryDTO inventoryDTO = InventoryDTO.builder()
+                            .productId(event.getProductId())
+                            .quantity(event.getQuantity())
+                            .orderId(event.getOrderId())
+                            .build();
+                    Result<Boolean> deductResult = inventoryFeignClient.deductStock(inventoryDTO);
+                    if (!deductResult.isSuccess() || !Boolean.TRUE.equals(deductResult.getData())) {
+                        throw new BusinessException(deductResult.getCode(), deductResult.getMessage());
+                    }
+                    break;
+                case RELEASE_STOCK:
+                    Result<Boolean> releaseResult = inventoryFeignClient.releaseStock(InventoryDTO.builder()
+                            .productId(event.getProductId())
+                            .quantity(event.getQuantity())
+                            .orderId(event.getOrderId())
+                            .build());
+                    if (!releaseResult.isSuccess() || !Boolean.TRUE.equals(releaseResult.getData())) {
+                        throw new BusinessException(releaseResult.getCode(), releaseResult.getMessage());
+                    }
+                    break;
+                case INCREASE_SALES:
+                    Result<Void> salesResult = productFeignClient.increaseSales(
+                            event.getProductId(), event.getOrderId(), event.getQuantity());
+                    if (!salesResult.isSuccess()) {
+                        throw new BusinessException(salesResult.getCode(), salesResult.getMessage());
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("未知事件类型: " + event.getEventType());
+            }
+            
+            event.setStatus(OrderOutbox.STATUS_DELIVERED);
+            event.setLastError(null);
+            deliveredCounter.increment();
+        } catch (Exception e) {
+            int retryCount = event.getRetryCount() + 1;
+            event.setRetryCount(retryCount);
+            event.setLastError(truncate(e.getMessage()));
+            
+            if (retryCount >= MAX_RETRIES) {
+                event.setStatus(OrderOutbox.STATUS_FAILED);
+                failedCounter.increment();
+                log.error("发件箱事件投递失败，已放弃: id={}, orderId={}, type={}",
+                        event.getId(), event.getOrderId(), event.getEventType(), e);
+            } else {
+                long backoff = Math.min(1L << retryCount, MAX_BACKOFF_SECONDS);
+                event.setNextRetryTime(LocalDateTime.now().plusSeconds(backoff));
+                retriedCounter.increment();
+                log.warn("发件箱事件投递失败，{}秒后重试: id={}, orderId={}, type={}, error={}",
+                        backoff, event.getId(), event.getOrderId(), event.getEventType(), e.getMessage());
+            }
+        }
+    }
+    
+    /**
+     * 刷新积压指标
+     */
+    private void refreshLag() {
+        pendingCount.set(outboxRepository.countByStatus(OrderOutbox.STATUS_PENDING));
+        LocalDateTime oldest = outboxRepository.findOldestCreateTime(OrderOutbox.STATUS_PENDING);
+        lagMillis.set(oldest != null ? Math.max(Duration.between(oldest, LocalDateTime.now()).toMillis(), 0) : 0);
+    }
+    
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 500 ? message.substring(0, 500) : message;
+    }
+}
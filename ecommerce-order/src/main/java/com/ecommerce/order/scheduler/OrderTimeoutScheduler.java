@@ -0,0 +1,129 @@
+package com.ecommerce.order.scheduler;
+
+import com.ecommerce.common.enums.OrderStatus;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.structure.TimingWheel;
+import com.ecommerce.order.repository.OrderRepository;
+import com.ecommerce.order.service.OrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 未支付订单超时取消调度器
+ * 每个订单创建时注册一个定时器，到期后走cancelOrder取消并释放库存；
+ * 启动时分页扫描一次待支付订单重建时间轮，运行期间不再轮询订单表
+ */
+@Slf4j
+@Component
+public class OrderTimeoutScheduler {
+    
+    /** 每页加载的订单数 */
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    
+    /** 取消失败（如库存服务不可用）后的重试间隔 */
+    private static final long RETRY_DELAY_MS = 60_000L;
+    
+    private final OrderRepository orderRepository;
+    private final OrderService orderService;
+    private final long timeoutMs;
+    
+    /** 1秒一格，每级64格，共3级（约72小时） */
+    private final TimingWheel timingWheel = new TimingWheel(1000L, 6, 3, System.currentTimeMillis());
+    
+    public OrderTimeoutScheduler(OrderRepository orderRepository,
+                                 @Lazy OrderService orderService,
+                                 @Value("${order.timeout.minutes:30}") long timeoutMinutes) {
+        this.orderRepository = orderRepository;
+        this.orderService = orderService;
+        this.timeoutMs = timeoutMinutes * 60_000L;
+    }
+    
+    /**
+     * 注册订单支付超时定时器
+     * 在事务中调用时，事务提交后才注册，回滚的订单不会被注册
+     * @param orderId 订单ID
+     * @param createTime 订单创建时间
+     */
+    public void register(Long orderId, LocalDateTime createTime) {
+        long deadline = toEpochMilli(createTime) + timeoutMs;
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    timingWheel.add(orderId, deadline);
+                }
+            });
+        } else {
+            timingWheel.add(orderId, deadline);
+        }
+    }
+    
+    /**
+     * 启动后按ID游标分页加载所有待支付订单
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        long lastId = 0L;
+        int total = 0;
+        while (true) {
+            List<OrderRepository.OrderTimeoutView> page = orderRepository.findTimeoutOrders(
+                    OrderStatus.PENDING_PAYMENT, now, lastId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            for (OrderRepository.OrderTimeoutView view : page) {
+                timingWheel.add(view.getId(), toEpochMilli(view.getCreateTime()) + timeoutMs);
+            }
+            total += page.size();
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        log.info("订单超时时间轮重建完成: pending={}", total);
+    }
+    
+    /**
+     * 推进时间轮并取消到期订单
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void tick() {
+        List<Long> expired = new ArrayList<>();
+        timingWheel.advance(System.currentTimeMillis(), expired::add);
+        
+        for (Long orderId : expired) {
+            try {
+                orderService.cancelOrder(orderId);
+                log.info("订单支付超时已取消: orderId={}", orderId);
+            } catch (BusinessException e) {
+                // 已支付、已取消或不存在的订单直接忽略
+                log.debug("订单无需超时取消: orderId={}, reason={}", orderId, e.getMessage());
+            } catch (Exception e) {
+                log.warn("订单超时取消失败，稍后重试: orderId={}", orderId, e);
+                timingWheel.add(orderId, System.currentTimeMillis() + RETRY_DELAY_MS);
+            }
+        }
+    }
+    
+    /**
+     * 获取待触发的定时器数量
+     */
+    public int getPendingCount() {
+        return timingWheel.size();
+    }
+    
+    private static long toEpochMilli(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -1,26 +1,32 @@
 package com.ecommerce.order.service.impl;
 
+import com.ecommerce.common.dto.InventoryBatchLockDTO;
 import com.ecommerce.common.dto.InventoryDTO;
 import com.ecommerce.common.dto.OrderCreateDTO;
 import com.ecommerce.common.dto.OrderItemDTO;
 import com.ecommerce.common.entity.Order;
 import com.ecommerce.common.entity.OrderItem;
+import com.ecommerce.common.entity.OrderOutbox;
 import com.ecommerce.common.entity.Product;
 import com.ecommerce.common.entity.UserAddress;
 import com.ecommerce.common.enums.OrderStatus;
+import com.ecommerce.common.enums.OutboxEventType;
 import com.ecommerce.common.exception.BusinessException;
 import com.ecommerce.common.result.PageResult;
 import com.ecommerce.common.result.Result;
 import com.ecommerce.common.result.ResultCode;
 import com.ecommerce.common.structure.OrderStateMachine;
 import com.ecommerce.common.util.OrderNoGenerator;
+import com.ecommerce.common.vo.InventoryLockVO;
 import com.ecommerce.common.vo.OrderItemVO;
 import com.ecommerce.common.vo.OrderVO;
 import com.ecommerce.order.feign.InventoryFeignClient;
 import com.ecommerce.order.feign.ProductFeignClient;
 import com.ecommerce.order.feign.UserFeignClient;
 import com.ecommerce.order.repository.OrderItemRepository;
+import com.ecommerce.order.repository.OrderOutboxRepository;
 import com.ecommerce.order.repository.OrderRepository;
+import com.ecommerce.order.scheduler.OrderTimeoutScheduler;
 import com.ecommerce.order.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -33,7 +39,12 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -46,9 +57,11 @@ public class OrderServiceImpl implements OrderService {
     
     private final OrderRepository orderRepository;
     private final OrderItemRepository orderItemRepository;
+    private final OrderOutboxRepository orderOutboxRepository;
     private final UserFeignClient userFeignClient;
     private final ProductFeignClient productFeignClient;
     private final InventoryFeignClient inventoryFeignClient;
+    private final OrderTimeoutScheduler orderTimeoutScheduler;
     
     @Override
     @Transactional
@@ -63,17 +76,18 @@ public class OrderServiceImpl implements OrderService {
         // 2. 生成订单号
         String orderNo = OrderNoGenerator.generate();
         
-        // 3. 计算订单金额并创建订单项
+        // 3. 一次批量查询购物车内所有商品
+        Map<Long, Product> productMap = getProductMap(orderDTO.getItems());
+        
+        // 4. 计算订单金额并创建订单项
         BigDecimal totalAmount = BigDecimal.ZERO;
         List<OrderItem> orderItems = new ArrayList<>();
         
         for (OrderItemDTO itemDTO : orderDTO.getItems()) {
-            // 获取商品信息
-            Result<Product> productResult = productFeignClient.getProductEntityById(itemDTO.getProductId());
-            if (!productResult.isSuccess() || productResult.getData() == null) {
+            Product product = productMap.get(itemDTO.getProductId());
+            if (product == null) {
                 throw new BusinessException("商品不存在: " + itemDTO.getProductId());
             }
-            Product product = productResult.getData();
             
             // 检查商品状态
             if (product.getStatus() != 1) {
@@ -97,7 +111,7 @@ public class OrderServiceImpl implements OrderService {
             orderItems.add(orderItem);
         }
         
-        // 4. 创建订单
+        // 5. 创建订单
         Order order = Order.builder()
                 .orderNo(orderNo)
                 .userId(orderDTO.getUserId())
@@ -113,24 +127,24 @@ public class OrderServiceImpl implements OrderService {
         
         order = orderRepository.save(order);
         
-        // 5. 保存订单项并锁定库存
+        // 6. 保存订单项
         final Long orderId = order.getId();
+        List<InventoryDTO> lockItems = new ArrayList<>(orderItems.size());
         for (OrderItem item : orderItems) {
             item.setOrderId(orderId);
-            orderItemRepository.save(item);
-            
-            // 锁定库存
-            InventoryDTO inventoryDTO = InventoryDTO.builder()
+            lockItems.add(InventoryDTO.builder()
                     .productId(item.getProductId())
                     .quantity(item.getQuantity())
                     .orderId(orderId)
-                    .build();
-            
-            Result<Boolean> lockResult = inventoryFeignClient.lockStock(inventoryDTO);
-            if (!lockResult.isSuccess() || !Boolean.TRUE.equals(lockResult.getData())) {
-                throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED, "库存锁定失败: " + item.getProductName());
-            }
+                    .build());
         }
+        orderItemRepository.saveAll(orderItems);
+        
+        // 注册支付超时定时器（事务提交后生效）
+        orderTimeoutScheduler.register(orderId, order.getCreateTime());
+        
+        // 7. 一次请求锁定整单库存（库存服务单事务内完成，失败时整单不锁定）
+        lockStock(orderId, orderDTO.getUserId(), lockItems, productMap);
         
         log.info("订单创建成功: orderNo={}, userId={}, totalAmount={}", orderNo, orderDTO.getUserId(), totalAmount);
         
@@ -162,12 +176,7 @@ public class OrderServiceImpl implements OrderService {
     @Override
     public List<OrderVO> getUserOrders(Long userId) {
         List<Order> orders = orderRepository.findByUserIdOrderByCreateTimeDesc(userId);
-        return orders.stream()
-                .map(order -> {
-                    List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-                    return convertToVO(order, items);
-                })
-                .collect(Collectors.toList());
+        return convertToVOList(orders);
     }
     
     @Override
@@ -175,12 +184,7 @@ public class OrderServiceImpl implements OrderService {
         PageRequest pageRequest = PageRequest.of(pageNum - 1, pageSize, Sort.by(Sort.Direction.DESC, "createTime"));
         Page<Order> page = orderRepository.findAllByOrderByCreateTimeDesc(pageRequest);
         
-        List<OrderVO> list = page.getContent().stream()
-                .map(order -> {
-                    List<OrderItem> items = orderItemRepository.findByOrderId(order.getId());
-                    return convertToVO(order, items);
-                })
-                .collect(Collectors.toList());
+        List<OrderVO> list = convertToVOList(page.getContent());
         
         return PageResult.of(list, page.getTotalElements(), pageNum, pageSize);
     }
@@ -188,31 +192,22 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void payOrder(Long orderId) {
-        Order order = getOrderEntityById(orderId);
-        
-        // 使用状态机检查状态转换
-        if (!OrderStateMachine.canTransition(order.getStatus(), OrderStatus.PAID)) {
-            throw new BusinessException(ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许支付");
+        // 条件更新：状态由数据库原子校验，并发回调只有一个能成功
+        int updated = orderRepository.updateToPaid(orderId,
+                OrderStateMachine.getPreviousStates(OrderStatus.PAID), LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许支付");
         }
         
-        order.setStatus(OrderStatus.PAID);
-        order.setPayTime(LocalDateTime.now());
-        orderRepository.save(order);
-        
-        // 扣减库存并增加销量
-        List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
-        for (OrderItem item : items) {
-            // 扣减库存
-            InventoryDTO inventoryDTO = InventoryDTO.builder()
-                    .productId(item.getProductId())
-                    .quantity(item.getQuantity())
-                    .orderId(orderId)
-                    .build();
-            inventoryFeignClient.deductStock(inventoryDTO);
-            
-            // 增加销量
-            productFeignClient.increaseSales(item.getProductId(), item.getQuantity());
-        }
+        // 扣减库存、增加销量写入发件箱，与状态变更同一事务提交，由后台任务异步投递；
+        // 库存服务按(订单, 商品, 操作)去重，同一商品的多行合并为一个事件
+        Map<Long, Integer> quantities = sumQuantityByProduct(orderItemRepository.findByOrderId(orderId));
+        List<OrderOutbox> events = new ArrayList<>(quantities.size() * 2);
+        quantities.forEach((productId, quantity) -> {
+            events.add(buildOutboxEvent(orderId, OutboxEventType.DEDUCT_STOCK, productId, quantity));
+            events.add(buildOutboxEvent(orderId, OutboxEventType.INCREASE_SALES, productId, quantity));
+        });
+        orderOutboxRepository.saveAll(events);
         
         log.info("订单支付成功: orderId={}", orderId);
     }
@@ -220,58 +215,44 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void shipOrder(Long orderId) {
-        Order order = getOrderEntityById(orderId);
-        
-        if (!OrderStateMachine.canTransition(order.getStatus(), OrderStatus.SHIPPED)) {
-            throw new BusinessException(ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许发货");
+        int updated = orderRepository.updateToShipped(orderId,
+                OrderStateMachine.getPreviousStates(OrderStatus.SHIPPED), LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许发货");
         }
         
-        order.setStatus(OrderStatus.SHIPPED);
-        order.setShipTime(LocalDateTime.now());
-        orderRepository.save(order);
-        
         log.info("订单发货成功: orderId={}", orderId);
     }
     
     @Override
     @Transactional
     public void receiveOrder(Long orderId) {
-        Order order = getOrderEntityById(orderId);
-        
-        if (!OrderStateMachine.canTransition(order.getStatus(), OrderStatus.RECEIVED)) {
-            throw new BusinessException(ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许确认收货");
+        int updated = orderRepository.updateToReceived(orderId,
+                OrderStateMachine.getPreviousStates(OrderStatus.RECEIVED), LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许确认收货");
         }
         
-        order.setStatus(OrderStatus.RECEIVED);
-        order.setReceiveTime(LocalDateTime.now());
-        orderRepository.save(order);
-        
         log.info("订单确认收货: orderId={}", orderId);
     }
     
     @Override
     @Transactional
     public void cancelOrder(Long orderId) {
-        Order order = getOrderEntityById(orderId);
-        
-        if (!OrderStateMachine.canTransition(order.getStatus(), OrderStatus.CANCELLED)) {
-            throw new BusinessException(ResultCode.ORDER_CANCEL_FAILED, "当前订单状态不允许取消");
-        }
-        
-        // 释放库存
-        List<OrderItem> items = orderItemRepository.findByOrderId(orderId);
-        for (OrderItem item : items) {
-            InventoryDTO inventoryDTO = InventoryDTO.builder()
-                    .productId(item.getProductId())
-                    .quantity(item.getQuantity())
-                    .orderId(orderId)
-                    .build();
-            inventoryFeignClient.releaseStock(inventoryDTO);
+        // 先抢占状态，与支付并发时只有一方成功
+        int updated = orderRepository.updateToCancelled(orderId,
+                OrderStateMachine.getPreviousStates(OrderStatus.CANCELLED), LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_CANCEL_FAILED, "当前订单状态不允许取消");
         }
         
-        order.setStatus(OrderStatus.CANCELLED);
-        order.setCancelTime(LocalDateTime.now());
-        orderRepository.save(order);
+        // 释放库存写入发件箱，与取消状态同一事务提交，由后台任务投递并重试；
+        // 不在事务内逐个调用库存服务，避免部分商品已释放而订单回滚为待支付后仍被支付
+        Map<Long, Integer> quantities = sumQuantityByProduct(orderItemRepository.findByOrderId(orderId));
+        List<OrderOutbox> events = new ArrayList<>(quantities.size());
+        quantities.forEach((productId, quantity) ->
+                events.add(buildOutboxEvent(orderId, OutboxEventType.RELEASE_STOCK, productId, quantity)));
+        orderOutboxRepository.saveAll(events);
         
         log.info("订单取消成功: orderId={}", orderId);
     }
@@ -279,30 +260,26 @@ public class OrderServiceImpl implements OrderService {
     @Override
     @Transactional
     public void completeOrder(Long orderId) {
-        Order order = getOrderEntityById(orderId);
-        
-        if (!OrderStateMachine.canTransition(order.getStatus(), OrderStatus.COMPLETED)) {
-            throw new BusinessException(ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许完成");
+        int updated = orderRepository.updateToCompleted(orderId,
+                OrderStateMachine.getPreviousStates(OrderStatus.COMPLETED), LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_STATUS_ERROR, "当前订单状态不允许完成");
         }
         
-        order.setStatus(OrderStatus.COMPLETED);
-        order.setCompleteTime(LocalDateTime.now());
-        orderRepository.save(order);
-        
         log.info("订单完成: orderId={}", orderId);
     }
     
     @Override
     @Transactional
     public void updateOrderStatus(Long orderId, String status) {
-        Order order = getOrderEntityById(orderId);
         OrderStatus newStatus = OrderStatus.valueOf(status);
+        Set<OrderStatus> expected = OrderStateMachine.getPreviousStates(newStatus);
         
-        if (!OrderStateMachine.canTransition(order.getStatus(), newStatus)) {
-            throw new BusinessException(ResultCode.ORDER_STATUS_ERROR);
+        int updated = expected.isEmpty() ? 0
+                : orderRepository.compareAndSetStatus(orderId, newStatus, expected, LocalDateTime.now());
+        if (updated == 0) {
+            throw transitionFailed(orderId, ResultCode.ORDER_STATUS_ERROR, ResultCode.ORDER_STATUS_ERROR.getMessage());
         }
-        
-        orderRepository.updateStatus(orderId, newStatus, LocalDateTime.now());
     }
     
     @Override
@@ -316,6 +293,115 @@ public class OrderServiceImpl implements OrderService {
         return revenue != null ? revenue : BigDecimal.ZERO;
     }
     
+    /**
+     * 条件更新未命中时区分订单不存在与状态不允许
+     */
+    private BusinessException transitionFailed(Long orderId, ResultCode resultCode, String message) {
+        if (!orderRepository.existsById(orderId)) {
+            return new BusinessException(ResultCode.ORDER_NOT_FOUND);
+        }
+        return new BusinessException(resultCode, message);
+    }
+    
+    /**
+     * 按商品合并订单项数量，按商品ID升序
+     */
+    private static Map<Long, Integer> sumQuantityByProduct(List<OrderItem> items) {
+        Map<Long, Integer> quantities = new TreeMap<>();
+        for (OrderItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+    
+    /**
+     * 构建发件箱事件
+     */
+    private OrderOutbox buildOutboxEvent(Long orderId, OutboxEventType eventType, Long productId, Integer quantity) {
+        return OrderOutbox.builder()
+                .orderId(orderId)
+                .eventType(eventType)
+                .productId(productId)
+                .quantity(quantity)
+                .status(OrderOutbox.STATUS_PENDING)
+                .retryCount(0)
+                .build();
+    }
+    
+    /**
+     * 批量获取订单涉及的商品，返回 商品ID -> 商品 映射
+     */
+    private Map<Long, Product> getProductMap(List<OrderItemDTO> items) {
+        List<Long> productIds = items.stream()
+                .map(OrderItemDTO::getProductId)
+                .distinct()
+                .collect(Collectors.toList());
+        
+        Result<List<Product>> productResult = productFeignClient.getProductEntitiesByIds(productIds);
+        if (!productResult.isSuccess() || productResult.getData() == null) {
+            throw new BusinessException("获取商品信息失败");
+        }
+        
+        return productResult.getData().stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity(), (a, b) -> a));
+    }
+    
+    /**
+     * 批量锁定订单库存，任一商品失败则抛出异常回滚订单
+     */
+    private void lockStock(Long orderId, Long userId, List<InventoryDTO> lockItems, Map<Long, Product> productMap) {
+        InventoryBatchLockDTO lockDTO = InventoryBatchLockDTO.builder()
+                .orderId(orderId)
+                .userId(userId)
+                .items(lockItems)
+                .build();
+        
+        Result<List<InventoryLockVO>> lockResult = inventoryFeignClient.batchLockStock(lockDTO);
+        if (!lockResult.isSuccess() || lockResult.getData() == null) {
+            throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED);
+        }
+        
+        // 整单失败时可锁定的行也会标记为失败，报告真正失败的那一行及其原因
+        InventoryLockVO failed = null;
+        for (InventoryLockVO line : lockResult.getData()) {
+            if (Boolean.TRUE.equals(line.getSuccess())) {
+                continue;
+            }
+            if (!InventoryLockVO.MESSAGE_OTHER_ITEM_FAILED.equals(line.getMessage())) {
+                failed = line;
+                break;
+            }
+            if (failed == null) {
+                failed = line;
+            }
+        }
+        if (failed != null) {
+            Product product = productMap.get(failed.getProductId());
+            String productName = product != null ? product.getName() : String.valueOf(failed.getProductId());
+            String reason = failed.getMessage() != null ? failed.getMessage() : ResultCode.INVENTORY_LOCK_FAILED.getMessage();
+            throw new BusinessException(ResultCode.INVENTORY_LOCK_FAILED, "库存锁定失败: " + productName + "，" + reason);
+        }
+    }
+    
+    /**
+     * 批量转换为VO对象，所有订单的商品明细一次查询取回
+     */
+    private List<OrderVO> convertToVOList(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<Long> orderIds = orders.stream()
+                .map(Order::getId)
+                .collect(Collectors.toList());
+        Map<Long, List<OrderItem>> itemsByOrderId = orderItemRepository.findByOrderIdIn(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderItem::getOrderId));
+        
+        return orders.stream()
+                .map(order -> convertToVO(order, itemsByOrderId.getOrDefault(order.getId(), Collections.emptyList())))
+                .collect(Collectors.toList());
+    }
+    
     /**
      * 转换为VO对象
      */
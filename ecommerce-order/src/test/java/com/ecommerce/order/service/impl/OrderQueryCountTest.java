@@ -0,0 +1,124 @@
+package com.ecommerce.order.service.impl;
+
+import com.ecommerce.common.entity.Order;
+import com.ecommerce.common.entity.OrderItem;
+import com.ecommerce.common.enums.OrderStatus;
+import com.ecommerce.common.result.PageResult;
+import com.ecommerce.common.vo.OrderVO;
+import com.ecommerce.order.feign.InventoryFeignClient;
+import com.ecommerce.order.feign.ProductFeignClient;
+import com.ecommerce.order.feign.UserFeignClient;
+import com.ecommerce.order.repository.OrderRepository;
+import com.ecommerce.order.scheduler.OrderTimeoutScheduler;
+import com.ecommerce.order.service.OrderService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 订单列表查询的SQL条数检查
+ * 商品明细按整页一次查询取回，查询条数与订单数无关；退化为逐单查询时此测试失败
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class OrderQueryCountTest {
+    
+    private static final long USER_ID = 1L;
+    private static final int ORDER_COUNT = 20;
+    
+    @Autowired
+    private OrderService orderService;
+    
+    @Autowired
+    private TestEntityManager testEntityManager;
+    
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    
+    @MockBean
+    private UserFeignClient userFeignClient;
+    
+    @MockBean
+    private ProductFeignClient productFeignClient;
+    
+    @MockBean
+    private InventoryFeignClient inventoryFeignClient;
+    
+    @MockBean
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    
+    private Statistics statistics;
+    
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < ORDER_COUNT; i++) {
+            Order order = testEntityManager.persist(Order.builder()
+                    .orderNo("QC" + i)
+                    .userId(USER_ID)
+                    .totalAmount(BigDecimal.TEN)
+                    .payAmount(BigDecimal.TEN)
+                    .freight(BigDecimal.ZERO)
+                    .status(OrderStatus.PENDING_PAYMENT)
+                    .receiverName("测试")
+                    .receiverPhone("13800000000")
+                    .receiverAddress("测试地址")
+                    .build());
+            for (long productId = 1; productId <= 2; productId++) {
+                testEntityManager.persist(OrderItem.builder()
+                        .orderId(order.getId())
+                        .orderNo(order.getOrderNo())
+                        .productId(productId)
+                        .productName("商品" + productId)
+                        .price(BigDecimal.ONE)
+                        .quantity(1)
+                        .build());
+            }
+        }
+        testEntityManager.flush();
+        testEntityManager.clear();
+        
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+    
+    @Test
+    void getUserOrdersLoadsItemsInOneQuery() {
+        List<OrderVO> orders = orderService.getUserOrders(USER_ID);
+        
+        assertThat(orders).hasSize(ORDER_COUNT);
+        assertThat(orders).allSatisfy(order -> assertThat(order.getItems()).hasSize(2));
+        // 订单一条 + 明细一条
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+    }
+    
+    @Test
+    void getAllOrdersLoadsItemsInOneQuery() {
+        PageResult<OrderVO> page = orderService.getAllOrders(1, ORDER_COUNT);
+        
+        assertThat(page.getList()).hasSize(ORDER_COUNT);
+        assertThat(page.getList()).allSatisfy(order -> assertThat(order.getItems()).hasSize(2));
+        // 订单一条 + 总数一条 + 明细一条
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+    }
+    
+    @Configuration
+    @EntityScan(basePackageClasses = Order.class)
+    @EnableJpaRepositories(basePackageClasses = OrderRepository.class)
+    @Import(OrderServiceImpl.class)
+    static class Config {
+    }
+}
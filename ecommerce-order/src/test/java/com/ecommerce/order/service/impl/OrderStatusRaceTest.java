@@ -0,0 +1,210 @@
+package com.ecommerce.order.service.impl;
+
+import com.ecommerce.common.entity.Order;
+import com.ecommerce.common.entity.OrderItem;
+import com.ecommerce.common.entity.OrderOutbox;
+import com.ecommerce.common.enums.OrderStatus;
+import com.ecommerce.common.enums.OutboxEventType;
+import com.ecommerce.common.exception.BusinessException;
+import com.ecommerce.common.result.Result;
+import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.order.feign.InventoryFeignClient;
+import com.ecommerce.order.feign.ProductFeignClient;
+import com.ecommerce.order.feign.UserFeignClient;
+import com.ecommerce.order.repository.OrderItemRepository;
+import com.ecommerce.order.repository.OrderOutboxRepository;
+import com.ecommerce.order.repository.OrderRepository;
+import com.ecommerce.order.scheduler.OrderOutboxRelay;
+import com.ecommerce.order.scheduler.OrderTimeoutScheduler;
+import com.ecommerce.order.service.OrderService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 支付与取消并发竞争同一订单
+ * 状态变更是一条带前置状态条件的UPDATE，100个并发的支付/取消请求中只有一个成功，
+ * 且只有获胜一方的后续动作（支付写扣库存/加销量事件，取消写释放库存事件）生效
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order_race;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class OrderStatusRaceTest {
+    
+    private static final int CALLS = 100;
+    
+    @Autowired
+    private OrderService orderService;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private OrderItemRepository orderItemRepository;
+    
+    @Autowired
+    private OrderOutboxRepository orderOutboxRepository;
+    
+    @Autowired
+    private OrderOutboxRelay orderOutboxRelay;
+    
+    @MockBean
+    private UserFeignClient userFeignClient;
+    
+    @MockBean
+    private ProductFeignClient productFeignClient;
+    
+    @MockBean
+    private InventoryFeignClient inventoryFeignClient;
+    
+    @MockBean
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    
+    @Test
+    void concurrentPayAndCancelHaveExactlyOneWinner() throws Exception {
+        when(inventoryFeignClient.releaseStock(any())).thenReturn(Result.success(true));
+        Order order = createOrder("RACE1");
+        
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>(CALLS);
+        for (int i = 0; i < CALLS; i++) {
+            boolean pay = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    if (pay) {
+                        orderService.payOrder(order.getId());
+                    } else {
+                        orderService.cancelOrder(order.getId());
+                    }
+                    return true;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        executor.shutdown();
+        
+        assertThat(succeeded).isEqualTo(1);
+        OrderStatus status = orderRepository.findById(order.getId()).orElseThrow().getStatus();
+        List<OutboxEventType> eventTypes = orderOutboxRepository.findAll().stream()
+                .map(OrderOutbox::getEventType)
+                .collect(Collectors.toList());
+        if (status == OrderStatus.PAID) {
+            // 每个商品一条扣库存、一条加销量
+            assertThat(eventTypes).hasSize(4).doesNotContain(OutboxEventType.RELEASE_STOCK);
+        } else {
+            // 每个商品一条释放库存，由投递任务异步释放
+            assertThat(status).isEqualTo(OrderStatus.CANCELLED);
+            assertThat(eventTypes).containsExactly(OutboxEventType.RELEASE_STOCK, OutboxEventType.RELEASE_STOCK);
+        }
+        verify(inventoryFeignClient, never()).releaseStock(any());
+    }
+    
+    @Test
+    void partialReleaseFailureKeepsOrderCancelledAndRetriesRemainingLine() {
+        // 商品1释放成功，商品2释放失败
+        when(inventoryFeignClient.releaseStock(any())).thenReturn(Result.success(true));
+        when(inventoryFeignClient.releaseStock(argThat(dto -> dto != null && dto.getProductId() == 2L)))
+                .thenReturn(Result.error(ResultCode.INVENTORY_NOT_FOUND));
+        Order order = createOrder("RACE2");
+        
+        orderService.cancelOrder(order.getId());
+        orderOutboxRelay.relay();
+        
+        // 取消已提交，不因部分释放失败回滚为待支付，订单不会再被支付
+        assertThat(orderRepository.findById(order.getId()).orElseThrow().getStatus())
+                .isEqualTo(OrderStatus.CANCELLED);
+        assertThatThrownBy(() -> orderService.payOrder(order.getId()))
+                .isInstanceOf(BusinessException.class);
+        
+        // 已释放的商品不再投递，失败的商品保留待重试
+        Map<Long, OrderOutbox> events = orderOutboxRepository.findAll().stream()
+                .filter(event -> event.getOrderId().equals(order.getId()))
+                .collect(Collectors.toMap(OrderOutbox::getProductId, Function.identity()));
+        assertThat(events).hasSize(2);
+        assertThat(events.get(1L).getStatus()).isEqualTo(OrderOutbox.STATUS_DELIVERED);
+        assertThat(events.get(2L).getStatus()).isEqualTo(OrderOutbox.STATUS_PENDING);
+        assertThat(events.get(2L).getRetryCount()).isEqualTo(1);
+        assertThat(events.get(2L).getEventType()).isEqualTo(OutboxEventType.RELEASE_STOCK);
+    }
+    
+    private Order createOrder(String orderNo) {
+        Order order = orderRepository.save(Order.builder()
+                .orderNo(orderNo)
+                .userId(1L)
+                .totalAmount(BigDecimal.TEN)
+                .payAmount(BigDecimal.TEN)
+                .freight(BigDecimal.ZERO)
+                .status(OrderStatus.PENDING_PAYMENT)
+                .receiverName("测试")
+                .receiverPhone("13800000000")
+                .receiverAddress("测试地址")
+                .build());
+        for (long productId = 1; productId <= 2; productId++) {
+            orderItemRepository.save(OrderItem.builder()
+                    .orderId(order.getId())
+                    .orderNo(orderNo)
+                    .productId(productId)
+                    .productName("商品" + productId)
+                    .price(BigDecimal.ONE)
+                    .quantity(1)
+                    .build());
+        }
+        return order;
+    }
+    
+    @Configuration
+    @EntityScan(basePackageClasses = Order.class)
+    @EnableJpaRepositories(basePackageClasses = OrderRepository.class)
+    @Import({OrderServiceImpl.class, OrderOutboxRelay.class})
+    static class Config {
+        
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
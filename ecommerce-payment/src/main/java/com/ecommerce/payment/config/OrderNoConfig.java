@@ -0,0 +1,33 @@
+package com.ecommerce.payment.config;
+
+import com.ecommerce.common.util.OrderNoGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 编号生成配置
+ * 把order-no.worker-id写入OrderNoGenerator，多节点部署时每个节点必须配置不同的机器号；
+ * 未配置时沿用主机名与进程号散列出的机器号，多个节点可能重复，启动时告警
+ */
+@Slf4j
+@Configuration
+public class OrderNoConfig {
+    
+    @Value("${order-no.worker-id:}")
+    private String workerId;
+    
+    @PostConstruct
+    public void initWorkerId() {
+        if (!StringUtils.hasText(workerId)) {
+            log.warn("未配置order-no.worker-id，使用散列得到的机器号{}，多节点部署时可能与其他节点重复",
+                    OrderNoGenerator.getWorkerId());
+            return;
+        }
+        OrderNoGenerator.setWorkerId(Long.parseLong(workerId.trim()));
+        log.info("编号生成机器号: {}", OrderNoGenerator.getWorkerId());
+    }
+}
@@ -0,0 +1,114 @@
+package com.ecommerce.product.cache;
+
+import com.ecommerce.common.result.Result;
+import com.ecommerce.product.service.CategoryService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 分类接口响应缓存
+ * 按分类缓存版本保存分类树、子分类列表序列化后的JSON字节与ETag，
+ * 版本不变时直接返回字节，客户端携带相同ETag时由调用方返回304
+ */
+@Component
+@RequiredArgsConstructor
+public class CategoryResponseCache {
+    
+    /** 每个版本最多缓存的子分类列表数，超出后不再缓存 */
+    private static final int MAX_CHILDREN_ENTRIES = 10_000;
+    
+    private final CategoryService categoryService;
+    private final ObjectMapper objectMapper;
+    
+    /** 当前版本的响应缓存，版本变化时整体替换 */
+    private volatile VersionedEntries entries = new VersionedEntries(-1L);
+    
+    /**
+     * 获取分类树响应
+     */
+    public Entry getTree() {
+        VersionedEntries current = current();
+        Entry tree = current.tree;
+        if (tree == null) {
+            tree = serialize(categoryService::getCategoryTree);
+            current.tree = tree;
+        }
+        return tree;
+    }
+    
+    /**
+     * 获取子分类列表响应
+     */
+    public Entry getChildren(Long parentId) {
+        Map<Long, Entry> children = current().children;
+        Entry entry = children.get(parentId);
+        if (entry == null) {
+            entry = serialize(() -> categoryService.getChildCategories(parentId));
+            if (children.size() < MAX_CHILDREN_ENTRIES) {
+                children.put(parentId, entry);
+            }
+        }
+        return entry;
+    }
+    
+    /**
+     * 先读版本号再读数据，数据不会旧于版本号，最多导致下一版本多序列化一次
+     */
+    private VersionedEntries current() {
+        long version = categoryService.getCacheVersion();
+        VersionedEntries current = entries;
+        if (current.version != version) {
+            current = new VersionedEntries(version);
+            entries = current;
+        }
+        return current;
+    }
+    
+    /**
+     * 序列化响应，ETag只取决于数据内容，多个节点数据相同时ETag一致；
+     * 响应体还包含各节点序列化时的时间戳，字节并不相同，因此使用弱ETag
+     */
+    private Entry serialize(Supplier<?> supplier) {
+        Object data = supplier.get();
+        try {
+            byte[] dataBytes = objectMapper.writeValueAsBytes(data);
+            byte[] body = objectMapper.writeValueAsBytes(Result.success(data));
+            return new Entry(body, "W/\"" + DigestUtils.md5DigestAsHex(dataBytes) + "\"");
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("分类数据序列化失败", e);
+        }
+    }
+    
+    /**
+     * 单一版本的响应缓存
+     */
+    private static final class VersionedEntries {
+        private final long version;
+        private volatile Entry tree;
+        private final Map<Long, Entry> children = new ConcurrentHashMap<>();
+        
+        private VersionedEntries(long version) {
+            this.version = version;
+        }
+    }
+    
+    /**
+     * 已序列化的响应
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class Entry {
+        /** Result包装后的JSON字节 */
+        private final byte[] body;
+        /** 弱ETag（含W/前缀与引号） */
+        private final String etag;
+    }
+}
@@ -0,0 +1,84 @@
+package com.ecommerce.product.cache;
+
+import com.ecommerce.common.entity.Product;
+import com.ecommerce.common.structure.BoundedCache;
+import com.ecommerce.common.vo.ProductVO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品本地缓存
+ * 分别缓存商品实体与组装好的商品VO（含库存），商品发生变化时立即失效，
+ * 事务提交后再失效一次，防止提交前被并发读取的旧值重新写入；
+ * 其他节点的失效不会通知到本节点，依靠存活时间兜底，因此两者的存活时间都较短（默认10秒）
+ */
+@Component
+public class ProductLocalCache {
+    
+    private final BoundedCache<Long, Product> entityCache;
+    private final BoundedCache<Long, ProductVO> voCache;
+    
+    public ProductLocalCache(@Value("${product.cache.maximum-size:10000}") int maximumSize,
+                             @Value("${product.cache.entity-ttl-seconds:10}") long entityTtlSeconds,
+                             @Value("${product.cache.vo-ttl-seconds:10}") long voTtlSeconds,
+                             MeterRegistry meterRegistry) {
+        this.entityCache = new BoundedCache<>(maximumSize, entityTtlSeconds, TimeUnit.SECONDS);
+        this.voCache = new BoundedCache<>(maximumSize, voTtlSeconds, TimeUnit.SECONDS);
+        bindMetrics(entityCache, "entity", meterRegistry);
+        bindMetrics(voCache, "vo", meterRegistry);
+    }
+    
+    /**
+     * 商品实体缓存
+     */
+    public BoundedCache<Long, Product> entities() {
+        return entityCache;
+    }
+    
+    /**
+     * 商品VO缓存
+     */
+    public BoundedCache<Long, ProductVO> views() {
+        return voCache;
+    }
+    
+    /**
+     * 使商品缓存失效
+     * @param productId 商品ID
+     */
+    public void invalidate(Long productId) {
+        entityCache.invalidate(productId);
+        voCache.invalidate(productId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    entityCache.invalidate(productId);
+                    voCache.invalidate(productId);
+                }
+            });
+        }
+    }
+    
+    private static void bindMetrics(BoundedCache<Long, ?> cache, String name, MeterRegistry meterRegistry) {
+        FunctionCounter.builder("product.cache.hits", cache, BoundedCache::hitCount)
+                .tag("cache", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("product.cache.misses", cache, BoundedCache::missCount)
+                .tag("cache", name)
+                .register(meterRegistry);
+        FunctionCounter.builder("product.cache.evictions", cache, BoundedCache::evictionCount)
+                .tag("cache", name)
+                .register(meterRegistry);
+        Gauge.builder("product.cache.size", cache, BoundedCache::size)
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+}
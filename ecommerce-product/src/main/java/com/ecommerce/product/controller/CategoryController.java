@@ -2,9 +2,12 @@ package com.ecommerce.product.controller;
 
 import com.ecommerce.common.entity.Category;
 import com.ecommerce.common.result.Result;
-import com.ecommerce.common.structure.CategoryCache;
+import com.ecommerce.product.cache.CategoryResponseCache;
 import com.ecommerce.product.service.CategoryService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -18,6 +21,7 @@ import java.util.List;
 public class CategoryController {
     
     private final CategoryService categoryService;
+    private final CategoryResponseCache categoryResponseCache;
     
     /**
      * 创建分类
@@ -55,16 +59,16 @@ public class CategoryController {
      * 获取子分类
      */
     @GetMapping("/children/{parentId}")
-    public Result<List<Category>> getChildCategories(@PathVariable Long parentId) {
-        return Result.success(categoryService.getChildCategories(parentId));
+    public ResponseEntity<byte[]> getChildCategories(@PathVariable Long parentId) {
+        return toResponse(categoryResponseCache.getChildren(parentId));
     }
     
     /**
      * 获取分类树
      */
     @GetMapping("/tree")
-    public Result<List<CategoryCache.CategoryTreeNode>> getCategoryTree() {
-        return Result.success(categoryService.getCategoryTree());
+    public ResponseEntity<byte[]> getCategoryTree() {
+        return toResponse(categoryResponseCache.getTree());
     }
     
     /**
@@ -75,6 +79,17 @@ public class CategoryController {
         categoryService.deleteCategory(id);
         return Result.success();
     }
+    
+    /**
+     * 返回预先序列化的响应，请求的If-None-Match与ETag一致时框架直接返回304且不写响应体
+     */
+    private ResponseEntity<byte[]> toResponse(CategoryResponseCache.Entry entry) {
+        return ResponseEntity.ok()
+                .eTag(entry.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(entry.getBody());
+    }
 }
 
 
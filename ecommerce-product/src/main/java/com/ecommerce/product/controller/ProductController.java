@@ -54,6 +54,14 @@ public class ProductController {
         return Result.success(productService.getProductEntityById(id));
     }
     
+    /**
+     * 批量获取商品实体（内部调用）
+     */
+    @GetMapping("/entities")
+    public Result<List<Product>> getProductEntitiesByIds(@RequestParam List<Long> ids) {
+        return Result.success(productService.getProductEntitiesByIds(ids));
+    }
+    
     /**
      * 分页查询商品
      */
@@ -61,18 +69,30 @@ public class ProductController {
     public Result<PageResult<ProductVO>> getProductList(
             @RequestParam(defaultValue = "1") Integer pageNum,
             @RequestParam(defaultValue = "10") Integer pageSize,
-            @RequestParam(required = false) String keyword) {
-        return Result.success(productService.getProductList(pageNum, pageSize, keyword));
+            @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String sortBy) {
+        return Result.success(productService.getProductList(pageNum, pageSize, keyword, sortBy));
     }
     
     /**
-     * 根据分类查询商品
+     * 根据分类查询商品（含所有子分类），最多返回最新的200个，完整列表使用分页接口
      */
     @GetMapping("/category/{categoryId}")
     public Result<List<ProductVO>> getProductsByCategory(@PathVariable Long categoryId) {
         return Result.success(productService.getProductsByCategory(categoryId));
     }
     
+    /**
+     * 根据分类分页查询商品（含所有子分类）
+     */
+    @GetMapping("/category/{categoryId}/page")
+    public Result<PageResult<ProductVO>> getProductPageByCategory(
+            @PathVariable Long categoryId,
+            @RequestParam(defaultValue = "1") Integer pageNum,
+            @RequestParam(defaultValue = "10") Integer pageSize) {
+        return Result.success(productService.getProductPageByCategory(categoryId, pageNum, pageSize));
+    }
+    
     /**
      * 上架商品
      */
@@ -101,14 +121,33 @@ public class ProductController {
     }
     
     /**
-     * 增加销量（内部调用）
+     * 增加销量（内部调用），同一订单同一商品只计入一次
      */
     @PutMapping("/{id}/sales")
-    public Result<Void> increaseSales(@PathVariable Long id, @RequestParam Integer quantity) {
-        productService.increaseSales(id, quantity);
+    public Result<Void> increaseSales(@PathVariable Long id, @RequestParam Long orderId,
+                                      @RequestParam Integer quantity) {
+        productService.increaseSales(id, orderId, quantity);
         return Result.success();
     }
     
+    /**
+     * 销量排行榜
+     */
+    @GetMapping("/top")
+    public Result<List<ProductVO>> getTopProducts(
+            @RequestParam(required = false) Long categoryId,
+            @RequestParam(defaultValue = "10") Integer limit) {
+        return Result.success(productService.getTopProducts(categoryId, limit));
+    }
+    
+    /**
+     * 热销排行榜
+     */
+    @GetMapping("/trending")
+    public Result<List<ProductVO>> getTrendingProducts(@RequestParam(defaultValue = "10") Integer limit) {
+        return Result.success(productService.getTrendingProducts(limit));
+    }
+    
     /**
      * 获取商品总数
      */
@@ -4,6 +4,10 @@ import com.ecommerce.common.result.Result;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import java.util.List;
+import java.util.Map;
 
 /**
  * 库存服务Feign客户端
@@ -16,5 +20,11 @@ public interface InventoryFeignClient {
      */
     @GetMapping("/inventory/product/{productId}/stock")
     Result<Integer> getAvailableStock(@PathVariable("productId") Long productId);
+    
+    /**
+     * 批量获取商品可用库存，商品ID放在查询串中，调用方需分批（每批不超过200个）
+     */
+    @GetMapping("/inventory/stock")
+    Result<Map<Long, Integer>> getAvailableStocks(@RequestParam("productIds") List<Long> productIds);
 }
 
@@ -1,8 +1,12 @@
 package com.ecommerce.product.feign;
 
 import com.ecommerce.common.result.Result;
+import com.ecommerce.common.result.ResultCode;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+import java.util.Map;
+
 /**
  * 库存服务Feign客户端降级处理
  */
@@ -11,8 +15,13 @@ public class InventoryFeignClientFallback implements InventoryFeignClient {
     
     @Override
     public Result<Integer> getAvailableStock(Long productId) {
-        // 降级返回0库存
-        return Result.success(0);
+        // 降级返回失败，调用方不会把取不到的库存当作0
+        return Result.error(ResultCode.SERVICE_UNAVAILABLE);
+    }
+    
+    @Override
+    public Result<Map<Long, Integer>> getAvailableStocks(List<Long> productIds) {
+        return Result.error(ResultCode.SERVICE_UNAVAILABLE);
     }
 }
 
@@ -0,0 +1,333 @@
+package com.ecommerce.product.ranking;
+
+import com.ecommerce.common.entity.Product;
+import com.ecommerce.common.structure.TopNHeap;
+import com.ecommerce.product.repository.ProductRepository;
+import com.ecommerce.product.sales.SalesCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 商品排行
+ * 在内存中维护在售商品的总销量榜（全局及各分类）与热销榜，查询只读取有界堆：
+ * 总销量榜按累计销量排序；热销榜按指数时间衰减的销量排序，半衰期内的销量权重减半。
+ * 衰减采用前向衰减：每次销量按 quantity * e^(λ(t - t0)) 累加，分数只增不减、相互可比，
+ * 指数过大时整体乘以同一系数并前移基准时间t0，排名不变。
+ * 启动时分页加载全部在售商品，之后随上下架、删除、销量变化同步
+ */
+@Slf4j
+@Component
+public class ProductRanking {
+    
+    /** 每页加载的商品数 */
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    
+    /** 衰减指数超过该值时重置基准时间，避免溢出 */
+    private static final double MAX_EXPONENT = 500;
+    
+    private final ProductRepository productRepository;
+    private final SalesCounter salesCounter;
+    private final int topSize;
+    
+    /** 每毫秒的衰减率 */
+    private final double lambda;
+    
+    /** 在售商品 */
+    private final Map<Long, Tracked> products = new HashMap<>();
+    
+    private final TopNHeap topSales;
+    private final Map<Long, TopNHeap> categoryTopSales = new HashMap<>();
+    private final TopNHeap trending;
+    
+    /** 前向衰减的基准时间 */
+    private long landmark = System.currentTimeMillis();
+    
+    /** 全量加载完成后才对外提供排行 */
+    private volatile boolean ready;
+    
+    public ProductRanking(ProductRepository productRepository,
+                          SalesCounter salesCounter,
+                          @Value("${product.ranking.top-size:100}") int topSize,
+                          @Value("${product.ranking.trending-half-life-minutes:60}") long halfLifeMinutes) {
+        this.productRepository = productRepository;
+        this.salesCounter = salesCounter;
+        this.topSize = topSize;
+        this.lambda = Math.log(2) / (halfLifeMinutes * 60_000.0);
+        this.topSales = new TopNHeap(topSize);
+        this.trending = new TopNHeap(topSize);
+    }
+    
+    /**
+     * 启动后按ID游标分页加载所有在售商品
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        long lastId = 0L;
+        while (true) {
+            List<Product> page = productRepository.findByIdGreaterThanOrderByIdAsc(
+                    lastId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            synchronized (this) {
+                for (Product product : page) {
+                    if (Integer.valueOf(1).equals(product.getStatus())) {
+                        put(product);
+                    }
+                }
+            }
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        ready = true;
+        log.info("商品排行构建完成: size={}, cost={}ms", products.size(), System.currentTimeMillis() - start);
+    }
+    
+    public boolean isReady() {
+        return ready;
+    }
+    
+    public int getTopSize() {
+        return topSize;
+    }
+    
+    /**
+     * 总销量榜
+     * @param categoryIds 分类ID（含子分类），为空时返回全局榜
+     * @param limit 返回数量，不超过榜单容量
+     * @return 按销量从高到低的商品ID
+     */
+    public List<Long> getTopSales(Collection<Long> categoryIds, int limit) {
+        List<TopNHeap.Ranked> ranked;
+        synchronized (this) {
+            if (categoryIds == null || categoryIds.isEmpty()) {
+                ranked = topSales.top(limit);
+            } else {
+                List<TopNHeap.Ranked> candidates = new ArrayList<>();
+                for (Long categoryId : categoryIds) {
+                    TopNHeap heap = categoryTopSales.get(categoryId);
+                    if (heap != null) {
+                        heap.copyTo(candidates);
+                    }
+                }
+                ranked = candidates;
+            }
+        }
+        if (categoryIds != null && !categoryIds.isEmpty()) {
+            ranked = TopNHeap.merge(ranked, limit);
+        }
+        return toIds(ranked);
+    }
+    
+    /**
+     * 热销榜
+     * @param limit 返回数量，不超过榜单容量
+     * @return 按衰减后销量从高到低的商品ID
+     */
+    public List<Long> getTrending(int limit) {
+        List<TopNHeap.Ranked> ranked;
+        synchronized (this) {
+            ranked = trending.top(limit);
+        }
+        return toIds(ranked);
+    }
+    
+    /**
+     * 新增或修改商品，分类变化时移到新分类的榜单
+     */
+    public void track(Product product) {
+        afterCommit(() -> {
+            synchronized (this) {
+                if (Integer.valueOf(1).equals(product.getStatus())) {
+                    put(product);
+                } else {
+                    untrack(product.getId());
+                }
+            }
+        });
+    }
+    
+    /**
+     * 同步商品状态，上架时重新读取商品
+     */
+    public void updateStatus(Long productId, Integer status) {
+        afterCommit(() -> {
+            if (Integer.valueOf(1).equals(status)) {
+                productRepository.findById(productId).ifPresent(product -> {
+                    synchronized (this) {
+                        put(product);
+                    }
+                });
+            } else {
+                synchronized (this) {
+                    untrack(productId);
+                }
+            }
+        });
+    }
+    
+    /**
+     * 移除已删除的商品
+     */
+    public void remove(Long productId) {
+        afterCommit(() -> {
+            synchronized (this) {
+                untrack(productId);
+            }
+        });
+    }
+    
+    /**
+     * 累加销量
+     * @param productId 商品ID
+     * @param quantity 销量增量
+     */
+    public void addSales(Long productId, int quantity) {
+        afterCommit(() -> {
+            synchronized (this) {
+                Tracked tracked = products.get(productId);
+                if (tracked == null) {
+                    return;
+                }
+                tracked.sales += quantity;
+                topSales.offer(productId, tracked.sales);
+                categoryHeap(tracked.categoryId).offer(productId, tracked.sales);
+                
+                long now = System.currentTimeMillis();
+                double exponent = lambda * (now - landmark);
+                if (exponent > MAX_EXPONENT) {
+                    rescale(now);
+                    exponent = 0;
+                }
+                tracked.trend += quantity * Math.exp(exponent);
+                trending.offer(productId, tracked.trend);
+            }
+        });
+    }
+    
+    /**
+     * 写入在售商品，已在榜时保留内存中的销量，分类变化时从旧分类榜单移除
+     */
+    private void put(Product product) {
+        Long productId = product.getId();
+        Tracked tracked = products.get(productId);
+        if (tracked == null) {
+            tracked = new Tracked();
+            tracked.categoryId = product.getCategoryId();
+            tracked.sales = product.getSales() + salesCounter.getPending(productId);
+            products.put(productId, tracked);
+        } else if (!tracked.categoryId.equals(product.getCategoryId())) {
+            Long oldCategoryId = tracked.categoryId;
+            tracked.categoryId = product.getCategoryId();
+            TopNHeap oldHeap = categoryTopSales.get(oldCategoryId);
+            if (oldHeap != null && oldHeap.remove(productId)) {
+                refill(oldHeap, oldCategoryId);
+            }
+        }
+        topSales.offer(productId, tracked.sales);
+        categoryHeap(tracked.categoryId).offer(productId, tracked.sales);
+        if (tracked.trend > 0) {
+            trending.offer(productId, tracked.trend);
+        }
+    }
+    
+    /**
+     * 下架或删除商品，被移出的榜单由剩余商品补位
+     */
+    private void untrack(Long productId) {
+        Tracked tracked = products.remove(productId);
+        if (tracked == null) {
+            return;
+        }
+        if (topSales.remove(productId)) {
+            refill(topSales, null);
+        }
+        TopNHeap categoryHeap = categoryTopSales.get(tracked.categoryId);
+        if (categoryHeap != null && categoryHeap.remove(productId)) {
+            refill(categoryHeap, tracked.categoryId);
+        }
+        if (trending.remove(productId)) {
+            for (Map.Entry<Long, Tracked> entry : products.entrySet()) {
+                if (entry.getValue().trend > 0) {
+                    trending.offer(entry.getKey(), entry.getValue().trend);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 用在售商品重新填充销量榜，categoryId为空表示全局榜
+     */
+    private void refill(TopNHeap heap, Long categoryId) {
+        for (Map.Entry<Long, Tracked> entry : products.entrySet()) {
+            Tracked tracked = entry.getValue();
+            if (categoryId == null || categoryId.equals(tracked.categoryId)) {
+                heap.offer(entry.getKey(), tracked.sales);
+            }
+        }
+    }
+    
+    /**
+     * 前移衰减基准时间，所有热度乘以同一系数
+     */
+    private void rescale(long now) {
+        double factor = Math.exp(-lambda * (now - landmark));
+        for (Tracked tracked : products.values()) {
+            tracked.trend *= factor;
+        }
+        trending.scale(factor);
+        landmark = now;
+    }
+    
+    private TopNHeap categoryHeap(Long categoryId) {
+        return categoryTopSales.computeIfAbsent(categoryId, id -> new TopNHeap(topSize));
+    }
+    
+    private static List<Long> toIds(List<TopNHeap.Ranked> ranked) {
+        if (ranked.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return ranked.stream()
+                .map(TopNHeap.Ranked::getId)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 在事务中调用时提交后才修改排行，回滚的修改不会进入排行
+     */
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
+    /**
+     * 在售商品的排行数据
+     */
+    private static final class Tracked {
+        private Long categoryId;
+        private long sales;
+        private double trend;
+    }
+}
@@ -2,8 +2,10 @@ package com.ecommerce.product.repository;
 
 import com.ecommerce.common.entity.Category;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -17,6 +19,11 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
      */
     List<Category> findByParentIdAndStatusOrderBySort(Long parentId, Integer status);
     
+    /**
+     * 根据父ID查找所有子分类（含禁用）
+     */
+    List<Category> findByParentId(Long parentId);
+    
     /**
      * 查找所有启用的分类
      */
@@ -26,5 +33,25 @@ public interface CategoryRepository extends JpaRepository<Category, Long> {
      * 检查分类名称是否存在
      */
     boolean existsByNameAndParentId(String name, Long parentId);
+    
+    /**
+     * 计算指定状态分类的校验值，与分类缓存比对
+     */
+    @Query("SELECT COUNT(c) AS total, COALESCE(SUM(c.id), 0) AS idSum, COALESCE(SUM(c.parentId), 0) AS parentIdSum, " +
+           "COALESCE(SUM(c.sort), 0) AS sortSum, COALESCE(SUM(c.version), 0) AS versionSum, " +
+           "MAX(c.updateTime) AS maxUpdateTime FROM Category c WHERE c.status = ?1")
+    CategoryChecksumView checksumByStatus(Integer status);
+    
+    /**
+     * 分类校验值投影
+     */
+    interface CategoryChecksumView {
+        Long getTotal();
+        Long getIdSum();
+        Long getParentIdSum();
+        Long getSortSum();
+        Long getVersionSum();
+        LocalDateTime getMaxUpdateTime();
+    }
 }
 
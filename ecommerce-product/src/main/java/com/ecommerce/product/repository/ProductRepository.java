@@ -8,6 +8,8 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -21,6 +23,17 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      */
     List<Product> findByCategoryIdAndStatus(Long categoryId, Integer status);
     
+    /**
+     * 根据多个分类ID查找最新的200个商品，不分页的分类查询只返回这一部分
+     */
+    List<Product> findTop200ByCategoryIdInAndStatusOrderByCreateTimeDescIdDesc(Collection<Long> categoryIds,
+                                                                            Integer status);
+    
+    /**
+     * 根据多个分类ID分页查找商品，用于查询整棵分类子树
+     */
+    Page<Product> findByCategoryIdInAndStatus(Collection<Long> categoryIds, Integer status, Pageable pageable);
+    
     /**
      * 分页查询上架商品
      */
@@ -32,11 +45,22 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     Page<Product> findByNameContainingAndStatus(String name, Integer status, Pageable pageable);
     
     /**
-     * 更新商品状态
+     * 按ID游标分页查询商品，用于构建搜索索引
+     */
+    List<Product> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+    
+    /**
+     * 按ID游标分页查询指定时间之后修改过的商品，用于增量校正搜索索引
+     */
+    List<Product> findByUpdateTimeGreaterThanEqualAndIdGreaterThanOrderByIdAsc(LocalDateTime updateTime, Long id,
+                                                                              Pageable pageable);
+    
+    /**
+     * 更新商品状态，同时刷新修改时间以便其他节点的搜索索引增量校正
      */
     @Modifying
-    @Query("UPDATE Product p SET p.status = ?2 WHERE p.id = ?1")
-    void updateStatus(Long id, Integer status);
+    @Query("UPDATE Product p SET p.status = ?2, p.updateTime = ?3 WHERE p.id = ?1")
+    void updateStatus(Long id, Integer status, LocalDateTime updateTime);
     
     /**
      * 增加销量
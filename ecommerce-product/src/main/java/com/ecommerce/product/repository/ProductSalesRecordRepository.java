@@ -0,0 +1,25 @@
+package com.ecommerce.product.repository;
+
+import com.ecommerce.common.entity.ProductSalesRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * 商品销量记录数据访问接口
+ */
+@Repository
+public interface ProductSalesRecordRepository extends JpaRepository<ProductSalesRecord, Long> {
+    
+    /**
+     * 写入销量记录，(订单ID, 商品ID)已存在时忽略
+     * @return 写入的行数，0表示重复请求
+     */
+    @Modifying
+    @Query(value = "INSERT IGNORE INTO t_product_sales_record (order_id, product_id, quantity, create_time) "
+            + "VALUES (?1, ?2, ?3, ?4)", nativeQuery = true)
+    int insertIgnore(Long orderId, Long productId, Integer quantity, LocalDateTime createTime);
+}
@@ -0,0 +1,178 @@
+package com.ecommerce.product.sales;
+
+import com.ecommerce.product.cache.ProductLocalCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 商品销量合并写入
+ * 销量增量先累加到按商品分段的内存计数器，定时或累计一定次数后合并成一次批量UPDATE写库，
+ * 热门商品的大量增量只产生一次行更新；应用关闭前会把剩余增量全部写入
+ */
+@Slf4j
+@Component
+public class SalesCounter {
+    
+    private static final String FLUSH_SQL = "UPDATE t_product SET sales = sales + ?, update_time = ? WHERE id = ?";
+    
+    /** 每个商品的计数分段数 */
+    private static final int STRIPES = 8;
+    
+    /** 相邻分段间隔8个long（64字节），避免伪共享 */
+    private static final int PADDING = 8;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProductLocalCache productLocalCache;
+    private final int flushThreshold;
+    
+    /** 商品ID -> 未写库的销量增量，条目不删除，避免并发累加写到已移除的计数器上 */
+    private final Map<Long, StripedCounter> pending = new ConcurrentHashMap<>();
+    
+    /** 已取出、正在写库的增量，写库期间仍计入展示销量 */
+    private volatile Map<Long, Long> inFlight = Collections.emptyMap();
+    
+    /** 上次写库后累加的次数 */
+    private final AtomicLong pendingUpdates = new AtomicLong();
+    
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    public SalesCounter(JdbcTemplate jdbcTemplate,
+                        TransactionTemplate transactionTemplate,
+                        ProductLocalCache productLocalCache,
+                        @Value("${product.sales.flush-threshold:1000}") int flushThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.productLocalCache = productLocalCache;
+        this.flushThreshold = flushThreshold;
+    }
+    
+    /**
+     * 累加销量，累计次数达到阈值时由当前线程顺带写库（已有线程在写库时直接返回）
+     * @param productId 商品ID
+     * @param quantity 销量增量
+     */
+    public void add(Long productId, int quantity) {
+        pending.computeIfAbsent(productId, id -> new StripedCounter()).add(quantity);
+        if (pendingUpdates.incrementAndGet() >= flushThreshold && flushLock.tryLock()) {
+            try {
+                doFlush();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * 获取尚未写库的销量增量，用于对外展示的销量
+     * @param productId 商品ID
+     * @return 未写库的增量
+     */
+    public long getPending(Long productId) {
+        StripedCounter counter = pending.get(productId);
+        long unflushed = counter != null ? counter.sum() : 0L;
+        return unflushed + inFlight.getOrDefault(productId, 0L);
+    }
+    
+    /**
+     * 定时写库
+     */
+    @Scheduled(fixedDelayString = "${product.sales.flush-interval-ms:200}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            doFlush();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * 应用关闭前写入剩余增量
+     */
+    @PreDestroy
+    public void drain() {
+        flush();
+        log.info("商品销量增量已全部写入");
+    }
+    
+    private void doFlush() {
+        pendingUpdates.set(0);
+        
+        // 按商品ID排序，多个节点同时写库时加锁顺序一致
+        Map<Long, Long> deltas = new TreeMap<>();
+        for (Map.Entry<Long, StripedCounter> entry : pending.entrySet()) {
+            long delta = entry.getValue().sum();
+            if (delta != 0) {
+                deltas.put(entry.getKey(), delta);
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        
+        // 先公开为写库中，再从计数器中扣除同样的数额：并发读取的展示销量最多短暂多计，不会变少；
+        // 只扣除快照的数额，快照之后的并发累加留在计数器中
+        inFlight = deltas;
+        deltas.forEach((productId, delta) -> pending.get(productId).add(-delta));
+        
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>(deltas.size());
+        for (Map.Entry<Long, Long> entry : deltas.entrySet()) {
+            args.add(new Object[]{entry.getValue(), now, entry.getKey()});
+        }
+        try {
+            // 整批在同一事务中提交，失败时全部回滚，放回的增量不会与已提交的部分重复计入
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, args));
+            
+            // 已写库的销量进入数据库后，缓存中的旧销量需要失效；在清空写库中之前失效，展示销量不会回落
+            for (Long productId : deltas.keySet()) {
+                productLocalCache.invalidate(productId);
+            }
+        } catch (Exception e) {
+            // 写库失败时把增量放回，下次重试
+            log.warn("商品销量写库失败，稍后重试: products={}", deltas.size(), e);
+            deltas.forEach((productId, delta) -> pending.get(productId).add(delta));
+        } finally {
+            inFlight = Collections.emptyMap();
+        }
+    }
+    
+    /**
+     * 分段计数器：并发累加分散到多个槽位，写库时按快照数额反向累加扣除，不会丢失并发累加
+     */
+    private static final class StripedCounter {
+        
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+        
+        void add(long delta) {
+            cells.addAndGet(ThreadLocalRandom.current().nextInt(STRIPES) * PADDING, delta);
+        }
+        
+        long sum() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++) {
+                sum += cells.get(i * PADDING);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.ecommerce.product.search;
+
+import com.ecommerce.common.entity.Product;
+import com.ecommerce.common.structure.ProductSearchIndex;
+import com.ecommerce.product.repository.ProductRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 商品搜索索引维护
+ * 启动时分页加载全部商品建立倒排索引，之后随商品的增删改、上下架、销量变化在事务提交后同步；
+ * 其他节点的修改由定时任务按修改时间增量拉取，商品总数与索引不一致（其他节点删除了商品）时全量重建。
+ * 索引未就绪或未启用时search返回null，调用方回退到数据库模糊查询
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ProductSearchIndexer {
+    
+    /** 每页加载的商品数 */
+    private static final int REBUILD_PAGE_SIZE = 1000;
+    
+    /** 增量拉取的回看秒数，覆盖提交晚于修改时间的长事务和节点间的时钟偏差；重复写入是幂等的 */
+    private static final long RECONCILE_OVERLAP_SECONDS = 10L;
+    
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
+    private final ProductRepository productRepository;
+    
+    /** 全量重建在新实例上进行，完成后整体替换 */
+    private volatile ProductSearchIndex index = new ProductSearchIndex();
+    
+    @Value("${product.search.index-enabled:true}")
+    private boolean enabled;
+    
+    /** 全量加载完成后才对外提供检索 */
+    private volatile boolean ready;
+    
+    /** 保护index替换与本地变更的先后顺序 */
+    private final Object mutationLock = new Object();
+    
+    /** 重建期间到达的本地变更，替换前重放到新索引；不在重建时为null */
+    private List<Consumer<ProductSearchIndex>> pendingChanges;
+    
+    /** 已同步到的最大修改时间，下一次增量校正从这里开始拉取 */
+    private LocalDateTime syncedUpdateTime;
+    
+    /**
+     * 启动后按ID游标分页加载所有商品
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ProductSearchIndex fresh = new ProductSearchIndex();
+        synchronized (mutationLock) {
+            pendingChanges = new ArrayList<>();
+        }
+        LocalDateTime maxUpdateTime = null;
+        try {
+            long lastId = 0L;
+            while (true) {
+                List<Product> page = productRepository.findByIdGreaterThanOrderByIdAsc(
+                        lastId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+                for (Product product : page) {
+                    put(fresh, product);
+                    maxUpdateTime = later(maxUpdateTime, product.getUpdateTime());
+                }
+                if (page.size() < REBUILD_PAGE_SIZE) {
+                    break;
+                }
+                lastId = page.get(page.size() - 1).getId();
+            }
+        } catch (RuntimeException e) {
+            synchronized (mutationLock) {
+                pendingChanges = null;
+            }
+            throw e;
+        }
+        synchronized (mutationLock) {
+            // 加载期间提交的变更可能晚于读到的行，重放后再替换；
+            // 销量增量若已包含在读到的行中会被重复累加，由下一次增量校正按数据库的值覆盖
+            for (Consumer<ProductSearchIndex> change : pendingChanges) {
+                change.accept(fresh);
+            }
+            pendingChanges = null;
+            index = fresh;
+        }
+        syncedUpdateTime = maxUpdateTime;
+        ready = true;
+        log.info("商品搜索索引构建完成: size={}, cost={}ms", fresh.size(), System.currentTimeMillis() - start);
+    }
+    
+    /**
+     * 定期拉取修改时间不早于上次同步点的商品写入索引，使其他节点的修改、上下架和销量最终一致；
+     * 数据库商品总数与索引条目数不一致时说明有删除未同步，全量重建
+     */
+    @Scheduled(initialDelayString = "${product.search.reconcile-interval-ms:60000}",
+            fixedDelayString = "${product.search.reconcile-interval-ms:60000}")
+    public synchronized void reconcile() {
+        if (!enabled || !ready) {
+            return;
+        }
+        long total = productRepository.count();
+        if (total != index.size()) {
+            log.warn("商品搜索索引与数据库条目数不一致，全量重建: expected={}, actual={}", total, index.size());
+            rebuild();
+            return;
+        }
+        LocalDateTime since = syncedUpdateTime == null
+                ? EPOCH : syncedUpdateTime.minusSeconds(RECONCILE_OVERLAP_SECONDS);
+        LocalDateTime maxUpdateTime = syncedUpdateTime;
+        int changed = 0;
+        long lastId = 0L;
+        while (true) {
+            List<Product> page = productRepository.findByUpdateTimeGreaterThanEqualAndIdGreaterThanOrderByIdAsc(
+                    since, lastId, PageRequest.of(0, REBUILD_PAGE_SIZE));
+            for (Product product : page) {
+                apply(target -> put(target, product));
+                maxUpdateTime = later(maxUpdateTime, product.getUpdateTime());
+            }
+            changed += page.size();
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+            lastId = page.get(page.size() - 1).getId();
+        }
+        syncedUpdateTime = maxUpdateTime;
+        log.debug("商品搜索索引增量校正: changed={}, syncedUpdateTime={}", changed, maxUpdateTime);
+    }
+    
+    /**
+     * 检索商品
+     * @param keyword 关键词，空白分隔的多个词之间为AND关系
+     * @param status 状态过滤
+     * @param sortField 排序字段
+     * @param offset 跳过的结果数
+     * @param limit 返回的结果数
+     * @return 检索结果，索引不可用时返回null
+     */
+    public ProductSearchIndex.SearchResult search(String keyword, Integer status,
+                                                  ProductSearchIndex.SortField sortField, int offset, int limit) {
+        if (!enabled || !ready) {
+            return null;
+        }
+        return index.search(keyword, status, sortField, offset, limit);
+    }
+    
+    /**
+     * 索引新增或修改的商品
+     */
+    public void index(Product product) {
+        afterCommit(target -> put(target, product));
+    }
+    
+    /**
+     * 同步商品状态
+     */
+    public void updateStatus(Long productId, Integer status) {
+        afterCommit(target -> target.updateStatus(productId, status));
+    }
+    
+    /**
+     * 同步商品销量
+     */
+    public void addSales(Long productId, Integer quantity) {
+        afterCommit(target -> target.addSales(productId, quantity));
+    }
+    
+    /**
+     * 移除已删除的商品
+     */
+    public void remove(Long productId) {
+        afterCommit(target -> target.remove(productId));
+    }
+    
+    private static void put(ProductSearchIndex target, Product product) {
+        target.put(product.getId(), product.getName(), product.getStatus(), product.getSales(),
+                toEpochMilli(product.getCreateTime()));
+    }
+    
+    /**
+     * 在事务中调用时提交后才修改索引，回滚的修改不会进入索引
+     */
+    private void afterCommit(Consumer<ProductSearchIndex> change) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(change);
+                }
+            });
+        } else {
+            apply(change);
+        }
+    }
+    
+    /**
+     * 修改当前索引，重建进行中时同时记录下来，替换前重放到新索引
+     */
+    private void apply(Consumer<ProductSearchIndex> change) {
+        synchronized (mutationLock) {
+            change.accept(index);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        }
+    }
+    
+    private static LocalDateTime later(LocalDateTime current, LocalDateTime candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate.isAfter(current) ? candidate : current;
+    }
+    
+    private static long toEpochMilli(LocalDateTime time) {
+        return time == null ? 0L : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -45,6 +45,16 @@ public interface CategoryService {
      */
     void deleteCategory(Long id);
     
+    /**
+     * 获取分类及其所有后代分类的ID
+     */
+    List<Long> getSubtreeIds(Long categoryId);
+    
+    /**
+     * 获取分类缓存版本号，分类数据每变化一次加1
+     */
+    long getCacheVersion();
+    
     /**
      * 获取分类名称
      */
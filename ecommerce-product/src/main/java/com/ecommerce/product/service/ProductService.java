@@ -32,16 +32,27 @@ public interface ProductService {
      */
     Product getProductEntityById(Long id);
     
+    /**
+     * 根据ID列表批量获取商品实体
+     */
+    List<Product> getProductEntitiesByIds(List<Long> ids);
+    
     /**
      * 分页查询商品
+     * @param sortBy 排序字段：sales 按销量，其他按创建时间
      */
-    PageResult<ProductVO> getProductList(Integer pageNum, Integer pageSize, String keyword);
+    PageResult<ProductVO> getProductList(Integer pageNum, Integer pageSize, String keyword, String sortBy);
     
     /**
-     * 根据分类查询商品
+     * 根据分类查询商品（含所有子分类），按创建时间倒序最多返回200个，完整列表使用分页查询
      */
     List<ProductVO> getProductsByCategory(Long categoryId);
     
+    /**
+     * 根据分类分页查询商品（含所有子分类）
+     */
+    PageResult<ProductVO> getProductPageByCategory(Long categoryId, Integer pageNum, Integer pageSize);
+    
     /**
      * 上架商品
      */
@@ -58,9 +69,22 @@ public interface ProductService {
     void deleteProduct(Long id);
     
     /**
-     * 增加销量
+     * 增加销量，以(订单ID, 商品ID)去重，重复请求直接返回
+     */
+    void increaseSales(Long id, Long orderId, Integer quantity);
+    
+    /**
+     * 销量排行榜
+     * @param categoryId 分类ID（含所有子分类），为空时为全部商品
+     * @param limit 返回数量
+     */
+    List<ProductVO> getTopProducts(Long categoryId, Integer limit);
+    
+    /**
+     * 热销排行榜（近期销量按时间衰减）
+     * @param limit 返回数量
      */
-    void increaseSales(Long id, Integer quantity);
+    List<ProductVO> getTrendingProducts(Integer limit);
     
     /**
      * 获取商品总数
@@ -7,15 +7,28 @@ import com.ecommerce.common.structure.CategoryCache;
 import com.ecommerce.product.repository.CategoryRepository;
 import com.ecommerce.product.service.CategoryService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * 分类服务实现类
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class CategoryServiceImpl implements CategoryService {
@@ -39,6 +52,50 @@ public class CategoryServiceImpl implements CategoryService {
         categoryCache.loadAll(categories);
     }
     
+    /**
+     * 定期比对缓存与数据库的校验值，发现漂移（如其他节点的修改）时全量重新加载
+     */
+    @Scheduled(initialDelayString = "${category.cache.reconcile-interval-ms:60000}",
+            fixedDelayString = "${category.cache.reconcile-interval-ms:60000}")
+    public void reconcileCache() {
+        CategoryRepository.CategoryChecksumView view = categoryRepository.checksumByStatus(1);
+        CategoryCache.Checksum expected = new CategoryCache.Checksum(view.getTotal(), view.getIdSum(),
+                view.getParentIdSum(), view.getSortSum(), view.getVersionSum(), view.getMaxUpdateTime());
+        CategoryCache.Checksum actual = categoryCache.checksum();
+        if (!expected.matches(actual)) {
+            log.warn("分类缓存与数据库不一致，重新加载: expected={}, actual={}", expected, actual);
+            refreshCache();
+        }
+    }
+    
+    /**
+     * 事务提交后把分类变更增量应用到缓存：启用的分类写入，禁用或删除的分类移除
+     */
+    private void syncCache(Collection<Category> changed, Collection<Long> deletedIds) {
+        Runnable action = () -> {
+            List<Category> puts = new ArrayList<>();
+            List<Long> removeIds = new ArrayList<>(deletedIds);
+            for (Category category : changed) {
+                if (Objects.equals(category.getStatus(), 1)) {
+                    puts.add(category);
+                } else {
+                    removeIds.add(category.getId());
+                }
+            }
+            categoryCache.apply(puts, removeIds);
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+    
     @Override
     @Transactional
     public Category createCategory(Category category) {
@@ -58,7 +115,7 @@ public class CategoryServiceImpl implements CategoryService {
         }
         
         Category saved = categoryRepository.save(category);
-        refreshCache();
+        syncCache(Collections.singletonList(saved), Collections.emptyList());
         return saved;
     }
     
@@ -81,8 +138,15 @@ public class CategoryServiceImpl implements CategoryService {
             existing.setStatus(category.getStatus());
         }
         
+        List<Category> changed = new ArrayList<>();
+        Long parentId = category.getParentId();
+        if (parentId != null && !parentId.equals(existing.getParentId())) {
+            changed.addAll(moveCategory(existing, parentId));
+        }
+        
         Category saved = categoryRepository.save(existing);
-        refreshCache();
+        changed.add(0, saved);
+        syncCache(changed, Collections.emptyList());
         return saved;
     }
     
@@ -123,7 +187,67 @@ public class CategoryServiceImpl implements CategoryService {
         }
         
         categoryRepository.deleteById(id);
-        refreshCache();
+        syncCache(Collections.emptyList(), Collections.singletonList(id));
+    }
+    
+    /**
+     * 把分类移动到新的父分类下，并修正所有后代分类的层级
+     * @return 层级发生变化的后代分类
+     */
+    private List<Category> moveCategory(Category category, Long parentId) {
+        int level;
+        if (parentId == 0L) {
+            level = 1;
+        } else {
+            Category parent = categoryRepository.findById(parentId)
+                    .orElseThrow(() -> new BusinessException("父分类不存在"));
+            // 新父分类不能是自身或自身的后代
+            Set<Long> visited = new HashSet<>();
+            Category current = parent;
+            while (current != null && visited.add(current.getId())) {
+                if (current.getId().equals(category.getId())) {
+                    throw new BusinessException("不能移动到自身或子分类下");
+                }
+                current = current.getParentId() == 0L
+                        ? null
+                        : categoryRepository.findById(current.getParentId()).orElse(null);
+            }
+            level = parent.getLevel() + 1;
+        }
+        if (categoryRepository.existsByNameAndParentId(category.getName(), parentId)) {
+            throw new BusinessException("同级分类名称已存在");
+        }
+        
+        int delta = level - category.getLevel();
+        category.setParentId(parentId);
+        category.setLevel(level);
+        if (delta == 0) {
+            return Collections.emptyList();
+        }
+        
+        List<Category> descendants = new ArrayList<>();
+        Deque<Long> pending = new ArrayDeque<>();
+        pending.add(category.getId());
+        while (!pending.isEmpty()) {
+            for (Category child : categoryRepository.findByParentId(pending.poll())) {
+                child.setLevel(child.getLevel() + delta);
+                descendants.add(child);
+                pending.add(child.getId());
+            }
+        }
+        return categoryRepository.saveAll(descendants);
+    }
+    
+    @Override
+    public List<Long> getSubtreeIds(Long categoryId) {
+        List<Long> ids = categoryCache.getSubtreeIds(categoryId);
+        // 不在缓存中的分类（如已禁用）只匹配自身
+        return ids.isEmpty() ? Collections.singletonList(categoryId) : ids;
+    }
+    
+    @Override
+    public long getCacheVersion() {
+        return categoryCache.getVersion();
     }
     
     @Override
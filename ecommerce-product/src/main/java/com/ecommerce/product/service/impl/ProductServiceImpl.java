@@ -6,32 +6,59 @@ import com.ecommerce.common.exception.BusinessException;
 import com.ecommerce.common.result.PageResult;
 import com.ecommerce.common.result.Result;
 import com.ecommerce.common.result.ResultCode;
+import com.ecommerce.common.structure.ProductSearchIndex;
 import com.ecommerce.common.vo.ProductVO;
+import com.ecommerce.product.cache.ProductLocalCache;
 import com.ecommerce.product.feign.InventoryFeignClient;
+import com.ecommerce.product.ranking.ProductRanking;
 import com.ecommerce.product.repository.ProductRepository;
+import com.ecommerce.product.repository.ProductSalesRecordRepository;
+import com.ecommerce.product.sales.SalesCounter;
+import com.ecommerce.product.search.ProductSearchIndexer;
 import com.ecommerce.product.service.CategoryService;
 import com.ecommerce.product.service.ProductService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * 商品服务实现类
  */
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class ProductServiceImpl implements ProductService {
     
+    /** 批量查询库存时每次请求的商品数，商品ID放在查询串中，过多会超出长度限制 */
+    private static final int STOCK_QUERY_CHUNK_SIZE = 200;
+    
     private final ProductRepository productRepository;
+    private final ProductSalesRecordRepository salesRecordRepository;
     private final CategoryService categoryService;
     private final InventoryFeignClient inventoryFeignClient;
+    private final ProductSearchIndexer productSearchIndexer;
+    private final ProductLocalCache productLocalCache;
+    private final SalesCounter salesCounter;
+    private final ProductRanking productRanking;
     
     @Override
     @Transactional
@@ -52,6 +79,8 @@ public class ProductServiceImpl implements ProductService {
                 .build();
         
         product = productRepository.save(product);
+        productSearchIndexer.index(product);
+        productRanking.track(product);
         return convertToVO(product);
     }
     
@@ -85,25 +114,73 @@ public class ProductServiceImpl implements ProductService {
         }
         
         product = productRepository.save(product);
+        productSearchIndexer.index(product);
+        productRanking.track(product);
+        productLocalCache.invalidate(id);
         return convertToVO(product);
     }
     
     @Override
     public ProductVO getProductById(Long id) {
-        Product product = productRepository.findById(id)
-                .orElseThrow(() -> new BusinessException(ResultCode.PRODUCT_NOT_FOUND));
-        return convertToVO(product);
+        return productLocalCache.views().get(id, key -> convertToVO(getProductEntityById(key)));
     }
     
     @Override
     public Product getProductEntityById(Long id) {
-        return productRepository.findById(id)
-                .orElseThrow(() -> new BusinessException(ResultCode.PRODUCT_NOT_FOUND));
+        Product product = productLocalCache.entities().get(id, key -> productRepository.findById(key).orElse(null));
+        if (product == null) {
+            throw new BusinessException(ResultCode.PRODUCT_NOT_FOUND);
+        }
+        return product;
     }
     
     @Override
-    public PageResult<ProductVO> getProductList(Integer pageNum, Integer pageSize, String keyword) {
-        PageRequest pageRequest = PageRequest.of(pageNum - 1, pageSize, Sort.by(Sort.Direction.DESC, "createTime"));
+    public List<Product> getProductEntitiesByIds(List<Long> ids) {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        // 先查本地缓存，未命中的一次IN查询取回，不存在的ID直接忽略，由调用方判断；
+        // 查询前记下各ID的失效代数，查询期间被失效的商品不写回缓存
+        List<Product> products = new ArrayList<>(ids.size());
+        Map<Long, Long> missing = new LinkedHashMap<>();
+        for (Long id : new LinkedHashSet<>(ids)) {
+            Product cached = productLocalCache.entities().get(id);
+            if (cached != null) {
+                products.add(cached);
+            } else {
+                missing.put(id, productLocalCache.entities().generation(id));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Product product : productRepository.findAllById(missing.keySet())) {
+                productLocalCache.entities().putIfNotInvalidated(product.getId(), product,
+                        missing.get(product.getId()));
+                products.add(product);
+            }
+        }
+        return products;
+    }
+    
+    @Override
+    public PageResult<ProductVO> getProductList(Integer pageNum, Integer pageSize, String keyword, String sortBy) {
+        boolean bySales = "sales".equals(sortBy);
+        
+        if (StringUtils.hasText(keyword)) {
+            ProductSearchIndex.SearchResult result = productSearchIndexer.search(keyword, 1,
+                    bySales ? ProductSearchIndex.SortField.SALES : ProductSearchIndex.SortField.CREATE_TIME,
+                    (pageNum - 1) * pageSize, pageSize);
+            if (result != null) {
+                List<ProductVO> list = convertToVOList(findAllInOrder(result.getProductIds()));
+                return PageResult.of(list, result.getTotal(), pageNum, pageSize);
+            }
+        }
+        
+        // 索引不可用时回退到数据库查询
+        Sort sort = bySales
+                ? Sort.by(Sort.Direction.DESC, "sales").and(Sort.by(Sort.Direction.DESC, "id"))
+                : Sort.by(Sort.Direction.DESC, "createTime");
+        PageRequest pageRequest = PageRequest.of(pageNum - 1, pageSize, sort);
         
         Page<Product> page;
         if (StringUtils.hasText(keyword)) {
@@ -112,19 +189,26 @@ public class ProductServiceImpl implements ProductService {
             page = productRepository.findByStatus(1, pageRequest);
         }
         
-        List<ProductVO> list = page.getContent().stream()
-                .map(this::convertToVO)
-                .collect(Collectors.toList());
+        List<ProductVO> list = convertToVOList(page.getContent());
         
         return PageResult.of(list, page.getTotalElements(), pageNum, pageSize);
     }
     
     @Override
     public List<ProductVO> getProductsByCategory(Long categoryId) {
-        List<Product> products = productRepository.findByCategoryIdAndStatus(categoryId, 1);
-        return products.stream()
-                .map(this::convertToVO)
-                .collect(Collectors.toList());
+        List<Long> categoryIds = categoryService.getSubtreeIds(categoryId);
+        // 整棵子树可能包含全部商品，只返回最新的一部分，完整列表走分页查询
+        List<Product> products = productRepository.findTop200ByCategoryIdInAndStatusOrderByCreateTimeDescIdDesc(
+                categoryIds, 1);
+        return convertToVOList(products);
+    }
+    
+    @Override
+    public PageResult<ProductVO> getProductPageByCategory(Long categoryId, Integer pageNum, Integer pageSize) {
+        PageRequest pageRequest = PageRequest.of(pageNum - 1, pageSize, Sort.by(Sort.Direction.DESC, "createTime"));
+        List<Long> categoryIds = categoryService.getSubtreeIds(categoryId);
+        Page<Product> page = productRepository.findByCategoryIdInAndStatus(categoryIds, 1, pageRequest);
+        return PageResult.of(convertToVOList(page.getContent()), page.getTotalElements(), pageNum, pageSize);
     }
     
     @Override
@@ -133,7 +217,10 @@ public class ProductServiceImpl implements ProductService {
         if (!productRepository.existsById(id)) {
             throw new BusinessException(ResultCode.PRODUCT_NOT_FOUND);
         }
-        productRepository.updateStatus(id, 1);
+        productRepository.updateStatus(id, 1, LocalDateTime.now());
+        productSearchIndexer.updateStatus(id, 1);
+        productRanking.updateStatus(id, 1);
+        productLocalCache.invalidate(id);
     }
     
     @Override
@@ -142,7 +229,10 @@ public class ProductServiceImpl implements ProductService {
         if (!productRepository.existsById(id)) {
             throw new BusinessException(ResultCode.PRODUCT_NOT_FOUND);
         }
-        productRepository.updateStatus(id, 0);
+        productRepository.updateStatus(id, 0, LocalDateTime.now());
+        productSearchIndexer.updateStatus(id, 0);
+        productRanking.updateStatus(id, 0);
+        productLocalCache.invalidate(id);
     }
     
     @Override
@@ -152,12 +242,54 @@ public class ProductServiceImpl implements ProductService {
             throw new BusinessException(ResultCode.PRODUCT_NOT_FOUND);
         }
         productRepository.deleteById(id);
+        productSearchIndexer.remove(id);
+        productRanking.remove(id);
+        productLocalCache.invalidate(id);
     }
     
     @Override
     @Transactional
-    public void increaseSales(Long id, Integer quantity) {
-        productRepository.increaseSales(id, quantity);
+    public void increaseSales(Long id, Long orderId, Integer quantity) {
+        // 发件箱可能重复投递，销量记录的唯一约束保证同一订单同一商品只计入一次
+        if (salesRecordRepository.insertIgnore(orderId, id, quantity, LocalDateTime.now()) == 0) {
+            log.info("重复的增加销量请求，已忽略: productId={}, orderId={}", id, orderId);
+            return;
+        }
+        // 记录提交后再累加，增量先在内存中合并，由SalesCounter批量写库；
+        // 搜索索引与排行自身在提交后才生效，不能放进提交回调里再注册（回调中注册的同步不会再触发afterCommit）
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                salesCounter.add(id, quantity);
+            }
+        });
+        productSearchIndexer.addSales(id, quantity);
+        productRanking.addSales(id, quantity);
+        // 实体与VO缓存立即失效，事务结束时（累加之后）再失效一次
+        productLocalCache.invalidate(id);
+    }
+    
+    @Override
+    public List<ProductVO> getTopProducts(Long categoryId, Integer limit) {
+        int size = Math.min(Math.max(limit, 1), productRanking.getTopSize());
+        List<Long> categoryIds = categoryId != null ? categoryService.getSubtreeIds(categoryId) : null;
+        
+        if (!productRanking.isReady()) {
+            // 排行未就绪时回退到数据库按销量排序
+            PageRequest pageRequest = PageRequest.of(0, size,
+                    Sort.by(Sort.Direction.DESC, "sales").and(Sort.by(Sort.Direction.ASC, "id")));
+            Page<Product> page = categoryIds != null
+                    ? productRepository.findByCategoryIdInAndStatus(categoryIds, 1, pageRequest)
+                    : productRepository.findByStatus(1, pageRequest);
+            return convertToVOList(page.getContent());
+        }
+        return getProductViewsInOrder(productRanking.getTopSales(categoryIds, size));
+    }
+    
+    @Override
+    public List<ProductVO> getTrendingProducts(Integer limit) {
+        int size = Math.min(Math.max(limit, 1), productRanking.getTopSize());
+        return getProductViewsInOrder(productRanking.getTrending(size));
     }
     
     @Override
@@ -165,21 +297,108 @@ public class ProductServiceImpl implements ProductService {
         return productRepository.count();
     }
     
+    /**
+     * 按给定ID顺序取回商品，已被删除的商品跳过
+     */
+    private List<Product> findAllInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Product> products = productRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        return ids.stream()
+                .map(products::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 按给定ID顺序取商品VO，优先读本地缓存，未命中的批量组装后写入缓存
+     */
+    private List<ProductVO> getProductViewsInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, ProductVO> views = new HashMap<>(ids.size() * 2);
+        Map<Long, Long> missing = new LinkedHashMap<>();
+        for (Long id : ids) {
+            ProductVO cached = productLocalCache.views().get(id);
+            if (cached != null) {
+                views.put(id, cached);
+            } else {
+                missing.put(id, productLocalCache.views().generation(id));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ProductVO vo : convertToVOList(getProductEntitiesByIds(new ArrayList<>(missing.keySet())))) {
+                productLocalCache.views().putIfNotInvalidated(vo.getId(), vo, missing.get(vo.getId()));
+                views.put(vo.getId(), vo);
+            }
+        }
+        return ids.stream()
+                .map(views::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
     /**
      * 转换为VO对象
      */
     private ProductVO convertToVO(Product product) {
-        // 获取库存信息
-        Integer stock = 0;
+        // 获取库存信息，失败时库存为空，与库存为0区分
+        Integer stock = null;
         try {
             Result<Integer> stockResult = inventoryFeignClient.getAvailableStock(product.getId());
             if (stockResult.isSuccess() && stockResult.getData() != null) {
                 stock = stockResult.getData();
+            } else {
+                log.warn("获取库存失败: productId={}, reason={}", product.getId(), stockResult.getMessage());
             }
         } catch (Exception e) {
-            // 获取库存失败，使用默认值
+            log.warn("获取库存失败: productId={}", product.getId(), e);
         }
         
+        return convertToVO(product, stock);
+    }
+    
+    /**
+     * 批量转换为VO对象，商品的库存按每批200个分批取回
+     */
+    private List<ProductVO> convertToVOList(List<Product> products) {
+        if (products.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<Long> productIds = products.stream()
+                .map(Product::getId)
+                .collect(Collectors.toList());
+        Map<Long, Integer> stocks = new HashMap<>(productIds.size() * 2);
+        for (int from = 0; from < productIds.size(); from += STOCK_QUERY_CHUNK_SIZE) {
+            List<Long> chunk = productIds.subList(from, Math.min(from + STOCK_QUERY_CHUNK_SIZE, productIds.size()));
+            try {
+                Result<Map<Long, Integer>> stockResult = inventoryFeignClient.getAvailableStocks(chunk);
+                if (stockResult.isSuccess() && stockResult.getData() != null) {
+                    stocks.putAll(stockResult.getData());
+                } else {
+                    log.warn("批量获取库存失败: products={}, reason={}", chunk.size(), stockResult.getMessage());
+                }
+            } catch (Exception e) {
+                log.warn("批量获取库存失败: products={}", chunk.size(), e);
+            }
+        }
+        
+        // 库存服务会返回每个商品的库存（没有库存记录为0），取不到的商品库存为空，与库存为0区分
+        List<ProductVO> list = new ArrayList<>(products.size());
+        for (Product product : products) {
+            list.add(convertToVO(product, stocks.get(product.getId())));
+        }
+        return list;
+    }
+    
+    /**
+     * 使用已知库存转换为VO对象
+     */
+    private ProductVO convertToVO(Product product, Integer stock) {
         return ProductVO.builder()
                 .id(product.getId())
                 .name(product.getName())
@@ -191,7 +410,7 @@ public class ProductServiceImpl implements ProductService {
                 .mainImage(product.getMainImage())
                 .images(product.getImages())
                 .status(product.getStatus())
-                .sales(product.getSales())
+                .sales((int) (product.getSales() + salesCounter.getPending(product.getId())))
                 .stock(stock)
                 .createTime(product.getCreateTime())
                 .build();
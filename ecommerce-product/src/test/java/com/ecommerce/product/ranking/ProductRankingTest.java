@@ -0,0 +1,136 @@
+package com.ecommerce.product.ranking;
+
+import com.ecommerce.common.entity.Product;
+import com.ecommerce.product.repository.ProductRepository;
+import com.ecommerce.product.sales.SalesCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品排行
+ * 启动时只加载在售商品并计入未落库的销量；销量、上下架、分类变化后榜单同步，
+ * 被移出的榜单由剩余商品补位；事务中的修改提交后才生效，回滚的修改不进入排行
+ */
+class ProductRankingTest {
+    
+    private ProductRepository productRepository;
+    private SalesCounter salesCounter;
+    private ProductRanking ranking;
+    
+    @BeforeEach
+    void setUp() {
+        productRepository = mock(ProductRepository.class);
+        salesCounter = mock(SalesCounter.class);
+        when(salesCounter.getPending(any())).thenReturn(0L);
+        when(salesCounter.getPending(3L)).thenReturn(4L);
+        when(productRepository.findByIdGreaterThanOrderByIdAsc(eq(0L), any(Pageable.class))).thenReturn(List.of(
+                product(1L, 10L, 1, 5),
+                product(2L, 10L, 1, 3),
+                product(3L, 20L, 1, 1),
+                product(4L, 20L, 0, 100)));
+        
+        ranking = new ProductRanking(productRepository, salesCounter, 2, 60);
+        assertThat(ranking.isReady()).isFalse();
+        ranking.rebuild();
+        assertThat(ranking.isReady()).isTrue();
+    }
+    
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+    
+    @Test
+    void rebuildLoadsOnSaleProductsWithPendingSales() {
+        // 商品3落库销量1，未落库4，与商品1并列时ID小者在前；下架的商品4不上榜
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(1L, 3L);
+        assertThat(ranking.getTopSales(List.of(20L), 10)).containsExactly(3L);
+        assertThat(ranking.getTopSales(List.of(10L, 20L), 3)).containsExactly(1L, 3L, 2L);
+        assertThat(ranking.getTopSales(List.of(99L), 3)).isEmpty();
+        assertThat(ranking.getTrending(10)).isEmpty();
+    }
+    
+    @Test
+    void addSalesReordersTopSalesAndTrending() {
+        ranking.addSales(2L, 10);
+        ranking.addSales(3L, 1);
+        ranking.addSales(4L, 50);
+        
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(2L, 3L);
+        assertThat(ranking.getTopSales(List.of(10L), 10)).containsExactly(2L, 1L);
+        assertThat(ranking.getTrending(10)).containsExactly(2L, 3L);
+    }
+    
+    @Test
+    void offShelfProductIsReplacedAndComesBackOnShelf() {
+        ranking.addSales(2L, 10);
+        ranking.updateStatus(2L, 0);
+        
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(1L, 3L);
+        assertThat(ranking.getTopSales(List.of(10L), 10)).containsExactly(1L);
+        assertThat(ranking.getTrending(10)).isEmpty();
+        
+        // 重新上架时按库中销量加载
+        when(productRepository.findById(2L)).thenReturn(Optional.of(product(2L, 10L, 1, 3)));
+        ranking.updateStatus(2L, 1);
+        assertThat(ranking.getTopSales(List.of(10L), 10)).containsExactly(1L, 2L);
+        
+        ranking.remove(1L);
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(3L, 2L);
+    }
+    
+    @Test
+    void trackMovesProductBetweenCategories() {
+        ranking.track(product(1L, 20L, 1, 5));
+        
+        assertThat(ranking.getTopSales(List.of(10L), 10)).containsExactly(2L);
+        assertThat(ranking.getTopSales(List.of(20L), 10)).containsExactly(1L, 3L);
+        
+        ranking.track(product(1L, 20L, 0, 5));
+        assertThat(ranking.getTopSales(List.of(20L), 10)).containsExactly(3L);
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(3L, 2L);
+    }
+    
+    @Test
+    void changesInTransactionApplyOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        ranking.addSales(2L, 10);
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(1L, 3L);
+        
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(2L, 1L);
+        
+        // 回滚：不触发afterCommit
+        TransactionSynchronizationManager.initSynchronization();
+        ranking.updateStatus(2L, 0);
+        TransactionSynchronizationManager.clearSynchronization();
+        assertThat(ranking.getTopSales(null, 10)).containsExactly(2L, 1L);
+    }
+    
+    private static Product product(Long id, Long categoryId, int status, int sales) {
+        return Product.builder()
+                .id(id)
+                .name("商品" + id)
+                .categoryId(categoryId)
+                .status(status)
+                .sales(sales)
+                .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.ecommerce.product.sales;
+
+import com.ecommerce.product.cache.ProductLocalCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 商品销量合并写入
+ * 多次累加合并为一次按商品ID排序的批量UPDATE，写库期间展示销量不回落；
+ * 写库失败时增量放回重试，并发累加与写库交错时每个增量恰好写入一次
+ */
+class SalesCounterTest {
+    
+    private JdbcTemplate jdbcTemplate;
+    private ProductLocalCache productLocalCache;
+    
+    /** 成功写库的批次：商品ID -> 增量 */
+    private final List<Map<Long, Long>> batches = Collections.synchronizedList(new ArrayList<>());
+    
+    /** 每次写库时商品1的展示增量 */
+    private final List<Long> visibleDuringFlush = Collections.synchronizedList(new ArrayList<>());
+    
+    /** 为true时写库失败 */
+    private volatile boolean failing;
+    
+    private SalesCounter salesCounter;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        productLocalCache = mock(ProductLocalCache.class);
+        when(jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            visibleDuringFlush.add(salesCounter.getPending(1L));
+            if (failing) {
+                throw new DataAccessResourceFailureException("数据库不可用");
+            }
+            List<Object[]> args = invocation.getArgument(1);
+            Map<Long, Long> batch = new LinkedHashMap<>();
+            for (Object[] row : args) {
+                batch.put((Long) row[2], (Long) row[0]);
+            }
+            batches.add(batch);
+            return new int[args.size()];
+        });
+        salesCounter = new SalesCounter(jdbcTemplate, transactionTemplate(), productLocalCache, 1000);
+    }
+    
+    @Test
+    void flushMergesAddsIntoOneSortedBatch() {
+        salesCounter.add(2L, 1);
+        salesCounter.add(1L, 2);
+        salesCounter.add(1L, 3);
+        assertThat(salesCounter.getPending(1L)).isEqualTo(5L);
+        assertThat(batches).isEmpty();
+        
+        salesCounter.flush();
+        
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactly(Map.entry(1L, 5L), Map.entry(2L, 1L));
+        assertThat(visibleDuringFlush).containsExactly(5L);
+        assertThat(salesCounter.getPending(1L)).isZero();
+        assertThat(salesCounter.getPending(2L)).isZero();
+        verify(productLocalCache).invalidate(1L);
+        verify(productLocalCache).invalidate(2L);
+        
+        // 没有新增量时不写库
+        salesCounter.flush();
+        assertThat(batches).hasSize(1);
+    }
+    
+    @Test
+    void addingThreadFlushesWhenThresholdIsReached() {
+        salesCounter = new SalesCounter(jdbcTemplate, transactionTemplate(), productLocalCache, 3);
+        
+        salesCounter.add(1L, 1);
+        salesCounter.add(1L, 1);
+        assertThat(batches).isEmpty();
+        salesCounter.add(1L, 1);
+        
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactly(Map.entry(1L, 3L));
+        assertThat(salesCounter.getPending(1L)).isZero();
+    }
+    
+    @Test
+    void failedFlushPutsDeltasBackForRetry() {
+        salesCounter.add(1L, 5);
+        failing = true;
+        salesCounter.flush();
+        
+        assertThat(batches).isEmpty();
+        assertThat(salesCounter.getPending(1L)).isEqualTo(5L);
+        verify(productLocalCache, never()).invalidate(any());
+        
+        failing = false;
+        salesCounter.add(1L, 2);
+        salesCounter.drain();
+        
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactly(Map.entry(1L, 7L));
+        assertThat(visibleDuringFlush).containsExactly(5L, 7L);
+        assertThat(salesCounter.getPending(1L)).isZero();
+    }
+    
+    @Test
+    void concurrentAddsAreWrittenExactlyOnce() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        int products = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perThread; i++) {
+                    salesCounter.add((long) (i % products), 1);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        
+        // 写库与累加交错，每三次写库失败一次
+        AtomicInteger flushes = new AtomicInteger();
+        while (!futures.stream().allMatch(Future::isDone)) {
+            failing = flushes.incrementAndGet() % 3 == 0;
+            salesCounter.flush();
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        failing = false;
+        salesCounter.drain();
+        
+        long[] written = new long[products];
+        synchronized (batches) {
+            for (Map<Long, Long> batch : batches) {
+                batch.forEach((productId, delta) -> written[productId.intValue()] += delta);
+            }
+        }
+        for (int p = 0; p < products; p++) {
+            assertThat(written[p]).isEqualTo((long) threads * perThread / products);
+            assertThat(salesCounter.getPending((long) p)).isZero();
+        }
+    }
+    
+    /**
+     * 直接执行回调的事务模板，回调抛出的异常原样抛出
+     */
+    private static TransactionTemplate transactionTemplate() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        return transactionTemplate;
+    }
+}
@@ -62,6 +62,7 @@ CREATE TABLE IF NOT EXISTS t_category (
     sort INT NOT NULL DEFAULT 0 COMMENT '排序',
     icon VARCHAR(255) COMMENT '分类图标',
     status INT NOT NULL DEFAULT 1 COMMENT '状态：0-禁用，1-正常',
+    version BIGINT NOT NULL DEFAULT 0 COMMENT '版本号',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_parent_id (parent_id)
@@ -82,9 +83,21 @@ CREATE TABLE IF NOT EXISTS t_product (
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_category_id (category_id),
-    INDEX idx_status (status)
+    INDEX idx_status (status),
+    INDEX idx_update_time (update_time)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='商品表';
 
+-- 商品销量记录表
+CREATE TABLE IF NOT EXISTS t_product_sales_record (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '记录ID',
+    order_id BIGINT NOT NULL COMMENT '订单ID',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    quantity INT NOT NULL COMMENT '销量增量',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    UNIQUE KEY uk_order_product (order_id, product_id),
+    INDEX idx_create_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='商品销量记录表';
+
 -- =============================================
 -- 库存服务数据库
 -- =============================================
@@ -98,11 +111,65 @@ CREATE TABLE IF NOT EXISTS t_inventory (
     available_stock INT NOT NULL DEFAULT 0 COMMENT '可用库存',
     locked_stock INT NOT NULL DEFAULT 0 COMMENT '锁定库存（已下单未支付）',
     warning_threshold INT NOT NULL DEFAULT 10 COMMENT '预警库存阈值',
+    bucket_count INT NOT NULL DEFAULT 1 COMMENT '库存分桶数，大于1时库存在分桶表中',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_product_id (product_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存表';
 
+-- 库存分桶表（热点商品的库存拆分到多行，分散行锁竞争）
+CREATE TABLE IF NOT EXISTS t_inventory_bucket (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '分桶ID',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    bucket_no INT NOT NULL COMMENT '桶序号，从0开始',
+    available_stock INT NOT NULL DEFAULT 0 COMMENT '可用库存',
+    locked_stock INT NOT NULL DEFAULT 0 COMMENT '锁定库存',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_product_bucket (product_id, bucket_no)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存分桶表';
+
+-- 库存预占表
+CREATE TABLE IF NOT EXISTS t_inventory_reservation (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '预占ID',
+    order_id BIGINT NOT NULL COMMENT '订单ID',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    quantity INT NOT NULL COMMENT '预占数量',
+    deducted_quantity INT NOT NULL DEFAULT 0 COMMENT '已扣减数量',
+    released_quantity INT NOT NULL DEFAULT 0 COMMENT '已释放数量',
+    status INT NOT NULL DEFAULT 0 COMMENT '状态：0-锁定中, 1-已扣减, 2-已释放, 3-已过期',
+    expire_time DATETIME NOT NULL COMMENT '过期时间',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_order_product (order_id, product_id),
+    INDEX idx_status_expire (status, expire_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存预占表';
+
+-- 库存操作记录表（幂等）
+CREATE TABLE IF NOT EXISTS t_inventory_operation_record (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '记录ID',
+    order_id BIGINT NOT NULL COMMENT '订单ID',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    operation_type VARCHAR(20) NOT NULL COMMENT '操作类型：LOCK-锁定, DEDUCT-扣减, RELEASE-释放',
+    quantity INT NOT NULL COMMENT '变动数量',
+    success TINYINT(1) NOT NULL DEFAULT 1 COMMENT '操作结果',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    UNIQUE KEY uk_order_product_operation (order_id, product_id, operation_type),
+    INDEX idx_create_time (create_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存操作记录表';
+
+-- 秒杀活动表
+CREATE TABLE IF NOT EXISTS t_flash_sale (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '活动ID',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    quota INT NOT NULL COMMENT '秒杀配额（开启时从可用库存转入锁定库存）',
+    remaining INT NOT NULL COMMENT '尚未被节点领取的配额',
+    per_user_limit INT NOT NULL COMMENT '每个用户限购数量',
+    status INT NOT NULL DEFAULT 0 COMMENT '状态：0-进行中, 1-已结束',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    INDEX idx_product_status (product_id, status)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='秒杀活动表';
+
 -- 库存操作日志表
 CREATE TABLE IF NOT EXISTS t_inventory_log (
     id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '日志ID',
@@ -118,6 +185,13 @@ CREATE TABLE IF NOT EXISTS t_inventory_log (
     INDEX idx_order_id (order_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存操作日志表';
 
+-- 库存引擎写库检查点表
+CREATE TABLE IF NOT EXISTS t_inventory_checkpoint (
+    id BIGINT PRIMARY KEY COMMENT '检查点ID，库存引擎固定为1',
+    journal_seq BIGINT NOT NULL DEFAULT 0 COMMENT '已写库的最大日志序号',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='库存引擎写库检查点表';
+
 -- =============================================
 -- 订单服务数据库
 -- =============================================
@@ -164,6 +238,24 @@ CREATE TABLE IF NOT EXISTS t_order_item (
     INDEX idx_order_no (order_no)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='订单商品明细表';
 
+-- 订单发件箱表
+CREATE TABLE IF NOT EXISTS t_order_outbox (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '事件ID',
+    order_id BIGINT NOT NULL COMMENT '订单ID',
+    event_type VARCHAR(20) NOT NULL COMMENT '事件类型：DEDUCT_STOCK-扣减库存, INCREASE_SALES-增加销量, RELEASE_STOCK-释放库存',
+    product_id BIGINT NOT NULL COMMENT '商品ID',
+    quantity INT NOT NULL COMMENT '数量',
+    status INT NOT NULL DEFAULT 0 COMMENT '状态：0-待投递，1-已投递，2-投递失败',
+    retry_count INT NOT NULL DEFAULT 0 COMMENT '已重试次数',
+    next_retry_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '下次投递时间',
+    last_error VARCHAR(500) COMMENT '最近一次失败原因',
+    version BIGINT NOT NULL DEFAULT 0 COMMENT '版本号',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    INDEX idx_status_next_retry (status, next_retry_time),
+    INDEX idx_order_id (order_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='订单发件箱表';
+
 -- =============================================
 -- 支付服务数据库
 -- =============================================